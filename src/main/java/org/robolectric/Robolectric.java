@@ -176,6 +176,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.impl.client.DefaultRequestDirector;
 import org.robolectric.bytecode.IgnorableClassNotFoundException;
 import org.robolectric.bytecode.RobolectricInternals;
+import org.robolectric.bytecode.ShadowIndex;
 import org.robolectric.bytecode.ShadowWrangler;
 import org.robolectric.internal.Implements;
 import org.robolectric.res.ResourceLoader;
@@ -524,7 +525,12 @@ public class Robolectric {
     }
 
     public static void bindDefaultShadowClasses() {
-        bindShadowClasses(getDefaultShadowClasses());
+        ShadowIndex shadowIndex = ShadowIndex.getDefault();
+        if (shadowIndex != null) {
+            getShadowWrangler().bindShadowClasses(shadowIndex);
+        } else {
+            bindShadowClasses(getDefaultShadowClasses());
+        }
     }
 
     public static void bindShadowClasses(List<Class<?>> shadowClasses) {
@@ -557,6 +563,7 @@ public class Robolectric {
                 ShadowActivityInfo.class,
                 ShadowActivityGroup.class,
                 ShadowActivityManager.class,
+                ShadowActivityManager.ShadowMemoryInfo.class,
                 ShadowAdapterView.class,
                 ShadowAddress.class,
                 ShadowAlarmManager.class,
@@ -687,6 +694,8 @@ public class Robolectric {
                 ShadowMeasureSpec.class,
                 ShadowMediaPlayer.class,
                 ShadowMediaRecorder.class,
+                ShadowMediaStore.class,
+                ShadowMediaStore.ShadowImages.class,
                 ShadowMediaStore.ShadowImages.ShadowMedia.class,
                 ShadowMenuInflater.class,
                 ShadowMergeCursor.class,
@@ -7,13 +7,16 @@ import org.robolectric.bytecode.AndroidTranslator;
 import org.robolectric.bytecode.AsmInstrumentingClassLoader;
 import org.robolectric.bytecode.ClassCache;
 import org.robolectric.bytecode.ClassHandler;
+import org.robolectric.bytecode.InvocationPlanCache;
 import org.robolectric.bytecode.JavassistInstrumentingClassLoader;
+import org.robolectric.bytecode.PersistentClassCache;
 import org.robolectric.bytecode.RobolectricInternals;
 import org.robolectric.bytecode.Setup;
 import org.robolectric.bytecode.ShadowWrangler;
 import org.robolectric.bytecode.ZipClassCache;
 import org.robolectric.internal.RobolectricTestRunnerInterface;
 import org.robolectric.res.AndroidSdkFinder;
+import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
 
 import java.io.File;
@@ -21,58 +24,173 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.robolectric.RobolectricTestRunner.isBootstrapped;
 
+/**
+ * A sandbox for running tests: an instrumenting class loader, plus the {@link ClassHandler} and app manifest used
+ * with it. Everything the tests touch, including Robolectric's own static state, is loaded by the class loader, so
+ * each context is isolated from the others.
+ * <p/>
+ * Contexts are leased from a {@link RobolectricContextPool}, so test runner classes whose contexts would be
+ * configured the same way (see {@link #getKey()}) share a warm context rather than instrumenting everything again.
+ * If the "robolectric.parallelism" system property is set to more than 1, up to that many contexts are created for
+ * each configuration and test classes are spread across them, so up to that many test classes can run at once in
+ * separate threads (e.g. with JUnit's {@code ParallelComputer} or Surefire's {@code parallel=classes}). A test class
+ * holds its context's {@link #getLock() lock} while it runs. Contexts with the same configuration share parsed
+ * resources, and instrumented classes are shared through a {@link PersistentClassCache}.
+ */
 public class RobolectricContext {
-    private static final Map<Class<? extends RobolectricTestRunner>, RobolectricContext> contextsByTestRunner = new HashMap<Class<? extends RobolectricTestRunner>, RobolectricContext>();
+    private static final RobolectricContextPool pool = RobolectricContextPool.create();
+    private static final Map<File, PersistentClassCache> persistentClassCaches = new HashMap<File, PersistentClassCache>();
+    private static final ThreadLocal<RobolectricContext> bootstrappingContext = new ThreadLocal<RobolectricContext>();
 
+    private final Setup setup;
     private final AndroidManifest appManifest;
-    private final ClassLoader robolectricClassLoader;
     private final ClassHandler classHandler;
+    private final ReentrantLock lock = new ReentrantLock();
+    private ClassLoader robolectricClassLoader;
+    private Map<Object, ResourceLoader> sharedResourceLoaders;
     private ResourcePath systemResourcePath;
-    public static RobolectricContext mostRecentRobolectricContext; // ick, race condition
+    /** @deprecated racy when runners are created on more than one thread; use {@link #getBootstrappingContext()} */
+    @Deprecated
+    public static RobolectricContext mostRecentRobolectricContext;
 
     public interface Factory {
         RobolectricContext create();
     }
 
+    /**
+     * Everything that determines how a context behaves: contexts with equal keys are interchangeable.
+     * <p/>
+     * The key includes the context's class, since subclasses may override how the class loader, resources, or
+     * {@link Setup} are created. A {@link Setup} is only told apart from others of its class by its
+     * {@link Setup#instrumentationFingerprint() fingerprint}, so a Setup with instance state that changes its
+     * behaviour must override that to include it.
+     */
+    public static class Key {
+        private final Class<? extends RobolectricContext> contextClass;
+        private final String instrumentationFingerprint;
+        private final boolean useAsm;
+        private final List<String> sdkJars;
+        private final AndroidManifest appManifest;
+
+        public Key(Class<? extends RobolectricContext> contextClass, String instrumentationFingerprint, boolean useAsm,
+                   List<String> sdkJars, AndroidManifest appManifest) {
+            this.contextClass = contextClass;
+            this.instrumentationFingerprint = instrumentationFingerprint;
+            this.useAsm = useAsm;
+            this.sdkJars = sdkJars;
+            this.appManifest = appManifest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (useAsm != key.useAsm) return false;
+            if (!contextClass.equals(key.contextClass)) return false;
+            if (!instrumentationFingerprint.equals(key.instrumentationFingerprint)) return false;
+            if (!sdkJars.equals(key.sdkJars)) return false;
+            if (appManifest != null ? !appManifest.equals(key.appManifest) : key.appManifest != null) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = contextClass.hashCode();
+            result = 31 * result + instrumentationFingerprint.hashCode();
+            result = 31 * result + (useAsm ? 1 : 0);
+            result = 31 * result + sdkJars.hashCode();
+            result = 31 * result + (appManifest != null ? appManifest.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            String setupClassName = instrumentationFingerprint.split(";", 2)[0];
+            return "Key{context=" + contextClass.getName() + ", setup=" + setupClassName + ", useAsm=" + useAsm + ", sdkJars=" + sdkJars + ", appManifest=" + appManifest + '}';
+        }
+    }
+
     public static Class<?> bootstrap(Class<? extends RobolectricTestRunner> robolectricTestRunnerClass, Class<?> testClass, Factory factory) {
         if (isBootstrapped(robolectricTestRunnerClass) || isBootstrapped(testClass)) {
             if (!isBootstrapped(testClass)) throw new IllegalStateException("test class is somehow not bootstrapped");
             return testClass;
         }
 
-        RobolectricContext robolectricContext;
-        synchronized (contextsByTestRunner) {
-            robolectricContext = contextsByTestRunner.get(robolectricTestRunnerClass);
-            if (robolectricContext == null) {
-                try {
-                    robolectricContext = factory.create();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-                contextsByTestRunner.put(robolectricTestRunnerClass, robolectricContext);
-            }
-        }
+        RobolectricContext robolectricContext = pool.lease(robolectricTestRunnerClass, factory, getParallelism());
 
         mostRecentRobolectricContext = robolectricContext;
+        bootstrappingContext.set(robolectricContext);
 
         return robolectricContext.bootstrapTestClass(testClass);
     }
 
+    /**
+     * @return the context most recently chosen by {@link #bootstrap} on this thread
+     */
+    public static RobolectricContext getBootstrappingContext() {
+        return bootstrappingContext.get();
+    }
+
+    public static RobolectricContextPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return how many contexts to create per configuration, from the "robolectric.parallelism" system property
+     */
+    public static int getParallelism() {
+        return Math.max(1, Integer.getInteger("robolectric.parallelism", 1));
+    }
+
+    /**
+     * Creates a context. The class loader isn't created until it's first needed, so contexts are cheap to create
+     * just to find their {@link #getKey() key}.
+     */
     public RobolectricContext() {
-        Setup setup = createSetup();
+        setup = createSetup();
         classHandler = createClassHandler(setup);
         appManifest = createAppManifest();
-        robolectricClassLoader = createRobolectricClassLoader(setup);
     }
 
     private ClassHandler createClassHandler(Setup setup) {
-        return new ShadowWrangler(setup);
+        return new ShadowWrangler(setup, createInvocationPlanCache());
+    }
+
+    /**
+     * Creates the cache of {@link ShadowWrangler}'s invocation plans. It's unbounded unless the
+     * "robolectric.invocationPlanCache.capacity" system property is set; "robolectric.invocationPlanCache.evictionPolicy"
+     * picks LRU (the default) or FIFO eviction. If "robolectric.invocationPlanCache.printStats" is true, the cache's
+     * statistics are printed when the JVM exits.
+     */
+    public InvocationPlanCache createInvocationPlanCache() {
+        String capacity = System.getProperty("robolectric.invocationPlanCache.capacity");
+        String evictionPolicy = System.getProperty("robolectric.invocationPlanCache.evictionPolicy");
+        final InvocationPlanCache invocationPlanCache = new InvocationPlanCache(
+                capacity == null ? 0 : Integer.parseInt(capacity.trim()),
+                evictionPolicy == null ? InvocationPlanCache.EvictionPolicy.LRU
+                        : InvocationPlanCache.EvictionPolicy.valueOf(evictionPolicy.trim().toUpperCase()));
+
+        if (Boolean.getBoolean("robolectric.invocationPlanCache.printStats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() {
+                    System.out.println(invocationPlanCache.getStats());
+                }
+            });
+        }
+        return invocationPlanCache;
     }
 
     public ClassCache createClassCache() {
@@ -87,6 +205,32 @@ public class RobolectricContext {
         return new ZipClassCache(new File(classCacheDirectory, "cached-robolectric-classes.jar").getAbsolutePath(), AndroidTranslator.CACHE_VERSION);
     }
 
+    /**
+     * Creates the cache of instrumented classes consulted by {@link AsmInstrumentingClassLoader}, or returns
+     * null to always instrument from scratch. Caching on disk is enabled by pointing the
+     * "cached.robolectric.classes.path" system property at a directory, which may be shared by many concurrently
+     * running JVMs. When running contexts in parallel, instrumented classes are also cached in memory and shared by
+     * all contexts.
+     */
+    public PersistentClassCache createPersistentClassCache() {
+        final String classCachePath = System.getProperty("cached.robolectric.classes.path");
+        boolean hasCacheDir = classCachePath != null && !"".equals(classCachePath.trim());
+        boolean keepInMemory = getParallelism() > 1;
+        if (!hasCacheDir && !keepInMemory) {
+            return null;
+        }
+
+        File cacheDir = hasCacheDir ? new File(classCachePath, "instrumented-classes") : null;
+        synchronized (persistentClassCaches) {
+            PersistentClassCache persistentClassCache = persistentClassCaches.get(cacheDir);
+            if (persistentClassCache == null) {
+                persistentClassCache = new PersistentClassCache(cacheDir, keepInMemory);
+                persistentClassCaches.put(cacheDir, persistentClassCache);
+            }
+            return persistentClassCache;
+        }
+    }
+
     public AndroidTranslator createAndroidTranslator(Setup setup, ClassCache classCache) {
         return new AndroidTranslator(classCache, setup);
     }
@@ -103,6 +247,37 @@ public class RobolectricContext {
         return classHandler;
     }
 
+    /**
+     * Held by a test class while it runs in this context.
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Describes this context's configuration. Contexts of different classes never share a key. Subclasses whose
+     * instances may be set up differently from each other, in ways that aren't reflected by the {@link Setup}, SDK jars
+     * or app manifest, should override this and add to the key, so they aren't handed contexts configured differently.
+     */
+    public Key getKey() {
+        return new Key(getClass(), setup.instrumentationFingerprint(), useAsm(), getSdkJars(), appManifest);
+    }
+
+    /**
+     * Resource loaders shared by all contexts with the same {@link #getKey() key}. Synchronize on the map while using
+     * it.
+     */
+    public synchronized Map<Object, ResourceLoader> getSharedResourceLoaders() {
+        if (sharedResourceLoaders == null) {
+            sharedResourceLoaders = new HashMap<Object, ResourceLoader>();
+        }
+        return sharedResourceLoaders;
+    }
+
+    synchronized void setSharedResourceLoaders(Map<Object, ResourceLoader> sharedResourceLoaders) {
+        this.sharedResourceLoaders = sharedResourceLoaders;
+    }
+
     public synchronized ResourcePath getSystemResourcePath() {
         if (systemResourcePath == null) {
             int targetSdkVersion = appManifest.getTargetSdkVersion();
@@ -113,7 +288,7 @@ public class RobolectricContext {
 
     private Class<?> bootstrapTestClass(Class<?> testClass) {
         try {
-            return robolectricClassLoader.loadClass(testClass.getName());
+            return getRobolectricClassLoader().loadClass(testClass.getName());
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
@@ -151,14 +326,16 @@ public class RobolectricContext {
     }
 
     protected ClassLoader createRobolectricClassLoader(Setup setup) {
-        URL[] urls = artifactUrls(realAndroidDependency("android-base"),
-                realAndroidDependency("android-kxml2"),
-                realAndroidDependency("android-luni"),
-                createDependency("org.json", "json", "20080701", "jar", null)
-        );
+        String instrumentedSdkJar = getInstrumentedSdkJar();
+        URL[] urls;
+        if (instrumentedSdkJar != null && useAsm()) {
+            urls = new URL[] { fileUrl(instrumentedSdkJar) };
+        } else {
+            urls = artifactUrls(getSdkDependencies());
+        }
         ClassLoader robolectricClassLoader;
         if (useAsm()) {
-            robolectricClassLoader = new AsmInstrumentingClassLoader(setup, urls);
+            robolectricClassLoader = new AsmInstrumentingClassLoader(setup, createPersistentClassCache(), urls);
         } else {
             ClassCache classCache = createClassCache();
             AndroidTranslator androidTranslator = createAndroidTranslator(setup, classCache);
@@ -169,10 +346,54 @@ public class RobolectricContext {
         return robolectricClassLoader;
     }
 
+    private Dependency[] getSdkDependencies() {
+        return new Dependency[] {
+                realAndroidDependency("android-base"),
+                realAndroidDependency("android-kxml2"),
+                realAndroidDependency("android-luni"),
+                createDependency("org.json", "json", "20080701", "jar", null)
+        };
+    }
+
+    private List<String> getSdkJars() {
+        List<String> sdkJars = new ArrayList<String>();
+        String instrumentedSdkJar = getInstrumentedSdkJar();
+        if (instrumentedSdkJar != null && useAsm()) {
+            sdkJars.add(new File(instrumentedSdkJar).getAbsolutePath());
+        } else {
+            for (Dependency dependency : getSdkDependencies()) {
+                sdkJars.add(dependency.getGroupId() + ":" + dependency.getArtifactId() + ":" + dependency.getVersion()
+                        + (dependency.getClassifier() == null ? "" : ":" + dependency.getClassifier()));
+            }
+        }
+        return sdkJars;
+    }
+
     public boolean useAsm() {
         return true;
     }
 
+    /**
+     * Returns the path to a jar written by {@link org.robolectric.bytecode.InstrumentedJarWriter} from the SDK jars,
+     * which will be used in their place so no SDK classes need to be instrumented at test time. Defaults to the value
+     * of the "robolectric.instrumentedSdkJar" system property, or null to instrument the SDK jars as classes are loaded.
+     */
+    protected String getInstrumentedSdkJar() {
+        String instrumentedSdkJar = System.getProperty("robolectric.instrumentedSdkJar");
+        if (instrumentedSdkJar == null || "".equals(instrumentedSdkJar.trim())) {
+            return null;
+        }
+        return instrumentedSdkJar;
+    }
+
+    private URL fileUrl(String path) {
+        try {
+            return new File(path).getAbsoluteFile().toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private void injectClassHandler(ClassLoader robolectricClassLoader) {
         try {
             String className = RobolectricInternals.class.getName();
@@ -189,7 +410,17 @@ public class RobolectricContext {
         }
     }
 
-    public ClassLoader getRobolectricClassLoader() {
+    public synchronized ClassLoader getRobolectricClassLoader() {
+        if (robolectricClassLoader == null) {
+            robolectricClassLoader = createRobolectricClassLoader(setup);
+        }
+        return robolectricClassLoader;
+    }
+
+    /**
+     * @return the class loader, or null if it hasn't been needed yet
+     */
+    synchronized ClassLoader getRobolectricClassLoaderIfCreated() {
         return robolectricClassLoader;
     }
 
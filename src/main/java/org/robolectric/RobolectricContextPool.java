@@ -0,0 +1,177 @@
+package org.robolectric;
+
+import org.robolectric.bytecode.AsmInstrumentingClassLoader;
+import org.robolectric.res.ResourceLoader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Hands out warm {@link RobolectricContext}s to test runners.
+ * <p/>
+ * Contexts are pooled by {@link RobolectricContext#getKey() key}, so test runner classes that would configure their
+ * contexts the same way share them, and classes are only loaded and instrumented once for all of them. Up to
+ * {@code parallelism} contexts are created per key; beyond that, test classes are spread across the existing ones.
+ * A test class has exclusive use of its context while it runs by holding {@link RobolectricContext#getLock()}.
+ * <p/>
+ * If the "robolectric.contextPool.printStats" system property is true, the pool's statistics are printed when the
+ * JVM exits.
+ */
+public class RobolectricContextPool {
+    private final Map<Class<? extends RobolectricTestRunner>, RobolectricContext.Key> keysByTestRunner =
+            new HashMap<Class<? extends RobolectricTestRunner>, RobolectricContext.Key>();
+    private final Map<RobolectricContext.Key, Entry> entriesByKey = new LinkedHashMap<RobolectricContext.Key, Entry>();
+
+    public static RobolectricContextPool create() {
+        final RobolectricContextPool pool = new RobolectricContextPool();
+        if (Boolean.getBoolean("robolectric.contextPool.printStats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override public void run() {
+                    for (Stats stats : pool.getStats()) {
+                        System.out.println(stats);
+                    }
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Finds a context for a test class run by {@code testRunnerClass}, creating one with {@code factory} if there's
+     * no context with the same key yet, or fewer than {@code parallelism} of them.
+     */
+    public synchronized RobolectricContext lease(Class<? extends RobolectricTestRunner> testRunnerClass,
+                                                 RobolectricContext.Factory factory, int parallelism) {
+        RobolectricContext candidate = null;
+        RobolectricContext.Key key = keysByTestRunner.get(testRunnerClass);
+        if (key == null) {
+            candidate = create(factory);
+            key = candidate.getKey();
+            keysByTestRunner.put(testRunnerClass, key);
+        }
+
+        Entry entry = entriesByKey.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            entriesByKey.put(key, entry);
+        }
+
+        Sandbox sandbox;
+        if (entry.sandboxes.size() < parallelism) {
+            RobolectricContext robolectricContext = candidate == null ? create(factory) : candidate;
+            robolectricContext.setSharedResourceLoaders(entry.resourceLoaders);
+            sandbox = new Sandbox(robolectricContext);
+            entry.sandboxes.add(sandbox);
+        } else {
+            sandbox = entry.sandboxes.get(entry.nextSandbox);
+            entry.nextSandbox = (entry.nextSandbox + 1) % entry.sandboxes.size();
+        }
+
+        sandbox.leaseCount++;
+        sandbox.testRunnerClasses.add(testRunnerClass.getName());
+        return sandbox.robolectricContext;
+    }
+
+    private static RobolectricContext create(RobolectricContext.Factory factory) {
+        try {
+            return factory.create();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return statistics for each context in the pool
+     */
+    public synchronized List<Stats> getStats() {
+        List<Stats> statsList = new ArrayList<Stats>();
+        for (Entry entry : entriesByKey.values()) {
+            int resourceLoaderCount;
+            synchronized (entry.resourceLoaders) {
+                resourceLoaderCount = entry.resourceLoaders.size();
+            }
+
+            for (Sandbox sandbox : entry.sandboxes) {
+                int definedClassCount = -1;
+                long definedClassBytes = -1;
+                ClassLoader classLoader = sandbox.robolectricContext.getRobolectricClassLoaderIfCreated();
+                if (classLoader instanceof AsmInstrumentingClassLoader) {
+                    definedClassCount = ((AsmInstrumentingClassLoader) classLoader).getDefinedClassCount();
+                    definedClassBytes = ((AsmInstrumentingClassLoader) classLoader).getDefinedClassBytes();
+                }
+                statsList.add(new Stats(entry.key.toString(), sandbox.leaseCount,
+                        new TreeSet<String>(sandbox.testRunnerClasses), definedClassCount, definedClassBytes,
+                        resourceLoaderCount));
+            }
+        }
+        return statsList;
+    }
+
+    private static class Entry {
+        private final RobolectricContext.Key key;
+        private final List<Sandbox> sandboxes = new ArrayList<Sandbox>();
+        private final Map<Object, ResourceLoader> resourceLoaders = new HashMap<Object, ResourceLoader>();
+        private int nextSandbox = 0;
+
+        Entry(RobolectricContext.Key key) {
+            this.key = key;
+        }
+    }
+
+    private static class Sandbox {
+        private final RobolectricContext robolectricContext;
+        private final Set<String> testRunnerClasses = new TreeSet<String>();
+        private int leaseCount;
+
+        Sandbox(RobolectricContext robolectricContext) {
+            this.robolectricContext = robolectricContext;
+        }
+    }
+
+    public static class Stats {
+        /** Describes the context's configuration. */
+        public final String key;
+        /** How many test classes have been given this context; all but the first reused it. */
+        public final int leaseCount;
+        /** The test runner classes whose test classes have been given this context. */
+        public final Set<String> testRunnerClasses;
+        /** How many classes the context's class loader has defined, or -1 if unknown. */
+        public final int definedClassCount;
+        /** The size of the bytecode of those classes, or -1 if unknown. */
+        public final long definedClassBytes;
+        /** How many resource loaders are held for contexts with this configuration. */
+        public final int resourceLoaderCount;
+
+        public Stats(String key, int leaseCount, Set<String> testRunnerClasses, int definedClassCount,
+                     long definedClassBytes, int resourceLoaderCount) {
+            this.key = key;
+            this.leaseCount = leaseCount;
+            this.testRunnerClasses = testRunnerClasses;
+            this.definedClassCount = definedClassCount;
+            this.definedClassBytes = definedClassBytes;
+            this.resourceLoaderCount = resourceLoaderCount;
+        }
+
+        public int getReuseCount() {
+            return Math.max(0, leaseCount - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "RobolectricContextPool.Stats{" +
+                    "key=" + key +
+                    ", leases=" + leaseCount +
+                    ", reuses=" + getReuseCount() +
+                    ", testRunnerClasses=" + testRunnerClasses +
+                    ", definedClasses=" + definedClassCount +
+                    ", definedClassKb=" + (definedClassBytes < 0 ? -1 : definedClassBytes / 1024) +
+                    ", resourceLoaders=" + resourceLoaderCount +
+                    '}';
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.robolectric;
 
 import android.app.Application;
 import android.content.res.Resources;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
@@ -34,9 +35,11 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.robolectric.Robolectric.shadowOf;
 
@@ -46,9 +49,6 @@ import static org.robolectric.Robolectric.shadowOf;
  * provide a simulation of the Android runtime environment.
  */
 public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements RobolectricTestRunnerInterface {
-    private static Map<AndroidManifest, ResourceLoader> resourceLoadersByAppManifest = new HashMap<AndroidManifest, ResourceLoader>();
-    private static Map<ResourcePath, ResourceLoader> systemResourceLoaders = new HashMap<ResourcePath, ResourceLoader>();
-
     // field in both the instrumented and original classes
     RobolectricContext sharedRobolectricContext;
 
@@ -71,7 +71,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
             }
         }));
 
-        sharedRobolectricContext = RobolectricContext.mostRecentRobolectricContext; // ick, race condition
+        sharedRobolectricContext = RobolectricContext.getBootstrappingContext();
 
         if (isBootstrapped(getClass())) {
             databaseMap = setupDatabaseMap(testClass, new SQLiteMap());
@@ -86,6 +86,29 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         return sharedRobolectricContext;
     }
 
+    /**
+     * Runs the test class while holding its context's lock, so that when contexts are shared by test classes running
+     * in parallel, only one test class at a time uses each.
+     */
+    @Override public void run(RunNotifier notifier) {
+        if (delegate == null) {
+            super.run(notifier);
+            return;
+        }
+
+        ReentrantLock lock = sharedRobolectricContext.getLock();
+        lock.lock();
+        Thread currentThread = Thread.currentThread();
+        ClassLoader priorContextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(sharedRobolectricContext.getRobolectricClassLoader());
+        try {
+            super.run(notifier);
+        } finally {
+            currentThread.setContextClassLoader(priorContextClassLoader);
+            lock.unlock();
+        }
+    }
+
     protected static boolean isBootstrapped(Class<?> clazz) {
         return clazz.getClassLoader() instanceof InstrumentingClassLoader;
     }
@@ -397,22 +420,31 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         return new ApplicationResolver(sharedRobolectricContext.getAppManifest()).resolveApplication();
     }
 
+    // contexts may be shared by several test runner classes, which may each create resource loaders differently
     private ResourceLoader getSystemResourceLoader(ResourcePath systemResourcePath) {
-        ResourceLoader systemResourceLoader = systemResourceLoaders.get(systemResourcePath);
-        if (systemResourceLoader == null) {
-            systemResourceLoader = createResourceLoader(systemResourcePath);
-            systemResourceLoaders.put(systemResourcePath, systemResourceLoader);
+        Map<Object, ResourceLoader> resourceLoaders = sharedRobolectricContext.getSharedResourceLoaders();
+        List<Object> key = Arrays.<Object>asList(getClass().getName(), systemResourcePath);
+        synchronized (resourceLoaders) {
+            ResourceLoader systemResourceLoader = resourceLoaders.get(key);
+            if (systemResourceLoader == null) {
+                systemResourceLoader = createResourceLoader(systemResourcePath);
+                resourceLoaders.put(key, systemResourceLoader);
+            }
+            return systemResourceLoader;
         }
-        return systemResourceLoader;
     }
 
     private ResourceLoader getAppResourceLoader(ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
-        ResourceLoader resourceLoader = resourceLoadersByAppManifest.get(appManifest);
-        if (resourceLoader == null) {
-            resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
-            resourceLoadersByAppManifest.put(appManifest, resourceLoader);
+        Map<Object, ResourceLoader> resourceLoaders = sharedRobolectricContext.getSharedResourceLoaders();
+        List<Object> key = Arrays.<Object>asList(getClass().getName(), appManifest);
+        synchronized (resourceLoaders) {
+            ResourceLoader resourceLoader = resourceLoaders.get(key);
+            if (resourceLoader == null) {
+                resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
+                resourceLoaders.put(key, resourceLoader);
+            }
+            return resourceLoader;
         }
-        return resourceLoader;
     }
 
     // this method must live on a InstrumentingClassLoader-loaded class, so it can't be on RobolectricContext
@@ -23,13 +23,16 @@ import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
@@ -39,6 +42,13 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import static org.objectweb.asm.Type.ARRAY;
 import static org.objectweb.asm.Type.OBJECT;
@@ -48,42 +58,146 @@ import static org.robolectric.util.Util.readBytes;
 import static org.robolectric.util.Util.reverse;
 
 public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes, InstrumentingClassLoader {
+    /**
+     * IMPORTANT -- increment this number when the bytecode generated for instrumented classes changes
+     * so entries in a {@link PersistentClassCache} are invalidated.
+     */
+    public static final int CACHE_VERSION = 4;
+
     private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
     private static final Type OBJECT_TYPE = getType(Object.class);
     private static final Type STRING_TYPE = getType(String.class);
     private static final Type ROBOLECTRIC_INTERNALS_TYPE = Type.getType(RobolectricInternals.class);
+    private static final Type CALL_SITE_TYPE = Type.getType(CallSite.class);
+    private static final String CALL_SITE_FIELD_PREFIX = "__robo_callSite_";
+    private static final String SHADOWED_OBJECT_INTERNAL_NAME = Type.getInternalName(ShadowedObject.class);
 
     private static boolean debug = false;
 
     private final Setup setup;
     private final URLClassLoader urls;
-    private final Map<String, Class> classes = new HashMap<String, Class>();
+    private final URLClassLoader preInstrumentedUrls;
+    // classes are looked up without locking; each class is loaded under its own lock, so unrelated classes load in parallel
+    private final ConcurrentMap<String, Class> classes = new ConcurrentHashMap<String, Class>();
+    private final ConcurrentMap<String, Object> classLoadingLocks = new ConcurrentHashMap<String, Object>();
     private Set<Setup.MethodRef> methodsToIntercept;
     private final Map<String, String> classesToRemap;
+    private final PersistentClassCache classCache;
+    private final String instrumentationConfiguration;
+    private final AtomicInteger definedClassCount = new AtomicInteger();
+    private final AtomicLong definedClassBytes = new AtomicLong();
+
+    static {
+        registerAsParallelCapableIfSupported();
+    }
 
     public static final String DIRECT_OBJECT_MARKER_TYPE_DESC = Type.getObjectType(DirectObjectMarker.class.getName().replace('.', '/')).getDescriptor();
 
+    /**
+     * Manifest attribute marking a jar written by {@link InstrumentedJarWriter}; its value is the instrumentation
+     * configuration the jar's classes were instrumented with.
+     */
+    public static final Attributes.Name INSTRUMENTATION_ATTRIBUTE = new Attributes.Name("Robolectric-Instrumentation");
+
     public AsmInstrumentingClassLoader(Setup setup, URL... urls) {
+        this(setup, null, urls);
+    }
+
+    public AsmInstrumentingClassLoader(Setup setup, PersistentClassCache classCache, URL... urls) {
         super(AsmInstrumentingClassLoader.class.getClassLoader());
         this.setup = setup;
-        this.urls = new URLClassLoader(urls, null);
+        this.classCache = classCache;
         classesToRemap = convertToSlashes(setup.classNameTranslations());
         methodsToIntercept = convertToSlashes(setup.methodsToIntercept());
+        instrumentationConfiguration = CACHE_VERSION + ":" + setup.instrumentationFingerprint();
+
+        List<URL> preInstrumented = new ArrayList<URL>();
+        List<URL> uninstrumented = new ArrayList<URL>();
+        for (URL url : urls) {
+            (isPreInstrumented(url) ? preInstrumented : uninstrumented).add(url);
+        }
+        this.urls = new URLClassLoader(uninstrumented.toArray(new URL[uninstrumented.size()]), null);
+        this.preInstrumentedUrls = preInstrumented.isEmpty()
+                ? null
+                : new URLClassLoader(preInstrumented.toArray(new URL[preInstrumented.size()]), null);
+    }
+
+    public PersistentClassCache getClassCache() {
+        return classCache;
+    }
+
+    /**
+     * @return a description of everything that affects the bytes this class loader's instrumentation generates
+     */
+    public String getInstrumentationConfiguration() {
+        return instrumentationConfiguration;
+    }
+
+    private boolean isPreInstrumented(URL url) {
+        File file = toFile(url);
+        if (file == null || !file.isFile()) return false;
+
+        String jarConfiguration;
+        try {
+            JarFile jarFile = new JarFile(file);
+            try {
+                Manifest manifest = jarFile.getManifest();
+                if (manifest == null) return false;
+                jarConfiguration = manifest.getMainAttributes().getValue(INSTRUMENTATION_ATTRIBUTE);
+            } finally {
+                jarFile.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (jarConfiguration == null) return false;
+        if (!jarConfiguration.equals(instrumentationConfiguration)) {
+            throw new IllegalStateException(file + " was instrumented with a different configuration; rebuild it with "
+                    + InstrumentedJarWriter.class.getName() + " (expected \"" + instrumentationConfiguration
+                    + "\" but was \"" + jarConfiguration + "\")");
+        }
+        return true;
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) return null;
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        } catch (IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
     }
 
     @Override
-    synchronized public Class loadClass(String name) throws ClassNotFoundException {
+    public Class loadClass(String name) throws ClassNotFoundException {
         Class<?> theClass = classes.get(name);
-        if (theClass != null) {
-            if (theClass == MissingClassMarker.class) {
-                throw new ClassNotFoundException(name);
-            } else {
-                return theClass;
+        if (theClass == null) {
+            Object lock = lockFor(name);
+            synchronized (lock) {
+                theClass = classes.get(name);
+                if (theClass == null) {
+                    try {
+                        theClass = doLoadClass(name);
+                    } finally {
+                        classLoadingLocks.remove(name, lock);
+                    }
+                }
             }
         }
 
+        if (theClass == MissingClassMarker.class) {
+            throw new ClassNotFoundException(name);
+        }
+        return theClass;
+    }
+
+    private Class<?> doLoadClass(String name) throws ClassNotFoundException {
         boolean shouldComeFromThisClassLoader = setup.shouldAcquire(name);
 
+        Class<?> theClass;
         try {
             if (shouldComeFromThisClassLoader) {
                 theClass = findClass(name);
@@ -99,6 +213,35 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         return theClass;
     }
 
+    private Object lockFor(String name) {
+        Object lock = new Object();
+        Object existingLock = classLoadingLocks.putIfAbsent(name, lock);
+        return existingLock == null ? lock : existingLock;
+    }
+
+    /**
+     * On Java 7 and later, the VM locks a class loader that isn't registered as parallel capable whenever it loads a
+     * class to resolve a reference, which would serialize all class loading in a sandbox again. The registration
+     * method doesn't exist on Java 6, so it's looked up reflectively. Newer VMs may refuse to make it accessible; the
+     * loader still works then, just with classes loaded to resolve references serialized as on Java 6.
+     */
+    private static void registerAsParallelCapableIfSupported() {
+        try {
+            java.lang.reflect.Method registerAsParallelCapable = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable");
+            registerAsParallelCapable.setAccessible(true);
+            registerAsParallelCapable.invoke(null);
+        } catch (NoSuchMethodException e) {
+            // Java 6: the VM locks the loader while resolving references, and only explicit loadClass() calls run in
+            // parallel
+        } catch (IllegalAccessException e) {
+            // not allowed to register; fall back to serialized loading
+        } catch (RuntimeException e) {
+            // e.g. InaccessibleObjectException on Java 16 and later; fall back to serialized loading
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private static class MissingClassMarker {
     }
 
@@ -106,49 +249,100 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     protected Class<?> findClass(final String className) throws ClassNotFoundException {
         if (setup.shouldAcquire(className)) {
             String classFilename = className.replace('.', '/') + ".class";
+
+            if (preInstrumentedUrls != null) {
+                InputStream preInstrumentedStream = preInstrumentedUrls.getResourceAsStream(classFilename);
+                if (preInstrumentedStream != null) {
+                    byte[] bytes = readClassBytes(className, preInstrumentedStream);
+                    return defineInstrumentedClass(className, bytes);
+                }
+            }
+
             InputStream classBytesStream = urls.getResourceAsStream(classFilename);
             if (classBytesStream == null) {
                 classBytesStream = getResourceAsStream(classFilename);
             }
             if (classBytesStream == null) throw new ClassNotFoundException(className);
 
-            byte[] origClassBytes;
+            byte[] origClassBytes = readClassBytes(className, classBytesStream);
             try {
-                origClassBytes = readBytes(classBytesStream);
-            } catch (IOException e) {
+                byte[] bytes = instrument(className, origClassBytes);
+                return defineInstrumentedClass(className, bytes);
+            } catch (Exception e) {
                 throw new ClassNotFoundException("couldn't load " + className, e);
             }
+        } else {
+            throw new IllegalStateException("how did we get here? " + className);
+//            return super.findClass(className);
+        }
+    }
 
-            final ClassReader classReader = new ClassReader(origClassBytes);
-            ClassNode classNode = new ClassNode() {
-                @Override
-                public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-                    desc = remapParamType(desc);
-                    return super.visitField(access, name, desc, signature, value);
-                }
+    private Class<?> defineInstrumentedClass(String className, byte[] bytes) {
+        Class<?> theClass = defineClass(className, bytes, 0, bytes.length);
+        definedClassCount.incrementAndGet();
+        definedClassBytes.addAndGet(bytes.length);
+        return theClass;
+    }
 
-                @Override
-                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-                    return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-                }
-            };
-            classReader.accept(classNode, 0);
+    /**
+     * @return how many classes this class loader has defined itself, rather than delegating to its parent
+     */
+    public int getDefinedClassCount() {
+        return definedClassCount.get();
+    }
 
-            try {
-                byte[] bytes;
-                AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
-                if (setup.shouldInstrument(classInfo)) {
-                    bytes = getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
-                } else {
-                    bytes = origClassBytes;
-                }
-                return defineClass(className, bytes, 0, bytes.length);
-            } catch (Exception e) {
-                throw new ClassNotFoundException("couldn't load " + className, e);
+    /**
+     * @return the total size of the bytecode of the classes this class loader has defined, a rough measure of the
+     *     memory it holds
+     */
+    public long getDefinedClassBytes() {
+        return definedClassBytes.get();
+    }
+
+    private byte[] readClassBytes(String className, InputStream classBytesStream) throws ClassNotFoundException {
+        try {
+            return readBytes(classBytesStream);
+        } catch (IOException e) {
+            throw new ClassNotFoundException("couldn't load " + className, e);
+        }
+    }
+
+    /**
+     * @return the instrumented form of the given class, or {@code origClassBytes} if it shouldn't be instrumented
+     */
+    public byte[] instrument(String className, byte[] origClassBytes) throws ClassNotFoundException {
+        String cacheKey = null;
+        if (classCache != null) {
+            cacheKey = classCache.keyFor(instrumentationConfiguration, origClassBytes);
+            byte[] cachedBytes = classCache.get(cacheKey);
+            if (cachedBytes != null) {
+                return cachedBytes.length == 0 ? origClassBytes : cachedBytes;
             }
+        }
+
+        final ClassReader classReader = new ClassReader(origClassBytes);
+        ClassNode classNode = new ClassNode() {
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                desc = remapParamType(desc);
+                return super.visitField(access, name, desc, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
+            }
+        };
+        classReader.accept(classNode, 0);
+
+        AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
+        if (setup.shouldInstrument(classInfo)) {
+            byte[] bytes = getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
+            if (classCache != null) classCache.put(cacheKey, bytes);
+            return bytes;
         } else {
-            throw new IllegalStateException("how did we get here? " + className);
-//            return super.findClass(className);
+            if (classCache != null) classCache.putNotInstrumented(cacheKey);
+            return origClassBytes;
         }
     }
 
@@ -327,6 +521,7 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         private final String internalClassName;
         private final String className;
         private final Type classType;
+        private int callSiteCount;
 
         public ClassInstrumentor(ClassNode classNode, boolean containsStubs) {
             this.classNode = classNode;
@@ -360,6 +555,9 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
             }
 
             classNode.fields.add(new FieldNode(ACC_PUBLIC, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_DESC, OBJECT_DESC, null));
+            if ((classNode.access & ACC_INTERFACE) == 0) {
+                addShadowedObjectAccessors();
+            }
 
             if (!foundMethods.contains("<init>()V")) {
                 MethodNode defaultConstructor = new MethodNode(ACC_PUBLIC, "<init>", "()V", "()V", null);
@@ -404,6 +602,33 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
 //            }
         }
 
+        /**
+         * Implements {@link ShadowedObject} with methods that read and write this class's own data field; a subclass's
+         * overrides them to use its field, just as reflection finds the most derived one.
+         */
+        private void addShadowedObjectAccessors() {
+            if (!classNode.interfaces.contains(SHADOWED_OBJECT_INTERNAL_NAME)) {
+                classNode.interfaces.add(SHADOWED_OBJECT_INTERNAL_NAME);
+            }
+
+            MethodNode getter = new MethodNode(ACC_PUBLIC | ACC_SYNTHETIC, "__robo_getData__", "()" + OBJECT_DESC, null, null);
+            MyGenerator m = new MyGenerator(getter);
+            m.loadThis();
+            m.getField(classType, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
+            m.returnValue();
+            m.endMethod();
+            classNode.methods.add(getter);
+
+            MethodNode setter = new MethodNode(ACC_PUBLIC | ACC_SYNTHETIC, "__robo_setData__", "(" + OBJECT_DESC + ")V", null, null);
+            m = new MyGenerator(setter);
+            m.loadThis();
+            m.loadArg(0);
+            m.putField(classType, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
+            m.returnValue();
+            m.endMethod();
+            classNode.methods.add(setter);
+        }
+
         private boolean isSyntheticAccessorMethod(MethodNode method) {
             return (method.access & ACC_SYNTHETIC) != 0;
         }
@@ -715,15 +940,26 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         }
 
         private void generateCallToClassHandler(MethodNode method, String originalMethodName, MyGenerator m) {
-            // prepare for call to classHandler.methodInvoked()
-            m.push(classType);                                         // my class
-            m.push(originalMethodName);                                // my class, method name
-            m.loadThisOrNull();                                        // my class, method name, this
-//
-//            // load param types
+            // each call site gets a static field holding its CallSite, created on first call
+            String callSiteFieldName = CALL_SITE_FIELD_PREFIX + callSiteCount++;
+            classNode.fields.add(new FieldNode(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, callSiteFieldName,
+                    CALL_SITE_TYPE.getDescriptor(), null, null));
+
+            Label haveCallSite = m.newLabel();
+            m.getStatic(classType, callSiteFieldName, CALL_SITE_TYPE);  // call site
+            m.dup();                                                   // call site, call site
+            m.ifNonNull(haveCallSite);                                 // call site
+            m.pop();
+
+            m.newInstance(CALL_SITE_TYPE);                             // new call site
+            m.dup();                                                   // new call site, new call site
+            m.push(classType);                                         // ..., my class
+            m.push(originalMethodName);                                // ..., my class, method name
+
+            // load param types
             Type[] argumentTypes = Type.getArgumentTypes(method.desc);
             m.push(argumentTypes.length);
-            m.newArray(STRING_TYPE);                                   // my class, method name, this, String[n]{nulls}
+            m.newArray(STRING_TYPE);                                   // ..., my class, method name, String[n]{nulls}
             for (int i = 0; i < argumentTypes.length; i++) {
                 Type argumentType = argumentTypes[i];
                 m.dup();
@@ -731,11 +967,16 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
                 m.push(argumentType.getClassName());
                 m.arrayStore(STRING_TYPE);
             }
-            // my class, method name, this, String[n]{param class names}
+            // new call site, new call site, my class, method name, String[n]{param class names}
+            m.invokeConstructor(CALL_SITE_TYPE, new Method("<init>", "(Ljava/lang/Class;Ljava/lang/String;[Ljava/lang/String;)V"));
+            m.dup();                                                   // call site, call site
+            m.putStatic(classType, callSiteFieldName, CALL_SITE_TYPE); // call site
 
-            m.loadArgArray();
+            m.mark(haveCallSite);
+            m.loadThisOrNull();                                        // call site, this
+            m.loadArgArray();                                          // call site, this, Object[n]{args}
 
-            m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, new Method("methodInvoked", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/Object;[Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/Object;"));
+            m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, new Method("methodInvoked", "(Lorg/robolectric/bytecode/CallSite;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"));
 
             Type returnType = m.getReturnType();
             int sort = returnType.getSort();
@@ -0,0 +1,48 @@
+package org.robolectric.bytecode;
+
+/**
+ * Describes one instrumented method. {@link AsmInstrumentingClassLoader} gives each instrumented method a static field
+ * holding its CallSite, created on first call, so the method's class, name and parameter types aren't rebuilt on
+ * every call, and the {@link ClassHandler} can remember in {@link #getHandlerData()} how it dispatched the method last
+ * time.
+ */
+public class CallSite {
+    private final Class<?> theClass;
+    private final String methodName;
+    private final String[] paramTypes;
+    private volatile Object handlerData;
+
+    public CallSite(Class<?> theClass, String methodName, String[] paramTypes) {
+        this.theClass = theClass;
+        this.methodName = methodName;
+        this.paramTypes = paramTypes;
+    }
+
+    public Class<?> getTheClass() {
+        return theClass;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String[] getParamTypes() {
+        return paramTypes;
+    }
+
+    /**
+     * @return whatever the class handler last stored here, or null
+     */
+    public Object getHandlerData() {
+        return handlerData;
+    }
+
+    public void setHandlerData(Object handlerData) {
+        this.handlerData = handlerData;
+    }
+
+    @Override
+    public String toString() {
+        return "CallSite{" + theClass.getName() + "." + methodName + "}";
+    }
+}
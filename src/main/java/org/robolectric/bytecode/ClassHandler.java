@@ -7,6 +7,8 @@ public interface ClassHandler {
 
     Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable;
 
+    Object methodInvoked(CallSite callSite, Object instance, Object[] params) throws Throwable;
+
     Object intercept(String className, String methodName, Object instance, Object[] paramTypes, Object[] params) throws Throwable;
 
     // todo: definitely shouldn't live here
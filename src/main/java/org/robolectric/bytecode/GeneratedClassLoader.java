@@ -0,0 +1,33 @@
+package org.robolectric.bytecode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines classes generated at runtime, as a child of the class loader of the classes they call.
+ */
+class GeneratedClassLoader extends ClassLoader {
+    private final Map<String, Class<?>> ownClasses = new HashMap<String, Class<?>>();
+
+    /**
+     * @param ownClasses classes the generated code extends; the parent may have its own copies, but generated classes
+     *     must use ours
+     */
+    GeneratedClassLoader(ClassLoader parent, Class<?>... ownClasses) {
+        super(parent);
+        for (Class<?> ownClass : ownClasses) {
+            this.ownClasses.put(ownClass.getName(), ownClass);
+        }
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Class<?> ownClass = ownClasses.get(name);
+        if (ownClass != null) return ownClass;
+        return super.loadClass(name, resolve);
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
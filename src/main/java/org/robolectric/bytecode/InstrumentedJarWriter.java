@@ -0,0 +1,119 @@
+package org.robolectric.bytecode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * Instruments every class in a set of jars ahead of time, writing them all to a single jar. When that jar is given to
+ * {@link AsmInstrumentingClassLoader} in place of the original jars, its classes are defined as-is, with no
+ * instrumentation work at test time.
+ * <p/>
+ * Usage: {@code java org.robolectric.bytecode.InstrumentedJarWriter [--setup=com.example.MySetup] out.jar in.jar...}
+ * <p/>
+ * The jar is only usable with a {@link Setup} whose {@link Setup#instrumentationFingerprint()} matches the one it was
+ * written with, and must be rebuilt whenever {@link AsmInstrumentingClassLoader#CACHE_VERSION} changes.
+ */
+public class InstrumentedJarWriter {
+    private final AsmInstrumentingClassLoader instrumentingClassLoader;
+
+    public InstrumentedJarWriter(Setup setup) {
+        instrumentingClassLoader = new AsmInstrumentingClassLoader(setup);
+    }
+
+    /**
+     * @return the number of classes written
+     */
+    public int write(File outputJar, File... inputJars) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes mainAttributes = manifest.getMainAttributes();
+        mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        mainAttributes.put(AsmInstrumentingClassLoader.INSTRUMENTATION_ATTRIBUTE,
+                instrumentingClassLoader.getInstrumentationConfiguration());
+
+        Set<String> writtenEntries = new HashSet<String>();
+        int classCount = 0;
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(outputJar), manifest);
+        try {
+            for (File inputJar : inputJars) {
+                JarFile jarFile = new JarFile(inputJar);
+                try {
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        JarEntry entry = entries.nextElement();
+                        String name = entry.getName();
+                        // earlier jars win, just like on a classpath
+                        if (entry.isDirectory() || name.startsWith("META-INF/") || !writtenEntries.add(name)) continue;
+
+                        byte[] bytes = readBytes(jarFile.getInputStream(entry));
+                        if (name.endsWith(".class")) {
+                            String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                            bytes = instrument(className, bytes);
+                            classCount++;
+                        }
+
+                        jarOutputStream.putNextEntry(new JarEntry(name));
+                        jarOutputStream.write(bytes);
+                        jarOutputStream.closeEntry();
+                    }
+                } finally {
+                    jarFile.close();
+                }
+            }
+        } finally {
+            jarOutputStream.close();
+        }
+        return classCount;
+    }
+
+    private byte[] instrument(String className, byte[] origClassBytes) throws IOException {
+        try {
+            return instrumentingClassLoader.instrument(className, origClassBytes);
+        } catch (Exception e) {
+            IOException ioException = new IOException("couldn't instrument " + className);
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Setup setup = new Setup();
+        List<String> paths = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("--setup=")) {
+                setup = (Setup) Class.forName(arg.substring("--setup=".length())).newInstance();
+            } else {
+                paths.add(arg);
+            }
+        }
+
+        if (paths.size() < 2) {
+            System.err.println("Usage: java " + InstrumentedJarWriter.class.getName()
+                    + " [--setup=<Setup subclass>] <output jar> <input jar>...");
+            System.exit(1);
+        }
+
+        File outputJar = new File(paths.get(0));
+        File[] inputJars = new File[paths.size() - 1];
+        for (int i = 1; i < paths.size(); i++) {
+            inputJars[i - 1] = new File(paths.get(i));
+        }
+
+        long startTime = System.currentTimeMillis();
+        int classCount = new InstrumentedJarWriter(setup).write(outputJar, inputJars);
+        System.out.println("Wrote " + classCount + " classes to " + outputJar + " in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+    }
+}
@@ -0,0 +1,282 @@
+package org.robolectric.bytecode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches {@link ShadowWrangler}'s invocation plans.
+ * <p/>
+ * Lookups don't lock and don't allocate: plans are filed by class and method name, and the few plans sharing both
+ * are told apart by shadow class, staticness and parameter types.
+ * <p/>
+ * Callers may keep plans they looked up and reuse them without asking the cache again, as {@link ShadowWrangler}
+ * does per call site; they should report each reuse with {@link #countCallSiteHit()}, so the stats show how often
+ * the cache itself is asked apart from how often plans are reused.
+ * <p/>
+ * The cache is unbounded by default. Given a capacity, once it's exceeded about an eighth of the plans are evicted
+ * in one go, choosing by {@link EvictionPolicy}.
+ *
+ * @param <T> the plan type
+ */
+public class InvocationPlanCache<T> {
+    public enum EvictionPolicy {
+        /** Evict the plans that were used least recently (approximately). */
+        LRU,
+        /** Evict the plans that were created first. */
+        FIFO
+    }
+
+    private final ConcurrentMap<Class, ConcurrentMap<String, Entry[]>> entriesByClass =
+            new ConcurrentHashMap<Class, ConcurrentMap<String, Entry[]>>();
+    private final int capacity;
+    private final EvictionPolicy evictionPolicy;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong callSiteHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong buildTimeNanos = new AtomicLong();
+    private final AtomicLong creationSequence = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    public InvocationPlanCache() {
+        this(0, EvictionPolicy.LRU);
+    }
+
+    /**
+     * @param capacity the maximum number of plans to keep, or 0 for no limit
+     */
+    public InvocationPlanCache(int capacity, EvictionPolicy evictionPolicy) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        this.capacity = capacity;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @return the cached plan, or null (counted as a miss) if there is none
+     */
+    public T get(Class clazz, Class shadowClass, String methodName, boolean isStatic, String[] paramTypes) {
+        ConcurrentMap<String, Entry[]> entriesByMethodName = entriesByClass.get(clazz);
+        if (entriesByMethodName != null) {
+            Entry[] entries = entriesByMethodName.get(methodName);
+            if (entries != null) {
+                for (Entry entry : entries) {
+                    if (entry.matches(shadowClass, isStatic, paramTypes)) {
+                        hits.incrementAndGet();
+                        if (evictionPolicy == EvictionPolicy.LRU) entry.lastUsed = clock.incrementAndGet();
+                        //noinspection unchecked
+                        return (T) entry.plan;
+                    }
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Counts a plan reused by the caller without a {@link #get} (see above).
+     */
+    public void countCallSiteHit() {
+        callSiteHits.incrementAndGet();
+    }
+
+    /**
+     * Adds a plan, unless another thread got there first.
+     *
+     * @param buildTimeNanos how long it took to build the plan, for {@link Stats#buildTimeNanos}
+     * @return the plan now in the cache
+     */
+    public T put(Class clazz, Class shadowClass, String methodName, boolean isStatic, String[] paramTypes,
+                 T plan, long buildTimeNanos) {
+        this.buildTimeNanos.addAndGet(buildTimeNanos);
+
+        ConcurrentMap<String, Entry[]> entriesByMethodName = entriesByClass.get(clazz);
+        if (entriesByMethodName == null) {
+            entriesByMethodName = new ConcurrentHashMap<String, Entry[]>();
+            ConcurrentMap<String, Entry[]> existing = entriesByClass.putIfAbsent(clazz, entriesByMethodName);
+            if (existing != null) entriesByMethodName = existing;
+        }
+
+        Entry newEntry = new Entry(shadowClass, isStatic, paramTypes, plan, creationSequence.incrementAndGet(), clock.incrementAndGet());
+        while (true) {
+            Entry[] entries = entriesByMethodName.get(methodName);
+            if (entries == null) {
+                if (entriesByMethodName.putIfAbsent(methodName, new Entry[]{newEntry}) == null) break;
+                continue;
+            }
+
+            for (Entry entry : entries) {
+                if (entry.matches(shadowClass, isStatic, paramTypes)) {
+                    //noinspection unchecked
+                    return (T) entry.plan;
+                }
+            }
+
+            Entry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+            newEntries[entries.length] = newEntry;
+            if (entriesByMethodName.replace(methodName, entries, newEntries)) break;
+        }
+
+        if (size.incrementAndGet() > capacity && capacity > 0) {
+            evict();
+        }
+        return plan;
+    }
+
+    public void clear() {
+        synchronized (evictionLock) {
+            for (Located located : allEntries()) {
+                remove(located);
+            }
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(size.get(), hits.get(), callSiteHits.get(), misses.get(), evictions.get(), buildTimeNanos.get());
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            if (size.get() <= capacity) return;
+
+            List<Located> candidates = allEntries();
+            Collections.sort(candidates, new Comparator<Located>() {
+                @Override public int compare(Located a, Located b) {
+                    return a.age < b.age ? -1 : (a.age == b.age ? 0 : 1);
+                }
+            });
+
+            int toEvict = Math.min(candidates.size(), size.get() - capacity + capacity / 8);
+            for (int i = 0; i < toEvict; i++) {
+                if (remove(candidates.get(i))) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private boolean remove(Located located) {
+        while (true) {
+            Entry[] entries = located.entriesByMethodName.get(located.methodName);
+            if (entries == null) return false;
+
+            int index = Arrays.asList(entries).indexOf(located.entry);
+            if (index == -1) return false;
+
+            boolean removed;
+            if (entries.length == 1) {
+                removed = located.entriesByMethodName.remove(located.methodName, entries);
+            } else {
+                Entry[] newEntries = new Entry[entries.length - 1];
+                System.arraycopy(entries, 0, newEntries, 0, index);
+                System.arraycopy(entries, index + 1, newEntries, index, entries.length - index - 1);
+                removed = located.entriesByMethodName.replace(located.methodName, entries, newEntries);
+            }
+
+            if (removed) {
+                size.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private List<Located> allEntries() {
+        List<Located> all = new ArrayList<Located>();
+        for (ConcurrentMap<String, Entry[]> entriesByMethodName : entriesByClass.values()) {
+            for (java.util.Map.Entry<String, Entry[]> mapEntry : entriesByMethodName.entrySet()) {
+                for (Entry entry : mapEntry.getValue()) {
+                    long age = evictionPolicy == EvictionPolicy.LRU ? entry.lastUsed : entry.sequence;
+                    all.add(new Located(entriesByMethodName, mapEntry.getKey(), entry, age));
+                }
+            }
+        }
+        return all;
+    }
+
+    private static class Entry {
+        final Class shadowClass;
+        final boolean isStatic;
+        final String[] paramTypes;
+        final Object plan;
+        final long sequence;
+        volatile long lastUsed;
+
+        Entry(Class shadowClass, boolean isStatic, String[] paramTypes, Object plan, long sequence, long lastUsed) {
+            this.shadowClass = shadowClass;
+            this.isStatic = isStatic;
+            this.paramTypes = paramTypes;
+            this.plan = plan;
+            this.sequence = sequence;
+            this.lastUsed = lastUsed;
+        }
+
+        boolean matches(Class shadowClass, boolean isStatic, String[] paramTypes) {
+            return this.shadowClass == shadowClass && this.isStatic == isStatic && Arrays.equals(this.paramTypes, paramTypes);
+        }
+    }
+
+    private static class Located {
+        final ConcurrentMap<String, Entry[]> entriesByMethodName;
+        final String methodName;
+        final Entry entry;
+        // read once, so concurrent lookups can't reorder entries while they're being sorted
+        final long age;
+
+        Located(ConcurrentMap<String, Entry[]> entriesByMethodName, String methodName, Entry entry, long age) {
+            this.entriesByMethodName = entriesByMethodName;
+            this.methodName = methodName;
+            this.entry = entry;
+            this.age = age;
+        }
+    }
+
+    public static class Stats {
+        public final int size;
+        /** Lookups which found a plan in the cache. */
+        public final long hits;
+        /** Plans reused by callers without a lookup, as reported by {@link #countCallSiteHit()}; not in {@link #hits}. */
+        public final long callSiteHits;
+        public final long misses;
+        public final long evictions;
+        public final long buildTimeNanos;
+
+        public Stats(int size, long hits, long callSiteHits, long misses, long evictions, long buildTimeNanos) {
+            this.size = size;
+            this.hits = hits;
+            this.callSiteHits = callSiteHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.buildTimeNanos = buildTimeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "InvocationPlanCache.Stats{" +
+                    "size=" + size +
+                    ", hits=" + hits +
+                    ", callSiteHits=" + callSiteHits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", buildTimeMs=" + (buildTimeNanos / 1000000) +
+                    '}';
+        }
+    }
+}
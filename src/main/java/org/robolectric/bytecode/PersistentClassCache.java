@@ -0,0 +1,186 @@
+package org.robolectric.bytecode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * Content-addressed, on-disk cache of instrumented class bytes, safe to share between JVMs.
+ * <p/>
+ * Entries are keyed by a digest of the original class bytes plus a description of the instrumentation
+ * configuration, so a changed SDK jar, {@link Setup}, or instrumentor never sees stale entries; they're simply
+ * never looked up again. Each entry is written to a temp file and renamed into place, so concurrent JVMs never
+ * observe a partially written class.
+ * <p/>
+ * A cache may also keep entries in memory, so sandboxes running in parallel in one JVM instrument each class only
+ * once; a memory-only cache has no directory.
+ */
+public class PersistentClassCache {
+    private static final byte[] NOT_INSTRUMENTED = new byte[0];
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File cacheDir;
+    private final ConcurrentMap<String, byte[]> inMemory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    public PersistentClassCache(File cacheDir) {
+        this(cacheDir, false);
+    }
+
+    /**
+     * @param cacheDir where to store entries, or null to keep them only in memory
+     * @param keepInMemory whether to also keep entries in memory
+     */
+    public PersistentClassCache(File cacheDir, boolean keepInMemory) {
+        if (cacheDir == null && !keepInMemory) throw new IllegalArgumentException("no cache dir and not in memory");
+        this.cacheDir = cacheDir;
+        this.inMemory = keepInMemory ? new ConcurrentHashMap<String, byte[]>() : null;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * @param configuration describes everything besides the original class bytes that affects instrumentation
+     * @param origClassBytes the class bytes as read from the classpath
+     * @return the key under which the instrumented form of these bytes is stored
+     */
+    public String keyFor(String configuration, byte[] origClassBytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+            digest.update(configuration.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update((byte) 0);
+        digest.update(origClassBytes);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the cached bytes, an empty array if the class was cached as not needing instrumentation, or null if
+     *     there is no entry for this key
+     */
+    public byte[] get(String key) {
+        if (inMemory != null) {
+            byte[] bytes = inMemory.get(key);
+            if (bytes != null) {
+                hits.incrementAndGet();
+                return bytes;
+            }
+            if (cacheDir == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            byte[] bytes = readBytes(new FileInputStream(file));
+            hits.incrementAndGet();
+            if (inMemory != null) inMemory.put(key, bytes);
+            return bytes;
+        } catch (IOException e) {
+            // evicted out from under us, or unreadable; just instrument again
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, byte[] classBytes) {
+        if (inMemory != null) {
+            inMemory.put(key, classBytes);
+            if (cacheDir == null) {
+                writes.incrementAndGet();
+                return;
+            }
+        }
+
+        File file = fileFor(key);
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) return;
+
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(key, ".tmp", dir);
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(classBytes);
+            } finally {
+                out.close();
+            }
+
+            // entries are immutable, so if another JVM beat us to it, theirs is as good as ours
+            if (tempFile.renameTo(file)) {
+                tempFile = null;
+                writes.incrementAndGet();
+            }
+        } catch (IOException e) {
+            // no problem, we'll just instrument it again next time
+        } finally {
+            if (tempFile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    public void putNotInstrumented(String key) {
+        put(key, NOT_INSTRUMENTED);
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    public int getWriteCount() {
+        return writes.get();
+    }
+
+    private File fileFor(String key) {
+        return new File(new File(cacheDir, key.substring(0, 2)), key.substring(2) + ".class");
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return "PersistentClassCache{" +
+                "cacheDir=" + cacheDir +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", writes=" + writes +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package org.robolectric.bytecode;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Sets the {@link org.robolectric.internal.RealObject} fields of a shadow. Instances are normally generated by
+ * {@link RealObjectInjectorGenerator} and write the fields directly.
+ */
+public abstract class RealObjectInjector {
+    public abstract void inject(Object shadow, Object realObject);
+
+    /**
+     * Used for shadow classes whose fields generated code can't write, e.g. private fields of shadows loaded outside
+     * the instrumenting class loader.
+     */
+    static class Reflective extends RealObjectInjector {
+        private final List<Field> realObjectFields;
+
+        Reflective(List<Field> realObjectFields) {
+            this.realObjectFields = realObjectFields;
+            for (Field realObjectField : realObjectFields) {
+                realObjectField.setAccessible(true);
+            }
+        }
+
+        @Override
+        public void inject(Object shadow, Object realObject) {
+            for (Field realObjectField : realObjectFields) {
+                try {
+                    realObjectField.set(shadow, realObject);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "reflective injector for " + realObjectFields;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.robolectric.bytecode;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+import org.robolectric.internal.RealObject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates a {@link RealObjectInjector} class per shadow class, which writes all of the shadow's
+ * {@link RealObject} fields, including inherited ones, with plain field stores instead of reflection.
+ *
+ * Generated classes can only write public fields of public classes, so shadows with any other {@link RealObject}
+ * fields get a reflective injector. Shadows' fields are left as they're declared.
+ */
+public class RealObjectInjectorGenerator implements Opcodes {
+    private static final Type REAL_OBJECT_INJECTOR_TYPE = Type.getType(RealObjectInjector.class);
+    private static final Method CONSTRUCTOR = Method.getMethod("void <init> ()");
+    private static final Method INJECT = Method.getMethod("void inject(Object, Object)");
+
+    private final Map<Class<?>, RealObjectInjector> injectors = new HashMap<Class<?>, RealObjectInjector>();
+    private final Map<ClassLoader, GeneratedClassLoader> injectorClassLoaders = new HashMap<ClassLoader, GeneratedClassLoader>();
+    private int generatedCount = 0;
+
+    public synchronized RealObjectInjector injectorFor(Class<?> shadowClass) {
+        RealObjectInjector injector = injectors.get(shadowClass);
+        if (injector == null) {
+            List<Field> realObjectFields = findRealObjectFields(shadowClass);
+            injector = !realObjectFields.isEmpty() && canWriteDirectly(realObjectFields)
+                    ? generate(shadowClass, realObjectFields)
+                    : new RealObjectInjector.Reflective(realObjectFields);
+            injectors.put(shadowClass, injector);
+        }
+        return injector;
+    }
+
+    public synchronized int getGeneratedCount() {
+        return generatedCount;
+    }
+
+    static List<Field> findRealObjectFields(Class<?> shadowClass) {
+        List<Field> realObjectFields = new ArrayList<Field>();
+        while (shadowClass != null) {
+            for (Field field : shadowClass.getDeclaredFields()) {
+                if (field.isAnnotationPresent(RealObject.class)) {
+                    realObjectFields.add(field);
+                }
+            }
+            shadowClass = shadowClass.getSuperclass();
+        }
+        return realObjectFields;
+    }
+
+    static boolean canWriteDirectly(List<Field> fields) {
+        for (Field field : fields) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isPublic(modifiers) || Modifier.isFinal(modifiers) || Modifier.isStatic(modifiers)) return false;
+            if (!isPublic(field.getDeclaringClass()) || !isPublic(field.getType())) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPublic(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers());
+    }
+
+    private RealObjectInjector generate(Class<?> shadowClass, List<Field> realObjectFields) {
+        String className = RealObjectInjector.class.getName() + "$" + shadowClass.getSimpleName() + "$" + (++generatedCount);
+        byte[] bytes = generateBytes(className.replace('.', '/'), realObjectFields);
+
+        try {
+            Class<?> injectorClass = getInjectorClassLoader(shadowClass.getClassLoader()).define(className, bytes);
+            return (RealObjectInjector) injectorClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static byte[] generateBytes(String internalName, List<Field> realObjectFields) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, internalName, null,
+                REAL_OBJECT_INJECTOR_TYPE.getInternalName(), null);
+
+        GeneratorAdapter constructor = new GeneratorAdapter(ACC_PUBLIC, CONSTRUCTOR, null, null, classWriter);
+        constructor.loadThis();
+        constructor.invokeConstructor(REAL_OBJECT_INJECTOR_TYPE, CONSTRUCTOR);
+        constructor.returnValue();
+        constructor.endMethod();
+
+        GeneratorAdapter m = new GeneratorAdapter(ACC_PUBLIC, INJECT, null, null, classWriter);
+        for (Field field : realObjectFields) {
+            Type ownerType = Type.getType(field.getDeclaringClass());
+            Type fieldType = Type.getType(field.getType());
+            m.loadArg(0);
+            m.checkCast(ownerType);
+            m.loadArg(1);
+            m.unbox(fieldType);
+            m.putField(ownerType, field.getName(), fieldType);
+        }
+        m.returnValue();
+        m.endMethod();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private GeneratedClassLoader getInjectorClassLoader(ClassLoader parent) {
+        GeneratedClassLoader injectorClassLoader = injectorClassLoaders.get(parent);
+        if (injectorClassLoader == null) {
+            // the shadow's class loader may have its own copy of RealObjectInjector; generated classes must extend ours
+            injectorClassLoader = new GeneratedClassLoader(parent, RealObjectInjector.class);
+            injectorClassLoaders.put(parent, injectorClassLoader);
+        }
+        return injectorClassLoader;
+    }
+}
@@ -124,6 +124,15 @@ public class RobolectricInternals {
         }
     }
 
+    @SuppressWarnings({"UnusedDeclaration"})
+    public static Object methodInvoked(CallSite callSite, Object instance, Object[] params) throws Throwable {
+        try {
+            return classHandler.methodInvoked(callSite, instance, params);
+        } catch(java.lang.LinkageError e) {
+            throw new Exception(e);
+        }
+    }
+
     @SuppressWarnings({"UnusedDeclaration"})
     public static Object intercept(String className, String methodName, Object instance, Object[] paramTypes, Object[] params) throws Throwable {
         try {
@@ -23,6 +23,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import static java.util.Arrays.asList;
 
@@ -32,6 +34,12 @@ public class Setup {
             RobolectricTestRunnerInterface.class,
             RealObject.class,
             ShadowWrangler.class,
+            ShadowIndex.class,
+            ShadowIndex.Entry.class,
+            InvocationPlanCache.class,
+            InvocationPlanCache.Stats.class,
+            CallSite.class,
+            ShadowedObject.class,
             Vars.class,
             AndroidManifest.class,
             DatabaseConfig.DatabaseMap.class,
@@ -40,6 +48,7 @@ public class Setup {
             org.robolectric.bytecode.InstrumentingClassLoader.class,
             org.robolectric.bytecode.JavassistInstrumentingClassLoader.class,
             org.robolectric.bytecode.AsmInstrumentingClassLoader.class,
+            org.robolectric.bytecode.PersistentClassCache.class,
             RobolectricContext.class,
             RobolectricContext.Factory.class,
             ResourcePath.class,
@@ -176,6 +185,32 @@ public class Setup {
         return classInfo.getName().startsWith("com.google.android.maps.");
     }
 
+    /**
+     * Describes everything about this Setup that affects how a class's bytes are instrumented. Instrumented classes
+     * cached by a {@link PersistentClassCache} are only reused by a Setup with the same fingerprint, and
+     * {@link org.robolectric.RobolectricContext}s are only shared by test runners whose Setups have the same one.
+     *
+     * Subclasses with instance state that changes any of their decisions, e.g. {@link #shouldInstrument(ClassInfo)},
+     * {@link #containsStubs(ClassInfo)} or {@link #shouldAcquire(String)}, must override this and include that state;
+     * otherwise two instances with different state are treated as interchangeable.
+     *
+     * @return a string which changes whenever instrumentation would change
+     */
+    public String instrumentationFingerprint() {
+        StringBuilder buf = new StringBuilder(getClass().getName());
+        for (Map.Entry<String, String> entry : new TreeMap<String, String>(classNameTranslations()).entrySet()) {
+            buf.append(';').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        Set<String> methodRefs = new TreeSet<String>();
+        for (MethodRef methodRef : methodsToIntercept()) {
+            methodRefs.add(methodRef.className + "#" + methodRef.methodName);
+        }
+        for (String methodRef : methodRefs) {
+            buf.append(';').append(methodRef);
+        }
+        return buf.toString();
+    }
+
     public static class MethodRef {
         public final String className;
         public final String methodName;
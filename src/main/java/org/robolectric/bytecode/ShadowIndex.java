@@ -0,0 +1,140 @@
+package org.robolectric.bytecode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A table of shadow classes, written at build time by {@link org.robolectric.internal.ShadowIndexProcessor}, so
+ * shadows can be bound without loading or reflecting on them.
+ * <p/>
+ * Each line describes one shadow class, with tab-separated fields: the shadow class name, the name of the class it
+ * shadows, its callThroughByDefault flag, the name of its superclass if that's a shadow too (or "-"), and then the
+ * signatures of the methods it declares, like {@code setText(java.lang.CharSequence,int)}. Lines starting with "#"
+ * are comments.
+ */
+public class ShadowIndex {
+    public static final String RESOURCE_NAME = "org/robolectric/shadows.index";
+
+    private static final String HEADER = "# shadow classes, written by the build; don't edit";
+    private static final String NO_SUPERCLASS = "-";
+
+    private static ShadowIndex defaultIndex;
+    private static boolean defaultIndexLoaded;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    public ShadowIndex(Collection<Entry> entries) {
+        for (Entry entry : entries) {
+            this.entries.put(entry.shadowClassName, entry);
+        }
+    }
+
+    /**
+     * @return the index of Robolectric's own shadows, or null if the build didn't write one, e.g. in an IDE which
+     *     doesn't run annotation processors
+     */
+    public static synchronized ShadowIndex getDefault() {
+        if (!defaultIndexLoaded) {
+            InputStream in = ShadowIndex.class.getClassLoader().getResourceAsStream(RESOURCE_NAME);
+            if (in != null) {
+                try {
+                    defaultIndex = read(in);
+                } catch (IOException e) {
+                    throw new RuntimeException("couldn't read " + RESOURCE_NAME, e);
+                }
+            }
+            defaultIndexLoaded = true;
+        }
+        return defaultIndex;
+    }
+
+    public static ShadowIndex read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            List<Entry> entries = new ArrayList<Entry>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#")) continue;
+
+                String[] fields = line.split("\t");
+                if (fields.length < 4) throw new IOException("bad shadow index line: " + line);
+                entries.add(new Entry(fields[0], fields[1], Boolean.parseBoolean(fields[2]),
+                        fields[3].equals(NO_SUPERCLASS) ? null : fields[3],
+                        Arrays.asList(fields).subList(4, fields.length)));
+            }
+            return new ShadowIndex(entries);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write(HEADER + "\n");
+        for (Entry entry : entries.values()) {
+            out.write(entry.shadowClassName + "\t" + entry.realClassName + "\t" + entry.callThroughByDefault + "\t"
+                    + (entry.superShadowClassName == null ? NO_SUPERCLASS : entry.superShadowClassName));
+            for (String methodSignature : entry.methodSignatures) {
+                out.write("\t" + methodSignature);
+            }
+            out.write("\n");
+        }
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public Entry getEntry(String shadowClassName) {
+        return entries.get(shadowClassName);
+    }
+
+    /**
+     * @return false if the shadow class is indexed and neither it nor any of its shadow superclasses declares a method
+     *     with this name, so it can't have an implementation for it; true otherwise
+     */
+    public boolean mightDeclareMethod(String shadowClassName, String methodName) {
+        String className = shadowClassName;
+        while (className != null) {
+            Entry entry = entries.get(className);
+            if (entry == null || entry.methodNames.contains(methodName)) return true;
+            className = entry.superShadowClassName;
+        }
+        return false;
+    }
+
+    public static class Entry {
+        public final String shadowClassName;
+        public final String realClassName;
+        public final boolean callThroughByDefault;
+        public final String superShadowClassName;
+        public final List<String> methodSignatures;
+        private final Set<String> methodNames = new HashSet<String>();
+
+        /**
+         * @param superShadowClassName the shadow class's superclass, or null if that isn't a shadow
+         */
+        public Entry(String shadowClassName, String realClassName, boolean callThroughByDefault,
+                     String superShadowClassName, List<String> methodSignatures) {
+            this.shadowClassName = shadowClassName;
+            this.realClassName = realClassName;
+            this.callThroughByDefault = callThroughByDefault;
+            this.superShadowClassName = superShadowClassName;
+            this.methodSignatures = new ArrayList<String>(methodSignatures);
+            for (String methodSignature : methodSignatures) {
+                methodNames.add(methodSignature.substring(0, methodSignature.indexOf('(')));
+            }
+        }
+    }
+}
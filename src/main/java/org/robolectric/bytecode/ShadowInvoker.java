@@ -0,0 +1,43 @@
+package org.robolectric.bytecode;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls a single shadow method. Instances are normally generated by {@link ShadowInvokerGenerator} and call the
+ * shadow method directly; exceptions thrown by the shadow method propagate unwrapped.
+ */
+public abstract class ShadowInvoker {
+    /**
+     * @param shadow the shadow instance, or null for a static shadow method
+     * @param params the arguments to the shadow method, with primitives boxed
+     * @return the shadow method's return value, boxed if primitive, or null for a void method
+     */
+    public abstract Object invoke(Object shadow, Object[] params) throws Throwable;
+
+    /**
+     * Used for shadow methods which generated code can't call directly, e.g. non-public methods.
+     */
+    static class Reflective extends ShadowInvoker {
+        private final Method method;
+
+        Reflective(Method method) {
+            this.method = method;
+            method.setAccessible(true);
+        }
+
+        @Override
+        public Object invoke(Object shadow, Object[] params) throws Throwable {
+            try {
+                return method.invoke(shadow, params);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "reflective invoker for " + method;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.robolectric.bytecode;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates a {@link ShadowInvoker} class per shadow method, so calls to shadow methods are plain typed invocations
+ * instead of going through {@link java.lang.reflect.Method#invoke(Object, Object...)}.
+ *
+ * Generated classes are defined in a child of the shadow class's class loader, so they can only call public methods
+ * of public classes; anything else gets a reflective invoker.
+ */
+public class ShadowInvokerGenerator implements Opcodes {
+    private static final Type SHADOW_INVOKER_TYPE = Type.getType(ShadowInvoker.class);
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+    private static final Method CONSTRUCTOR = Method.getMethod("void <init> ()");
+    private static final Method INVOKE = Method.getMethod("Object invoke(Object, Object[])");
+
+    private final Map<java.lang.reflect.Method, ShadowInvoker> invokers = new HashMap<java.lang.reflect.Method, ShadowInvoker>();
+    private final Map<ClassLoader, GeneratedClassLoader> invokerClassLoaders = new HashMap<ClassLoader, GeneratedClassLoader>();
+    private int generatedCount = 0;
+
+    public synchronized ShadowInvoker invokerFor(java.lang.reflect.Method method) {
+        ShadowInvoker invoker = invokers.get(method);
+        if (invoker == null) {
+            invoker = canCallDirectly(method) ? generate(method) : new ShadowInvoker.Reflective(method);
+            invokers.put(method, invoker);
+        }
+        return invoker;
+    }
+
+    public synchronized int getGeneratedCount() {
+        return generatedCount;
+    }
+
+    static boolean canCallDirectly(java.lang.reflect.Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || !isPublic(method.getDeclaringClass())) return false;
+        for (Class<?> paramType : method.getParameterTypes()) {
+            if (!isPublic(paramType)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPublic(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers());
+    }
+
+    private ShadowInvoker generate(java.lang.reflect.Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        String className = ShadowInvoker.class.getName() + "$" + declaringClass.getSimpleName()
+                + "_" + method.getName() + "$" + (++generatedCount);
+        byte[] bytes = generateBytes(className.replace('.', '/'), method);
+
+        try {
+            Class<?> invokerClass = getInvokerClassLoader(declaringClass.getClassLoader()).define(className, bytes);
+            return (ShadowInvoker) invokerClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static byte[] generateBytes(String internalName, java.lang.reflect.Method method) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, internalName, null,
+                SHADOW_INVOKER_TYPE.getInternalName(), null);
+
+        GeneratorAdapter constructor = new GeneratorAdapter(ACC_PUBLIC, CONSTRUCTOR, null, null, classWriter);
+        constructor.loadThis();
+        constructor.invokeConstructor(SHADOW_INVOKER_TYPE, CONSTRUCTOR);
+        constructor.returnValue();
+        constructor.endMethod();
+
+        GeneratorAdapter m = new GeneratorAdapter(ACC_PUBLIC, INVOKE, null,
+                new Type[]{Type.getType(Throwable.class)}, classWriter);
+        Class<?> declaringClass = method.getDeclaringClass();
+        Type ownerType = Type.getType(declaringClass);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (!isStatic) {
+            m.loadArg(0);
+            m.checkCast(ownerType);
+        }
+
+        Class<?>[] paramTypes = method.getParameterTypes();
+        for (int i = 0; i < paramTypes.length; i++) {
+            m.loadArg(1);
+            m.push(i);
+            m.arrayLoad(OBJECT_TYPE);
+            m.unbox(Type.getType(paramTypes[i]));
+        }
+
+        Method targetMethod = Method.getMethod(method);
+        if (isStatic) {
+            m.invokeStatic(ownerType, targetMethod);
+        } else if (declaringClass.isInterface()) {
+            m.invokeInterface(ownerType, targetMethod);
+        } else {
+            m.invokeVirtual(ownerType, targetMethod);
+        }
+
+        Type returnType = targetMethod.getReturnType();
+        if (returnType.getSort() == Type.VOID) {
+            m.visitInsn(ACONST_NULL);
+        } else {
+            m.box(returnType);
+        }
+        m.returnValue();
+        m.endMethod();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private GeneratedClassLoader getInvokerClassLoader(ClassLoader parent) {
+        GeneratedClassLoader invokerClassLoader = invokerClassLoaders.get(parent);
+        if (invokerClassLoader == null) {
+            // the shadow's class loader may have its own copy of ShadowInvoker; generated classes must extend ours
+            invokerClassLoader = new GeneratedClassLoader(parent, ShadowInvoker.class);
+            invokerClassLoaders.put(parent, invokerClassLoader);
+        }
+        return invokerClassLoader;
+    }
+}
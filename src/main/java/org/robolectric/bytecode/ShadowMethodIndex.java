@@ -0,0 +1,124 @@
+package org.robolectric.bytecode;
+
+import org.robolectric.internal.Implementation;
+import org.robolectric.internal.Implements;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The shadow methods of a shadow class, looked up by name and parameter types. The class is scanned once, so finding
+ * the shadow method for a call is a hash lookup instead of a reflective search.
+ * <p/>
+ * Lookups find what {@link Class#getMethod(String, Class[])} would, or failing that
+ * {@link Class#getDeclaredMethod(String, Class[])}, but only methods declared on a class annotated with
+ * {@link Implements}.
+ */
+class ShadowMethodIndex {
+    private final Map<Signature, ShadowMethod> shadowMethods = new HashMap<Signature, ShadowMethod>();
+
+    ShadowMethodIndex(Class<?> shadowClass) {
+        Map<Class<?>, Boolean> isShadowClass = new HashMap<Class<?>, Boolean>();
+        Map<Signature, Method> methods = new HashMap<Signature, Method>();
+        for (Method method : shadowClass.getDeclaredMethods()) {
+            methods.put(new Signature(method.getName(), method.getParameterTypes()), method);
+        }
+
+        Map<Signature, Method> publicMethods = new HashMap<Signature, Method>();
+        for (Method method : shadowClass.getMethods()) {
+            Signature signature = new Signature(method.getName(), method.getParameterTypes());
+            Method existing = publicMethods.get(signature);
+            // like getMethod(), prefer the most specific return type when a method is overridden covariantly
+            if (existing == null || existing.getReturnType().isAssignableFrom(method.getReturnType())) {
+                publicMethods.put(signature, method);
+            }
+        }
+        methods.putAll(publicMethods);
+
+        for (Map.Entry<Signature, Method> entry : methods.entrySet()) {
+            Method method = entry.getValue();
+            if (isShadowClass(method.getDeclaringClass(), isShadowClass)) {
+                shadowMethods.put(entry.getKey(), new ShadowMethod(method, isI18nSafe(method)));
+            }
+        }
+    }
+
+    /**
+     * @return the shadow method, or null if the shadow class has none with this signature
+     */
+    ShadowMethod get(String methodName, Class<?>[] paramClasses) {
+        return shadowMethods.get(new Signature(methodName, paramClasses));
+    }
+
+    int size() {
+        return shadowMethods.size();
+    }
+
+    // the shadow class may come from another class loader than ours, so annotations are compared by name
+    private static boolean isShadowClass(Class<?> declaringClass, Map<Class<?>, Boolean> isShadowClass) {
+        Boolean result = isShadowClass.get(declaringClass);
+        if (result == null) {
+            result = findAnnotation(declaringClass.getAnnotations(), Implements.class) != null;
+            isShadowClass.put(declaringClass, result);
+        }
+        return result;
+    }
+
+    private static boolean isI18nSafe(Method method) {
+        Annotation implementation = findAnnotation(method.getAnnotations(), Implementation.class);
+        if (implementation == null) return true;
+
+        try {
+            return (Boolean) implementation.getClass().getMethod("i18nSafe").invoke(implementation);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private static Annotation findAnnotation(Annotation[] annotations, Class<? extends Annotation> annotationClass) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType().getName().equals(annotationClass.getName())) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    static class ShadowMethod {
+        final Method method;
+        final boolean i18nSafe;
+
+        ShadowMethod(Method method, boolean i18nSafe) {
+            this.method = method;
+            this.i18nSafe = i18nSafe;
+        }
+    }
+
+    private static class Signature {
+        private final String name;
+        private final Class<?>[] paramClasses;
+        private final int hashCode;
+
+        Signature(String name, Class<?>[] paramClasses) {
+            this.name = name;
+            this.paramClasses = paramClasses;
+            this.hashCode = 31 * name.hashCode() + Arrays.hashCode(paramClasses);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Signature)) return false;
+            Signature signature = (Signature) o;
+            return name.equals(signature.name) && Arrays.equals(paramClasses, signature.paramClasses);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
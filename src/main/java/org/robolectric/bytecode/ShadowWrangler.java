@@ -1,13 +1,10 @@
 package org.robolectric.bytecode;
 
 import android.support.v4.content.LocalBroadcastManager;
-import org.robolectric.internal.Implementation;
-import org.robolectric.internal.RealObject;
 import org.robolectric.util.Function;
 import org.robolectric.util.I18nException;
 import org.robolectric.util.Join;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -16,6 +13,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -38,14 +36,15 @@ public class ShadowWrangler implements ClassHandler {
     public boolean debug = false;
     private boolean strictI18n = false;
 
-    private final Map<InvocationProfile, InvocationPlan> invocationPlans = new LinkedHashMap<InvocationProfile, InvocationPlan>() {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<InvocationProfile, InvocationPlan> eldest) {
-            return size() > 500;
-        }
-    };
-    private final Map<Class, MetaShadow> metaShadowMap = new HashMap<Class, MetaShadow>();
-    private Map<String, ShadowConfig> shadowClassMap = new HashMap<String, ShadowConfig>();
+    private final InvocationPlanCache<InvocationPlan> invocationPlans;
+    private final RealObjectInjectorGenerator realObjectInjectorGenerator = new RealObjectInjectorGenerator();
+    private final ShadowInvokerGenerator shadowInvokerGenerator = new ShadowInvokerGenerator();
+    private final Map<Class, ShadowMethodIndex> shadowMethodIndexes = new HashMap<Class, ShadowMethodIndex>();
+    private ShadowIndex shadowIndex;
+    // replaced, never changed, whenever shadows are bound or reset, invalidating every CallSiteCache made before
+    private volatile Bindings bindings = Bindings.NONE;
+    private Bindings defaultBindings;
+    private ShadowIndex defaultBindingsIndex;
     private boolean logMissingShadowMethods = false;
     private static ThreadLocal<Info> infos = new ThreadLocal<Info>() {
         @Override
@@ -66,10 +65,88 @@ public class ShadowWrangler implements ClassHandler {
             this.callThroughByDefault = callThroughByDefault;
             this.shadowClassName = shadowClassName;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ShadowConfig that = (ShadowConfig) o;
+
+            if (callThroughByDefault != that.callThroughByDefault) return false;
+            if (!shadowClassName.equals(that.shadowClassName)) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = shadowClassName.hashCode();
+            result = 31 * result + (callThroughByDefault ? 1 : 0);
+            return result;
+        }
+    }
+
+    /**
+     * An immutable set of shadow bindings: a base set, normally the default shadows, shared by every test, and the
+     * bindings made on top of it since. Binding a shadow copies only the latter.
+     */
+    private static class Bindings {
+        static final Bindings NONE = new Bindings(Collections.<String, ShadowConfig>emptyMap(),
+                Collections.<String, ShadowConfig>emptyMap());
+
+        private final Map<String, ShadowConfig> base;
+        private final Map<String, ShadowConfig> overrides;
+
+        Bindings(Map<String, ShadowConfig> base, Map<String, ShadowConfig> overrides) {
+            this.base = base;
+            this.overrides = overrides;
+        }
+
+        ShadowConfig get(String realClassName) {
+            ShadowConfig shadowConfig = overrides.get(realClassName);
+            return shadowConfig == null ? base.get(realClassName) : shadowConfig;
+        }
+
+        Bindings with(String realClassName, ShadowConfig shadowConfig) {
+            Map<String, ShadowConfig> newOverrides = new HashMap<String, ShadowConfig>(overrides);
+            newOverrides.put(realClassName, shadowConfig);
+            return new Bindings(base, newOverrides);
+        }
+
+        Bindings with(Map<String, ShadowConfig> shadowConfigs) {
+            Map<String, ShadowConfig> newOverrides = new HashMap<String, ShadowConfig>(overrides);
+            newOverrides.putAll(shadowConfigs);
+            return new Bindings(base, newOverrides);
+        }
+    }
+
+    /**
+     * What a {@link CallSite} remembers about its last dispatch: the plan is reused as long as the same shadows are
+     * bound, and (for instance methods) the shadow is of the same class.
+     */
+    private static class CallSiteCache {
+        final Bindings bindings;
+        final InvocationPlan invocationPlan;
+
+        CallSiteCache(Bindings bindings, InvocationPlan invocationPlan) {
+            this.bindings = bindings;
+            this.invocationPlan = invocationPlan;
+        }
     }
 
     public ShadowWrangler(Setup setup) {
+        this(setup, new InvocationPlanCache());
+    }
+
+    public ShadowWrangler(Setup setup, InvocationPlanCache invocationPlanCache) {
         this.setup = setup;
+        //noinspection unchecked
+        this.invocationPlans = invocationPlanCache;
+    }
+
+    public InvocationPlanCache.Stats getInvocationPlanCacheStats() {
+        return invocationPlans.getStats();
     }
 
     @Override
@@ -79,7 +156,7 @@ public class ShadowWrangler implements ClassHandler {
 
     @Override
     public void reset() {
-        shadowClassMap.clear();
+        bindings = Bindings.NONE;
     }
 
     @Override
@@ -109,129 +186,188 @@ public class ShadowWrangler implements ClassHandler {
 
     public void bindShadowClass(String realClassName, Class<?> shadowClass, boolean callThroughByDefault) {
         bindShadowClass(realClassName, shadowClass.getName(), callThroughByDefault);
+        indexShadowMethods(shadowClass);
     }
 
     public void bindShadowClass(Class<?> realClass, Class<?> shadowClass, boolean callThroughByDefault) {
         bindShadowClass(realClass.getName(), shadowClass.getName(), callThroughByDefault);
+        indexShadowMethods(shadowClass);
+    }
+
+    /**
+     * Binds every shadow in the index by name, so none of them is loaded until it's needed. The index also tells which
+     * methods each shadow declares.
+     * <p/>
+     * The bindings for an index are built once. Right after {@link #reset()}, binding the same index again just
+     * reinstates them, so call sites keep their plans from earlier tests, and shadows bound afterwards are layered on
+     * top; setting up a test costs only as much as the shadows it binds itself.
+     */
+    public void bindShadowClasses(ShadowIndex shadowIndex) {
+        if (shadowIndex != defaultBindingsIndex) {
+            Map<String, ShadowConfig> shadowConfigs = new HashMap<String, ShadowConfig>();
+            for (ShadowIndex.Entry entry : shadowIndex.getEntries()) {
+                shadowConfigs.put(entry.realClassName, new ShadowConfig(entry.shadowClassName, entry.callThroughByDefault));
+            }
+            defaultBindings = new Bindings(shadowConfigs, Collections.<String, ShadowConfig>emptyMap());
+            defaultBindingsIndex = shadowIndex;
+        }
+        this.shadowIndex = shadowIndex;
+
+        if (bindings == Bindings.NONE) {
+            bindings = defaultBindings;
+        } else {
+            bindings = bindings.with(defaultBindings.base);
+        }
+        if (debug) System.out.println("shadowed " + shadowIndex.getEntries().size() + " classes from the shadow index");
     }
 
     public void bindShadowClass(String realClassName, String shadowClassName, boolean callThroughByDefault) {
-        shadowClassMap.put(realClassName, new ShadowConfig(shadowClassName, callThroughByDefault));
+        ShadowConfig shadowConfig = new ShadowConfig(shadowClassName, callThroughByDefault);
+        if (!shadowConfig.equals(bindings.get(realClassName))) {
+            bindings = bindings.with(realClassName, shadowConfig);
+        }
         if (debug) System.out.println("shadow " + realClassName + " with " + shadowClassName);
     }
 
+    private void indexShadowMethods(Class<?> shadowClass) {
+        try {
+            getShadowMethodIndex(shadowClass);
+        } catch (LinkageError e) {
+            // some of its methods refer to classes that aren't there; if they're ever called, it'll fail then
+        }
+    }
+
+    private ShadowMethodIndex getShadowMethodIndex(Class<?> shadowClass) {
+        synchronized (shadowMethodIndexes) {
+            ShadowMethodIndex shadowMethodIndex = shadowMethodIndexes.get(shadowClass);
+            if (shadowMethodIndex == null) {
+                shadowMethodIndex = new ShadowMethodIndex(shadowClass);
+                shadowMethodIndexes.put(shadowClass, shadowMethodIndex);
+            }
+            return shadowMethodIndex;
+        }
+    }
+
     private String indent(int count) {
         StringBuilder buf = new StringBuilder();
         for (int i = 0; i < count; i++) buf.append("  ");
         return buf.toString();
     }
 
-    class InvocationProfile {
-        private final Class clazz;
-        private final Class shadowClass;
-        private final String methodName;
-        private final boolean isStatic;
-        private final String[] paramTypes;
-        private final int hashCode;
-
-        InvocationProfile(Class clazz, Class shadowClass, String methodName, boolean aStatic, String[] paramTypes) {
-            this.clazz = clazz;
-            this.shadowClass = shadowClass;
-            this.methodName = methodName;
-            isStatic = aStatic;
-            this.paramTypes = paramTypes;
-
-            // calculate hashCode early
-            int result = clazz.hashCode();
-            result = 31 * result + (shadowClass != null ? shadowClass.hashCode() : 0);
-            result = 31 * result + methodName.hashCode();
-            result = 31 * result + (isStatic ? 1 : 0);
-            result = 31 * result + Arrays.hashCode(paramTypes);
-            hashCode = result;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            InvocationProfile that = (InvocationProfile) o;
-
-            if (isStatic != that.isStatic) return false;
-            if (!clazz.equals(that.clazz)) return false;
-            if (!methodName.equals(that.methodName)) return false;
-            if (!Arrays.equals(paramTypes, that.paramTypes)) return false;
-            if (shadowClass != null ? !shadowClass.equals(that.shadowClass) : that.shadowClass != null) return false;
-
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            return hashCode;
+    @Override
+    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Exception {
+        Info info = infos.get();
+        if (info.callDepth > MAX_CALL_DEPTH) throw stripStackTrace(new StackOverflowError("too deep!"));
+        try {
+            info.callDepth++;
+            Object shadow = instance == null ? null : shadowOf(instance);
+            InvocationPlan invocationPlan = getInvocationPlan(clazz, methodName, shadow, paramTypes);
+            return invoke(invocationPlan, clazz, methodName, instance, shadow, paramTypes, params, info.callDepth);
+        } finally {
+            info.callDepth--;
         }
     }
 
     @Override
-    public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Exception {
+    public Object methodInvoked(CallSite callSite, Object instance, Object[] params) throws Exception {
         Info info = infos.get();
         if (info.callDepth > MAX_CALL_DEPTH) throw stripStackTrace(new StackOverflowError("too deep!"));
         try {
             info.callDepth++;
-            InvocationPlan invocationPlan = getInvocationPlan(clazz, methodName, instance, paramTypes);
-            try {
-                boolean hasShadowImplementation = invocationPlan.hasShadowImplementation();
-                if (debug) {
-                    System.out.println(indent(info.callDepth) + " -> " +
-                            clazz.getName() + "." + methodName + "(" + Join.join(", ", paramTypes) + "): "
-                            + (hasShadowImplementation ? "shadowed by " + (instance == null ? "?" : invocationPlan.getDeclaredShadowClass().getName()) : "direct"));
-                }
+            Object shadow = instance == null ? null : shadowOf(instance);
+            InvocationPlan invocationPlan = getInvocationPlan(callSite, shadow);
+            return invoke(invocationPlan, callSite.getTheClass(), callSite.getMethodName(), instance, shadow,
+                    callSite.getParamTypes(), params, info.callDepth);
+        } finally {
+            info.callDepth--;
+        }
+    }
 
-                if (!hasShadowImplementation) {
-                    reportNoShadowMethodFound(clazz, methodName, paramTypes);
-                    if (invocationPlan.shouldDelegateToRealMethodWhenMethodShadowIsMissing()) {
-                        return invocationPlan.callOriginal(instance, params);
-                    } else {
-                        return null;
-                    }
-                }
+    private Object invoke(InvocationPlan invocationPlan, Class clazz, String methodName, Object instance, Object shadow,
+                          String[] paramTypes, Object[] params, int callDepth) throws Exception {
+        try {
+            boolean hasShadowImplementation = invocationPlan.hasShadowImplementation();
+            if (debug) {
+                System.out.println(indent(callDepth) + " -> " +
+                        clazz.getName() + "." + methodName + "(" + Join.join(", ", paramTypes) + "): "
+                        + (hasShadowImplementation ? "shadowed by " + (instance == null ? "?" : invocationPlan.getDeclaredShadowClass().getName()) : "direct"));
+            }
 
-                // todo: a little strange that this lives here...
-                if (strictI18n && !invocationPlan.isI18nSafe()) {
-                    throw new I18nException("Method " + methodName + " on class " + clazz.getName() + " is not i18n-safe.");
+            if (!hasShadowImplementation) {
+                reportNoShadowMethodFound(clazz, methodName, paramTypes);
+                if (invocationPlan.shouldDelegateToRealMethodWhenMethodShadowIsMissing()) {
+                    return invocationPlan.callOriginal(instance, params);
+                } else {
+                    return null;
                 }
+            }
+
+            // todo: a little strange that this lives here...
+            if (strictI18n && !invocationPlan.isI18nSafe()) {
+                throw new I18nException("Method " + methodName + " on class " + clazz.getName() + " is not i18n-safe.");
+            }
 
-                return invocationPlan.getMethod().invoke(instance == null ? null : shadowOf(instance), params);
+            try {
+                return invocationPlan.getShadowInvoker().invoke(shadow, params);
+            } catch (ClassCastException e) {
+                throw shadowMismatch(e, shadow, invocationPlan);
             } catch (IllegalArgumentException e) {
-                Object shadow = instance == null ? null : shadowOf(instance);
-                Class<? extends Object> aClass = shadow == null ? null : shadow.getClass();
-                String aClassName = aClass == null ? "<unknown class>" : aClass.getName();
-                throw new RuntimeException(aClassName + " is not assignable from " +
-                        invocationPlan.getDeclaredShadowClass().getName(), e);
-            } catch (InvocationTargetException e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof Exception) {
-                    throw stripStackTrace((Exception) cause);
-                }
-                throw new RuntimeException(cause);
+                throw shadowMismatch(e, shadow, invocationPlan);
+            } catch (Exception e) {
+                throw stripStackTrace(e);
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
             }
-        } finally {
-            info.callDepth--;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw stripStackTrace((Exception) cause);
+            }
+            throw new RuntimeException(cause);
         }
     }
 
-    private InvocationPlan getInvocationPlan(Class clazz, String methodName, Object instance, String[] paramTypes) {
-        boolean isStatic = instance == null;
-        Class shadowClass = isStatic ? findDirectShadowClass(clazz) : shadowOf(instance).getClass();
-        InvocationProfile invocationProfile = new InvocationProfile(clazz, shadowClass, methodName, isStatic, paramTypes);
-        synchronized (invocationPlans) {
-            InvocationPlan invocationPlan = invocationPlans.get(invocationProfile);
-            if (invocationPlan == null) {
-                invocationPlan = new InvocationPlan(invocationProfile);
-                invocationPlans.put(invocationProfile, invocationPlan);
+    /**
+     * Generated invokers cast the shadow to the class declaring the shadow method, and reflective ones reject it, so a
+     * shadow of the wrong class shows up as one of these exceptions; say which classes were involved. Exceptions
+     * thrown by the shadow method itself are passed on.
+     */
+    private RuntimeException shadowMismatch(RuntimeException e, Object shadow, InvocationPlan invocationPlan) {
+        if (shadow == null || invocationPlan.getMethod().getDeclaringClass().isInstance(shadow)) {
+            return stripStackTrace(e);
+        }
+        return new RuntimeException(shadow.getClass().getName() + " is not assignable from " +
+                invocationPlan.getDeclaredShadowClass().getName(), e);
+    }
+
+    private InvocationPlan getInvocationPlan(CallSite callSite, Object shadow) {
+        Object handlerData = callSite.getHandlerData();
+        if (handlerData instanceof CallSiteCache) {
+            CallSiteCache callSiteCache = (CallSiteCache) handlerData;
+            if (callSiteCache.bindings == bindings
+                    && (shadow == null || callSiteCache.invocationPlan.shadowClass == shadow.getClass())) {
+                invocationPlans.countCallSiteHit();
+                return callSiteCache.invocationPlan;
             }
-            return invocationPlan;
         }
+
+        Bindings currentBindings = bindings;
+        InvocationPlan invocationPlan = getInvocationPlan(callSite.getTheClass(), callSite.getMethodName(), shadow, callSite.getParamTypes());
+        callSite.setHandlerData(new CallSiteCache(currentBindings, invocationPlan));
+        return invocationPlan;
+    }
+
+    private InvocationPlan getInvocationPlan(Class clazz, String methodName, Object shadow, String[] paramTypes) {
+        boolean isStatic = shadow == null;
+        Class shadowClass = isStatic ? findDirectShadowClass(clazz) : shadow.getClass();
+        InvocationPlan invocationPlan = invocationPlans.get(clazz, shadowClass, methodName, isStatic, paramTypes);
+        if (invocationPlan == null) {
+            long startTime = System.nanoTime();
+            invocationPlan = new InvocationPlan(clazz, shadowClass, methodName, isStatic, paramTypes);
+            invocationPlan = invocationPlans.put(clazz, shadowClass, methodName, isStatic, paramTypes,
+                    invocationPlan, System.nanoTime() - startTime);
+        }
+        return invocationPlan;
     }
 
     @Override
@@ -265,6 +401,7 @@ public class ShadowWrangler implements ClassHandler {
                 String className = stackTraceElement.getClassName();
                 boolean isInternalCall = className.startsWith("sun.reflect.")
                         || className.startsWith("java.lang.reflect.")
+                        || className.startsWith(ShadowInvoker.class.getName())
                         || className.equals(ShadowWrangler.class.getName())
                         || className.equals(RobolectricInternals.class.getName());
                 if (!isInternalCall) {
@@ -310,9 +447,7 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     public Object shadowFor(Object instance) {
-        Field field = RobolectricInternals.getShadowField(instance);
-        field.setAccessible(true);
-        Object shadow = readField(instance, field);
+        Object shadow = readShadow(instance);
 
         if (shadow != null) {
             return shadow;
@@ -332,9 +467,9 @@ public class ShadowWrangler implements ClassHandler {
             } else {
                 shadow = shadowClass.newInstance();
             }
-            field.set(instance, shadow);
+            writeShadow(instance, shadow);
 
-            injectRealObjectOn(shadow, shadowClass, instance);
+            realObjectInjectorGenerator.injectorFor(shadowClass).inject(shadow, instance);
 
             return shadow;
         } catch (InstantiationException e) {
@@ -346,26 +481,8 @@ public class ShadowWrangler implements ClassHandler {
         }
     }
 
-    private void injectRealObjectOn(Object shadow, Class<?> shadowClass, Object instance) {
-        MetaShadow metaShadow = getMetaShadow(shadowClass);
-        for (Field realObjectField : metaShadow.realObjectFields) {
-            writeField(shadow, instance, realObjectField);
-        }
-    }
-
-    private MetaShadow getMetaShadow(Class<?> shadowClass) {
-        synchronized (metaShadowMap) {
-            MetaShadow metaShadow = metaShadowMap.get(shadowClass);
-            if (metaShadow == null) {
-                metaShadow = new MetaShadow(shadowClass);
-                metaShadowMap.put(shadowClass, metaShadow);
-            }
-            return metaShadow;
-        }
-    }
-
     private Class<?> findDirectShadowClass(Class<?> originalClass) {
-        ShadowConfig shadowConfig = shadowClassMap.get(originalClass.getName());
+        ShadowConfig shadowConfig = bindings.get(originalClass.getName());
         if (shadowConfig == null) {
             return null;
         }
@@ -375,7 +492,7 @@ public class ShadowWrangler implements ClassHandler {
     private String getShadowClassName(Class clazz) {
         ShadowConfig shadowConfig = null;
         while (shadowConfig == null && clazz != null) {
-            shadowConfig = shadowClassMap.get(clazz.getName());
+            shadowConfig = bindings.get(clazz.getName());
             clazz = clazz.getSuperclass();
         }
         return shadowConfig == null ? null : shadowConfig.shadowClassName;
@@ -399,25 +516,40 @@ public class ShadowWrangler implements ClassHandler {
         if (instance == null) {
             throw new NullPointerException("can't get a shadow for null");
         }
-        Field field = RobolectricInternals.getShadowField(instance);
-        Object shadow = readField(instance, field);
+        Object shadow = readShadow(instance);
         if (shadow == null) {
             shadow = shadowFor(instance);
         }
         return shadow;
     }
 
-    private Object readField(Object target, Field field) {
+    /**
+     * Classes instrumented by {@link AsmInstrumentingClassLoader} implement {@link ShadowedObject}, so their shadow is
+     * read with a plain call; others, e.g. those instrumented by Javassist, have only the field.
+     */
+    private Object readShadow(Object instance) {
+        if (instance instanceof ShadowedObject) {
+            return ((ShadowedObject) instance).__robo_getData__();
+        }
+
+        Field field = RobolectricInternals.getShadowField(instance);
         try {
-            return field.get(target);
-        } catch (IllegalAccessException e1) {
-            throw new RuntimeException(e1);
+            return field.get(instance);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
         }
     }
 
-    private void writeField(Object target, Object value, Field realObjectField) {
+    private void writeShadow(Object instance, Object shadow) {
+        if (instance instanceof ShadowedObject) {
+            ((ShadowedObject) instance).__robo_setData__(shadow);
+            return;
+        }
+
+        Field field = RobolectricInternals.getShadowField(instance);
+        field.setAccessible(true);
         try {
-            realObjectField.set(target, value);
+            field.set(instance, shadow);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
@@ -443,11 +575,9 @@ public class ShadowWrangler implements ClassHandler {
         private Class<?>[] paramClasses;
         private Class<?> declaredShadowClass;
         private Method method;
-
-        public InvocationPlan(InvocationProfile invocationProfile) {
-            this(invocationProfile.clazz, invocationProfile.shadowClass,
-                    invocationProfile.methodName, invocationProfile.isStatic, invocationProfile.paramTypes);
-        }
+        private ShadowInvoker shadowInvoker;
+        private Method originalMethod;
+        private boolean i18nSafe;
 
         public InvocationPlan(Class clazz, Class shadowClass, String methodName, boolean isStatic, String... paramTypes) {
             this.clazz = clazz;
@@ -474,22 +604,12 @@ public class ShadowWrangler implements ClassHandler {
             return method;
         }
 
-        public boolean isI18nSafe() {
-            // method is loaded by another class loader. So do everything reflectively.
-            Annotation[] annos = method.getAnnotations();
-            for (Annotation anno : annos) {
-                String name = anno.annotationType().getName();
-                if (name.equals(Implementation.class.getName())) {
-                    try {
-                        Method m = (anno).getClass().getMethod("i18nSafe");
-                        return (Boolean) m.invoke(anno);
-                    } catch (Exception e) {
-                        return true;    // should probably throw some other exception
-                    }
-                }
-            }
+        public ShadowInvoker getShadowInvoker() {
+            return shadowInvoker;
+        }
 
-            return true;
+        public boolean isI18nSafe() {
+            return i18nSafe;
         }
 
         public boolean prepare() {
@@ -497,28 +617,43 @@ public class ShadowWrangler implements ClassHandler {
 
             Class<?> originalClass = loadClass(clazz.getName(), classLoader);
 
-            declaredShadowClass = findDeclaredShadowClassForMethod(originalClass, methodName, paramClasses);
-            if (declaredShadowClass == null) {
+            // instrumented methods only ever report calls to themselves, so the method is declared on originalClass
+            String declaredShadowClassName = getShadowClassName(originalClass);
+            if (declaredShadowClassName == null) {
                 return false;
             }
+            String directShadowMethodName = RobolectricInternals.directMethodName(declaredShadowClassName, methodName);
+
+            // shadows known not to declare the method needn't be loaded or scanned
+            if (shadowIndex != null) {
+                String shadowClassName = isStatic ? declaredShadowClassName : shadowClass.getName();
+                if (!shadowIndex.mightDeclareMethod(shadowClassName, methodName)
+                        && (isStatic || !shadowIndex.mightDeclareMethod(shadowClassName, directShadowMethodName))) {
+                    return false;
+                }
+            }
 
-            if (!isStatic) {
-                String directShadowMethodName = RobolectricInternals.directMethodName(declaredShadowClass.getName(), methodName);
+            declaredShadowClass = loadClass(declaredShadowClassName, classLoader);
 
-                method = getMethod(shadowClass, directShadowMethodName, paramClasses);
-                if (method == null) {
-                    method = getMethod(shadowClass, methodName, paramClasses);
+            ShadowMethodIndex.ShadowMethod shadowMethod;
+            if (!isStatic) {
+                ShadowMethodIndex shadowMethodIndex = getShadowMethodIndex(shadowClass);
+                shadowMethod = shadowMethodIndex.get(directShadowMethodName, paramClasses);
+                if (shadowMethod == null) {
+                    shadowMethod = shadowMethodIndex.get(methodName, paramClasses);
                 }
             } else {
-                method = getMethod(findShadowClass(clazz), methodName, paramClasses);
+                shadowMethod = getShadowMethodIndex(declaredShadowClass).get(methodName, paramClasses);
             }
 
-            if (method == null) {
+            if (shadowMethod == null) {
                 if (debug) {
                     System.out.println("No method found for " + clazz + "." + methodName + "(" + asList(paramClasses) + ") on " + declaredShadowClass.getName());
                 }
                 return false;
             }
+            method = shadowMethod.method;
+            i18nSafe = shadowMethod.i18nSafe;
 
             if (isStatic != Modifier.isStatic(method.getModifiers())) {
                 throw new RuntimeException("method staticness of " + clazz.getName() + "." + methodName + " and " + declaredShadowClass.getName() + "." + method.getName() + " don't match");
@@ -530,39 +665,11 @@ public class ShadowWrangler implements ClassHandler {
             }
 
             method.setAccessible(true);
+            shadowInvoker = shadowInvokerGenerator.invokerFor(method);
 
             return true;
         }
 
-        private Class<?> findDeclaredShadowClassForMethod(Class<?> originalClass, String methodName, Class<?>[] paramClasses) {
-            Class<?> declaringClass = findDeclaringClassForMethod(methodName, paramClasses, originalClass);
-            return findShadowClass(declaringClass);
-        }
-
-        private Class<?> findShadowClass(Class<?> originalClass) {
-            String declaredShadowClassName = getShadowClassName(originalClass);
-            if (declaredShadowClassName == null) {
-                return null;
-            }
-            return loadClass(declaredShadowClassName, classLoader);
-        }
-
-        private Class<?> findDeclaringClassForMethod(String methodName, Class<?>[] paramClasses, Class<?> originalClass) {
-            Class<?> declaringClass;
-            if (this.methodName.equals(InstrumentingClassLoader.CONSTRUCTOR_METHOD_NAME)) {
-                declaringClass = originalClass;
-            } else {
-                Method originalMethod;
-                try {
-                    originalMethod = originalClass.getDeclaredMethod(methodName, paramClasses);
-                } catch (NoSuchMethodException e) {
-                    throw new RuntimeException(e);
-                }
-                declaringClass = originalMethod.getDeclaringClass();
-            }
-            return declaringClass;
-        }
-
         private Class<?>[] getParamClasses() {
             Class<?>[] paramClasses = new Class<?>[paramTypes.length];
 
@@ -572,37 +679,6 @@ public class ShadowWrangler implements ClassHandler {
             return paramClasses;
         }
 
-        private Method getMethod(Class<?> clazz, String methodName, Class<?>[] paramClasses) {
-            Method method;
-            try {
-                method = clazz.getMethod(methodName, paramClasses);
-            } catch (NoSuchMethodException e) {
-                try {
-                    method = clazz.getDeclaredMethod(methodName, paramClasses);
-                } catch (NoSuchMethodException e1) {
-                    method = null;
-                }
-            }
-
-            if (method != null && !isOnShadowClass(method)) {
-                method = null;
-            }
-
-            return method;
-        }
-
-        private boolean isOnShadowClass(Method method) {
-            Class<?> declaringClass = method.getDeclaringClass();
-            // why doesn't getAnnotation(org.robolectric.internal.Implements) work here? It always returns null. pg 20101115
-            // It doesn't work because the method and declaringClass were loaded by the delegate class loader. Different classloaders so types don't match. mp 20110823
-            for (Annotation annotation : declaringClass.getAnnotations()) { // todo fix
-                if (annotation.annotationType().toString().equals("interface org.robolectric.internal.Implements")) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
         @Override
         public String toString() {
             return "delegating to " + declaredShadowClass.getName() + "." + method.getName()
@@ -610,22 +686,25 @@ public class ShadowWrangler implements ClassHandler {
         }
 
         public Object callOriginal(Object instance, Object[] params) throws InvocationTargetException, IllegalAccessException {
-            try {
-                Method method = clazz.getDeclaredMethod(RobolectricInternals.directMethodName(clazz.getName(), methodName), paramClasses);
-                method.setAccessible(true);
-                return method.invoke(instance, params);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException(e);
+            if (originalMethod == null) {
+                try {
+                    Method method = clazz.getDeclaredMethod(RobolectricInternals.directMethodName(clazz.getName(), methodName), paramClasses);
+                    method.setAccessible(true);
+                    originalMethod = method;
+                } catch (NoSuchMethodException e) {
+                    throw new RuntimeException(e);
+                }
             }
+            return originalMethod.invoke(instance, params);
         }
 
         public boolean shouldDelegateToRealMethodWhenMethodShadowIsMissing() {
             String className = clazz.getName();
-            ShadowConfig shadowConfig = shadowClassMap.get(className);
+            ShadowConfig shadowConfig = bindings.get(className);
             int dollarIndex;
             if (shadowConfig == null && (dollarIndex = className.indexOf('$')) > -1) {
                 className = className.substring(0, dollarIndex);
-                shadowConfig = shadowClassMap.get(className);
+                shadowConfig = bindings.get(className);
 
                 // todo: test
             }
@@ -641,21 +720,4 @@ public class ShadowWrangler implements ClassHandler {
             return delegateToReal;
         }
     }
-
-    private class MetaShadow {
-        List<Field> realObjectFields = new ArrayList<Field>();
-
-        public MetaShadow(Class<?> shadowClass) {
-            while (shadowClass != null) {
-                for (Field field : shadowClass.getDeclaredFields()) {
-                    if (field.isAnnotationPresent(RealObject.class)) {
-                        field.setAccessible(true);
-                        realObjectFields.add(field);
-                    }
-                }
-                shadowClass = shadowClass.getSuperclass();
-            }
-
-        }
-    }
 }
@@ -0,0 +1,14 @@
+package org.robolectric.bytecode;
+
+/**
+ * Implemented by every class {@link AsmInstrumentingClassLoader} instruments, so its shadow can be read and written
+ * with a plain interface call instead of reflecting on the {@link InstrumentingClassLoader#CLASS_HANDLER_DATA_FIELD_NAME}
+ * field.
+ * <p/>
+ * The methods are named so they can't clash with methods of the instrumented class.
+ */
+public interface ShadowedObject {
+    Object __robo_getData__();
+
+    void __robo_setData__(Object data);
+}
@@ -0,0 +1,198 @@
+package org.robolectric.internal;
+
+import org.robolectric.bytecode.ShadowIndex;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link ShadowIndex} of the classes annotated with {@link Implements}, so Robolectric can bind its shadows
+ * from a table instead of loading and reflecting on each of them.
+ * <p/>
+ * Only shadows Robolectric can instantiate are indexed: public classes which are top-level or static.
+ * <p/>
+ * An incremental build only compiles some sources, so entries for shadows it didn't see are kept from the existing
+ * index, as long as those shadows still exist.
+ */
+@SupportedAnnotationTypes("org.robolectric.internal.Implements")
+public class ShadowIndexProcessor extends AbstractProcessor {
+    private static final String IMPLEMENTS = Implements.class.getName();
+
+    private final Map<String, ShadowIndex.Entry> entries = new TreeMap<String, ShadowIndex.Entry>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!entries.isEmpty()) writeIndex();
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(Implements.class)) {
+            TypeElement shadowClass = (TypeElement) element;
+            if (isInstantiable(shadowClass)) {
+                ShadowIndex.Entry entry = index(shadowClass);
+                entries.put(entry.shadowClassName, entry);
+            }
+        }
+        return false;
+    }
+
+    private boolean isInstantiable(TypeElement shadowClass) {
+        Set<Modifier> modifiers = shadowClass.getModifiers();
+        return shadowClass.getKind() == ElementKind.CLASS
+                && modifiers.contains(Modifier.PUBLIC)
+                && (shadowClass.getNestingKind() == NestingKind.TOP_LEVEL || modifiers.contains(Modifier.STATIC));
+    }
+
+    private ShadowIndex.Entry index(TypeElement shadowClass) {
+        AnnotationMirror implementsAnnotation = findImplements(shadowClass);
+        String realClassName = null;
+        String className = "";
+        boolean callThroughByDefault = false;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                : implementsAnnotation.getElementValues().entrySet()) {
+            String name = value.getKey().getSimpleName().toString();
+            if (name.equals("value")) {
+                realClassName = typeName((TypeMirror) value.getValue().getValue());
+            } else if (name.equals("className")) {
+                className = (String) value.getValue().getValue();
+            } else if (name.equals("callThroughByDefault")) {
+                callThroughByDefault = (Boolean) value.getValue().getValue();
+            }
+        }
+        if (className.length() > 0) realClassName = className;
+
+        String superShadowClassName = null;
+        TypeMirror superclass = shadowClass.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superclassElement = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (findImplements(superclassElement) != null) superShadowClassName = binaryName(superclassElement);
+        }
+
+        List<String> methodSignatures = new ArrayList<String>();
+        for (Element member : shadowClass.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.METHOD) {
+                methodSignatures.add(signature((ExecutableElement) member));
+            }
+        }
+
+        return new ShadowIndex.Entry(binaryName(shadowClass), realClassName, callThroughByDefault,
+                superShadowClassName, methodSignatures);
+    }
+
+    private AnnotationMirror findImplements(TypeElement typeElement) {
+        for (AnnotationMirror annotationMirror : typeElement.getAnnotationMirrors()) {
+            if (binaryName((TypeElement) annotationMirror.getAnnotationType().asElement()).equals(IMPLEMENTS)) {
+                return annotationMirror;
+            }
+        }
+        return null;
+    }
+
+    private String signature(ExecutableElement method) {
+        StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+        String separator = "";
+        for (VariableElement parameter : method.getParameters()) {
+            signature.append(separator).append(typeName(parameter.asType()));
+            separator = ",";
+        }
+        return signature.append(')').toString();
+    }
+
+    /**
+     * @return the type's name as {@link org.objectweb.asm.Type#getClassName()} would give it, e.g.
+     *     {@code android.view.View$OnClickListener[]}
+     */
+    private String typeName(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return typeName(((ArrayType) type).getComponentType()) + "[]";
+            case DECLARED:
+                return binaryName((TypeElement) ((DeclaredType) type).asElement());
+            case TYPEVAR:
+                return typeName(processingEnv.getTypeUtils().erasure(type));
+            default:
+                return type.toString();
+        }
+    }
+
+    private String binaryName(TypeElement typeElement) {
+        return processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+    }
+
+    private void writeIndex() {
+        Map<String, ShadowIndex.Entry> allEntries = new LinkedHashMap<String, ShadowIndex.Entry>();
+        ShadowIndex existingIndex = readExistingIndex();
+        if (existingIndex != null) {
+            for (ShadowIndex.Entry entry : existingIndex.getEntries()) {
+                if (stillExists(entry)) allEntries.put(entry.shadowClassName, entry);
+            }
+        }
+        allEntries.putAll(entries);
+
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ShadowIndex.RESOURCE_NAME);
+            Writer out = new OutputStreamWriter(file.openOutputStream(), "UTF-8");
+            try {
+                new ShadowIndex(new TreeMap<String, ShadowIndex.Entry>(allEntries).values()).write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "couldn't write shadow index: " + e);
+        }
+    }
+
+    /**
+     * @return false if the shadow class has been deleted or renamed, or no longer has {@link Implements}, so an
+     *     incremental build doesn't keep binding it
+     */
+    private boolean stillExists(ShadowIndex.Entry entry) {
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement shadowClass = elements.getTypeElement(entry.shadowClassName.replace('$', '.'));
+        if (shadowClass == null) shadowClass = elements.getTypeElement(entry.shadowClassName);
+        return shadowClass != null && findImplements(shadowClass) != null && isInstantiable(shadowClass);
+    }
+
+    private ShadowIndex readExistingIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", ShadowIndex.RESOURCE_NAME);
+            return ShadowIndex.read(file.openInputStream());
+        } catch (IOException e) {
+            return null; // there isn't one yet
+        }
+    }
+}
@@ -1,27 +1,25 @@
 package org.robolectric.res;
 
 import android.view.View;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import java.io.File;
+
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-public class AttrResourceLoader extends XmlLoader {
+public class AttrResourceLoader extends ValueLoader {
     Map<String, EnumDef> enums = new HashMap<String, EnumDef>();
     Map<String, EnumRef> enumRefs = new HashMap<String, EnumRef>();
-    boolean resolved = false;
+    volatile boolean resolved = false;
 
     Map<String, String> classEnumToValue = new HashMap<String, String>();
     Set<String> knownClassEnums = new HashSet<String>();
+
+    // which class in a view class's hierarchy declares an enum attr, found once per (view class, attr)
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Class<?>>> knownAttrClasses =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Class<?>>>();
   
     static class EnumDef {
         final String name;
@@ -40,58 +38,54 @@ public class AttrResourceLoader extends XmlLoader {
         }
     }
 
-    @Override protected void processResourceXml(File xmlFile, Document document, XmlContext xmlContext) throws Exception {
-
-        // Pick up inline enum definitions
-        {
-            NodeList nodeList = findNodes(document, "/resources/declare-styleable/attr/enum|/resources/declare-styleable/attr/flag");
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                Node node = nodeList.item(i);
-                String viewName = node.getParentNode().getParentNode().getAttributes().getNamedItem("name").getNodeValue();
-                String enumName = enumName(node.getParentNode().getAttributes().getNamedItem("name").getNodeValue(), xmlContext.packageName);
-                String name = node.getAttributes().getNamedItem("name").getNodeValue();
-                String value = node.getAttributes().getNamedItem("value").getNodeValue();
+    public AttrResourceLoader() {
+        super("declare-styleable", "attr");
+    }
 
-                classEnumToValue.put(key(viewName, enumName, name), value);
-                knownClassEnums.add(key(viewName, enumName));
+    @Override protected void processValue(ValueElement element, XmlContext xmlContext) {
+        if (element.getName().equals("declare-styleable")) {
+            String viewName = element.getAttribute("name");
+            for (ValueElement attr : element.getChildren()) {
+                if (!attr.getName().equals("attr")) continue;
+
+                String enumName = enumName(attr.getAttribute("name"), xmlContext.packageName);
+                if (attr.hasChildNodes()) {
+                    // Pick up inline enum definitions
+                    for (ValueElement node : attr.getChildren()) {
+                        if (!isEnumOrFlag(node)) continue;
+
+                        classEnumToValue.put(key(viewName, enumName, node.getAttribute("name")), node.getAttribute("value"));
+                        knownClassEnums.add(key(viewName, enumName));
+                    }
+                } else {
+                    // Note uses of system enums and top level local enums by childless attr nodes
+                    enumRefs.put(key(viewName, enumName), new EnumRef(viewName, enumName));
+                }
             }
-        }
-
-        // Look for any global enum definitions.
-        {
-            NodeList nodeList = findNodes(document, "/resources/attr/enum|/resources/attr/flag");
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                Node node = nodeList.item(i);
+        } else {
+            // Look for any global enum definitions.
+            String enumName = enumName(element.getAttribute("name"), xmlContext.packageName);
+            for (ValueElement node : element.getChildren()) {
+                if (!isEnumOrFlag(node)) continue;
 
-                String enumName = enumName(node.getParentNode().getAttributes().getNamedItem("name").getNodeValue(), xmlContext.packageName);
                 EnumDef enumDef = enums.get(enumName);
                 if (enumDef == null) {
                     enumDef = new EnumDef(enumName);
                     enums.put(enumName, enumDef);
                 }
-                enumDef.values.put(node.getAttributes().getNamedItem("name").getNodeValue(),
-                        node.getAttributes().getNamedItem("value").getNodeValue());
+                enumDef.values.put(node.getAttribute("name"), node.getAttribute("value"));
             }
         }
+    }
 
-        // Note uses of system enums and top level local enums by childless attr nodes
-        {
-            NodeList nodeList = findNodes(document, "/resources/declare-styleable/attr[not(node())]");
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                Node node = nodeList.item(i);
-
-                String viewName = node.getParentNode().getAttributes().getNamedItem("name").getNodeValue();
-                String enumName = enumName(node.getAttributes().getNamedItem("name").getNodeValue(), xmlContext.packageName);
-
-                enumRefs.put(key(viewName, enumName), new EnumRef(viewName, enumName));
-            }
-        }
+    private static boolean isEnumOrFlag(ValueElement node) {
+        return node.getName().equals("enum") || node.getName().equals("flag");
     }
 
     public String convertValueToEnum(Class<? extends View> viewClass, String namespace, String attrName, String attrValue) {
         resolveReferences();
         String qualifiedAttrName = namespace + ":" + attrName;
-        String className = findKnownAttrClass(qualifiedAttrName, viewClass).getSimpleName();
+        String className = knownAttrClass(qualifiedAttrName, viewClass).getSimpleName();
         String value = classEnumToValue.get(key(className, qualifiedAttrName, attrValue));
         if (value == null) {
             throw new RuntimeException("Unknown value \"" + attrValue + "\" for enum " + className + "." + qualifiedAttrName);
@@ -102,19 +96,37 @@ public class AttrResourceLoader extends XmlLoader {
     public boolean hasAttributeFor(Class<? extends View> viewClass, String namespace, String attrName) {
         resolveReferences();
         String qualifiedAttrName = namespace + ":" + attrName;
-        return findKnownAttrClass(qualifiedAttrName, viewClass) != null;
+        return knownAttrClass(qualifiedAttrName, viewClass) != null;
     }
 
     private String enumName(String name, String packageName) {
         return packageName + ":" + name;
     }
 
-    private NodeList findNodes(Document document, String path) throws XPathExpressionException {
-        XPathExpression nestedEnumsXPath = XPathFactory.newInstance().newXPath().compile(path);
-        return (NodeList) nestedEnumsXPath.evaluate(document, XPathConstants.NODESET);
+    private Class<?> knownAttrClass(String attrName, Class<?> viewClass) {
+        if (viewClass == null) return null;
+
+        ConcurrentMap<String, Class<?>> knownAttrClassesForView = knownAttrClasses.get(viewClass);
+        if (knownAttrClassesForView == null) {
+            knownAttrClasses.putIfAbsent(viewClass, new ConcurrentHashMap<String, Class<?>>());
+            knownAttrClassesForView = knownAttrClasses.get(viewClass);
+        }
+
+        Class<?> knownAttrClass = knownAttrClassesForView.get(attrName);
+        if (knownAttrClass == null) {
+            knownAttrClass = findKnownAttrClass(attrName, viewClass);
+            knownAttrClassesForView.put(attrName, knownAttrClass == null ? Void.class : knownAttrClass);
+        }
+        return knownAttrClass == Void.class ? null : knownAttrClass;
     }
 
     private void resolveReferences() {
+        if (!resolved) {
+            doResolveReferences();
+        }
+    }
+
+    private synchronized void doResolveReferences() {
         if (!resolved) {
             for (EnumRef enumRef : enumRefs.values()) {
                 noteEnumUses(enumRef.viewName, enumRef.enumName);
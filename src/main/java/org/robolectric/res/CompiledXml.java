@@ -0,0 +1,49 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An XML document held as a compact binary tree of nodes, in the format {@link ResourceSnapshot} uses, instead of as a
+ * DOM. A DOM is many times bigger than the file it came from; this is about the size of the file.
+ * <p/>
+ * {@link #toDocument()} builds a new document from the tree each time, without parsing, so callers may modify it.
+ */
+public class CompiledXml {
+    private static final File NO_RESOURCE_BASE = new File("");
+
+    private final byte[] bytes;
+
+    CompiledXml(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static CompiledXml compile(Document document) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            new ResourceSnapshot.Writer(out, NO_RESOURCE_BASE).writeChildNodes(document);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new CompiledXml(buffer.toByteArray());
+    }
+
+    public Document toDocument() {
+        return new ResourceSnapshot.Reader(ByteBuffer.wrap(bytes), NO_RESOURCE_BASE).readDocument();
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+}
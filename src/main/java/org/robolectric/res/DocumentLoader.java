@@ -6,7 +6,25 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Parses resource XML files and hands each document to a set of {@link XmlLoader}s.
+ * <p/>
+ * Given an {@link ExecutorService}, files are parsed on it concurrently, but documents are still handed to the
+ * loaders one at a time, on the calling thread, in the same order as they would be without one, so what the
+ * loaders build doesn't depend on how parsing was scheduled.
+ * <p/>
+ * If every loader is a {@link ValueLoader}, files are streamed rather than parsed into DOM documents; only the
+ * elements some loader handles are kept, and each is handed straight to the loaders that handle it.
+ */
 public class DocumentLoader {
     private static final FileFilter ENDS_WITH_XML = new FileFilter() {
         @Override public boolean accept(File file) {
@@ -15,15 +33,50 @@ public class DocumentLoader {
     };
 
     private final XmlLoader[] xmlLoaders;
+    private final ExecutorService executorService;
     private final DocumentBuilderFactory documentBuilderFactory;
+    private final Map<String, List<ValueLoader>> valueLoadersByElementName;
+    private final ValueElementReader valueElementReader;
 
     public DocumentLoader(XmlLoader... xmlLoaders) {
+        this(null, xmlLoaders);
+    }
+
+    /**
+     * @param executorService where to parse files, or null to parse them on the calling thread
+     */
+    public DocumentLoader(ExecutorService executorService, XmlLoader... xmlLoaders) {
         this.xmlLoaders = xmlLoaders;
+        this.executorService = executorService;
 
         documentBuilderFactory = DocumentBuilderFactory.newInstance();
         documentBuilderFactory.setNamespaceAware(true);
         documentBuilderFactory.setIgnoringComments(true);
         documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+
+        valueLoadersByElementName = valueLoadersByElementName(xmlLoaders);
+        valueElementReader = valueLoadersByElementName == null
+                ? null : new ValueElementReader(valueLoadersByElementName.keySet());
+    }
+
+    private static Map<String, List<ValueLoader>> valueLoadersByElementName(XmlLoader[] xmlLoaders) {
+        if (xmlLoaders.length == 0) return null;
+
+        Map<String, List<ValueLoader>> valueLoaders = new HashMap<String, List<ValueLoader>>();
+        for (XmlLoader xmlLoader : xmlLoaders) {
+            if (!(xmlLoader instanceof ValueLoader)) return null;
+
+            ValueLoader valueLoader = (ValueLoader) xmlLoader;
+            for (String elementName : valueLoader.getElementNames()) {
+                List<ValueLoader> loaders = valueLoaders.get(elementName);
+                if (loaders == null) {
+                    loaders = new ArrayList<ValueLoader>();
+                    valueLoaders.put(elementName, loaders);
+                }
+                loaders.add(valueLoader);
+            }
+        }
+        return valueLoaders;
     }
 
     public void loadResourceXmlSubDirs(ResourcePath resourcePath, final String folderBaseName) throws Exception {
@@ -31,9 +84,11 @@ public class DocumentLoader {
         if (files == null) {
             throw new RuntimeException(resourcePath.resourceBase + " is not a directory");
         }
+        List<File> xmlFiles = new ArrayList<File>();
         for (File dir : files) {
-            loadResourceXmlDir(resourcePath, dir);
+            addXmlFiles(dir, xmlFiles);
         }
+        loadResourceXmlFiles(xmlFiles, resourcePath.getPackageName());
     }
 
     public void loadResourceXmlDir(ResourcePath resourcePath, String dirName) throws Exception {
@@ -41,25 +96,98 @@ public class DocumentLoader {
     }
 
     private void loadResourceXmlDir(ResourcePath resourcePath, File dir) throws Exception {
+        List<File> xmlFiles = new ArrayList<File>();
+        addXmlFiles(dir, xmlFiles);
+        loadResourceXmlFiles(xmlFiles, resourcePath.getPackageName());
+    }
+
+    private void addXmlFiles(File dir, List<File> xmlFiles) {
         if (!dir.exists()) {
             throw new RuntimeException("no such directory " + dir);
         }
 
         for (File file : dir.listFiles(ENDS_WITH_XML)) {
-            loadResourceXmlFile(file, resourcePath.getPackageName());
+            xmlFiles.add(file);
         }
     }
 
-    private void loadResourceXmlFile(File file, String packageName) throws Exception {
-        Document document = parse(file);
-        for (XmlLoader xmlLoader : xmlLoaders) {
-            xmlLoader.processResourceXml(file, document, packageName);
+    private void loadResourceXmlFiles(List<File> xmlFiles, String packageName) throws Exception {
+        if (executorService == null || xmlFiles.size() < 2) {
+            for (File xmlFile : xmlFiles) {
+                loadResourceXmlFile(xmlFile, parse(xmlFile), packageName);
+            }
+            return;
+        }
+
+        List<Future<ParsedFile>> parsedFiles = new ArrayList<Future<ParsedFile>>(xmlFiles.size());
+        for (final File xmlFile : xmlFiles) {
+            parsedFiles.add(executorService.submit(new Callable<ParsedFile>() {
+                @Override public ParsedFile call() throws Exception {
+                    return parse(xmlFile);
+                }
+            }));
+        }
+
+        try {
+            for (int i = 0; i < xmlFiles.size(); i++) {
+                loadResourceXmlFile(xmlFiles.get(i), get(parsedFiles.get(i)), packageName);
+            }
+        } finally {
+            for (Future<ParsedFile> parsedFile : parsedFiles) {
+                parsedFile.cancel(false);
+            }
+        }
+    }
+
+    private static ParsedFile get(Future<ParsedFile> parsedFile) throws Exception {
+        try {
+            return parsedFile.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
         }
     }
 
-    private Document parse(File xmlFile) throws Exception {
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        return documentBuilder.parse(xmlFile);
+    private void loadResourceXmlFile(File file, ParsedFile parsedFile, String packageName) throws Exception {
+        if (parsedFile.document != null) {
+            for (XmlLoader xmlLoader : xmlLoaders) {
+                xmlLoader.processResourceXml(file, parsedFile.document, packageName);
+            }
+            return;
+        }
+
+        XmlLoader.XmlContext xmlContext = new XmlLoader.XmlContext(packageName, file);
+        for (ValueElement valueElement : parsedFile.valueElements) {
+            for (ValueLoader valueLoader : valueLoadersByElementName.get(valueElement.getName())) {
+                valueLoader.processValue(valueElement, xmlContext);
+            }
+        }
     }
 
+    private ParsedFile parse(File xmlFile) throws Exception {
+        if (valueElementReader != null) {
+            return new ParsedFile(null, valueElementReader.read(xmlFile));
+        }
+
+        DocumentBuilder documentBuilder;
+        synchronized (documentBuilderFactory) {
+            documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        }
+        return new ParsedFile(documentBuilder.parse(xmlFile), null);
+    }
+
+    /**
+     * A parsed file: its top-level value elements if every loader is a {@link ValueLoader}, or else its DOM.
+     */
+    private static class ParsedFile {
+        private final Document document;
+        private final List<ValueElement> valueElements;
+
+        ParsedFile(Document document, List<ValueElement> valueElements) {
+            this.document = document;
+            this.valueElements = valueElements;
+        }
+    }
 }
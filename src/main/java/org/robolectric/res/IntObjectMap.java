@@ -0,0 +1,156 @@
+package org.robolectric.res;
+
+/**
+ * An open-addressing hash table from ints to objects, so looking up resource ids doesn't box them.
+ * <p/>
+ * Reads take no lock and may run concurrently with a writer; writers must synchronize among themselves. Entries are
+ * never removed, so a reader racing with a writer can at worst miss the entry being added.
+ */
+public class IntObjectMap<V> {
+    private static final int FREE = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table table;
+    private Object freeKeyValue; // the value for key 0, which marks free slots in the table
+    private boolean hasFreeKey;
+    private int size;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == FREE) return (V) freeKeyValue;
+
+        Table table = this.table;
+        int[] keys = table.keys;
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return (V) table.values[i];
+            if (k == FREE) return null;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) throw new NullPointerException("null values aren't supported");
+
+        if (key == FREE) {
+            Object old = freeKeyValue;
+            freeKeyValue = value;
+            if (!hasFreeKey) size++;
+            hasFreeKey = true;
+            return (V) old;
+        }
+
+        Table table = this.table;
+        int[] keys = table.keys;
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                Object old = table.values[i];
+                table.values[i] = value;
+                return (V) old;
+            }
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            this.table = table = table.grow();
+            keys = table.keys;
+            mask = keys.length - 1;
+            for (i = mix(key) & mask; keys[i] != FREE; i = (i + 1) & mask) ;
+        }
+
+        // set the value before the key, so a reader that finds the key finds its value too
+        table.values[i] = value;
+        keys[i] = key;
+        size++;
+        return null;
+    }
+
+    public void putAll(IntObjectMap<? extends V> other) {
+        if (other.hasFreeKey) put(FREE, other.get(FREE));
+
+        Table otherTable = other.table;
+        for (int i = 0; i < otherTable.keys.length; i++) {
+            if (otherTable.keys[i] != FREE) {
+                @SuppressWarnings("unchecked")
+                V value = (V) otherTable.values[i];
+                put(otherTable.keys[i], value);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the keys in the map, in no particular order; callers must synchronize with writers
+     */
+    public int[] keys() {
+        int[] keys = new int[size];
+        int count = 0;
+        if (hasFreeKey) keys[count++] = FREE;
+        for (int key : table.keys) {
+            if (key != FREE) keys[count++] = key;
+        }
+        return keys;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        return capacity;
+    }
+
+    /** Resource ids differ mostly in their low bits within a type, so spread them before masking. */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static class Table {
+        final int[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+        }
+
+        Table grow() {
+            Table grown = new Table(keys.length * 2);
+            int mask = grown.keys.length - 1;
+            for (int j = 0; j < keys.length; j++) {
+                int key = keys[j];
+                if (key == FREE) continue;
+                int i = mix(key) & mask;
+                while (grown.keys[i] != FREE) i = (i + 1) & mask;
+                grown.keys[i] = key;
+                grown.values[i] = values[j];
+            }
+            return grown;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IntObjectMap{size=" + size + ", capacity=" + table.keys.length + "}";
+    }
+}
@@ -1,49 +1,112 @@
 package org.robolectric.res;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Combines resource indexes without copying them. Lookups go first to the sub-indexes that claim the resource's
+ * package (or package id), then to the rest in order, since some indexes answer for packages they don't claim.
+ */
 public class MergedResourceIndex extends ResourceIndex {
     private final ResourceIndex[] subIndexes;
+    private final Map<String, ResourceIndex[]> subIndexesByPackage = new HashMap<String, ResourceIndex[]>();
+    private final Map<Integer, ResourceIndex[]> subIndexesByPackageId = new HashMap<Integer, ResourceIndex[]>();
+    private final Set<String> packages = new HashSet<String>();
+    private final Set<Integer> packageIds = new HashSet<Integer>();
 
     public MergedResourceIndex(ResourceIndex... subIndexes) {
         this.subIndexes = subIndexes;
+
+        Map<String, List<ResourceIndex>> byPackage = new HashMap<String, List<ResourceIndex>>();
+        Map<Integer, List<ResourceIndex>> byPackageId = new HashMap<Integer, List<ResourceIndex>>();
         for (ResourceIndex subIndex : subIndexes) {
-            merge(resourceNameToId, subIndex.resourceNameToId, "resourceNameToId");
-            merge(resourceIdToResName, subIndex.resourceIdToResName, "resourceIdToResName");
+            for (String packageName : subIndex.getPackages()) {
+                route(byPackage, packageName, subIndex);
+            }
+            for (Integer packageId : subIndex.getPackageIds()) {
+                route(byPackageId, packageId, subIndex);
+            }
+        }
+
+        for (Map.Entry<String, List<ResourceIndex>> entry : byPackage.entrySet()) {
+            subIndexesByPackage.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        for (Map.Entry<Integer, List<ResourceIndex>> entry : byPackageId.entrySet()) {
+            subIndexesByPackageId.put(entry.getKey(), toArray(entry.getValue()));
         }
+        packages.addAll(byPackage.keySet());
+        packageIds.addAll(byPackageId.keySet());
     }
 
-    private static <K,V> void merge(Map<K, V> map1, Map<K, V> map2, String name) {
-        int expected = map1.size() + map2.size();
-        map1.putAll(map2);
-        if (map1.size() != expected) {
-            throw new IllegalStateException("there must have been some overlap for " + name + "! expected " + expected + " but got " + map1.size());
+    private static <K> void route(Map<K, List<ResourceIndex>> routes, K key, ResourceIndex subIndex) {
+        List<ResourceIndex> subIndexes = routes.get(key);
+        if (subIndexes == null) {
+            subIndexes = new ArrayList<ResourceIndex>();
+            routes.put(key, subIndexes);
         }
+        subIndexes.add(subIndex);
+    }
+
+    private static ResourceIndex[] toArray(List<ResourceIndex> subIndexes) {
+        return subIndexes.toArray(new ResourceIndex[subIndexes.size()]);
     }
 
     @Override
     public Integer getResourceId(ResName resName) {
-        // todo: this is pretty silly...
-        Integer id = resourceNameToId.get(resName);
-        if (id == null) {
-            for (ResourceIndex subIndex : subIndexes) {
-                id = subIndex.getResourceId(resName);
+        ResourceIndex[] routed = subIndexesByPackage.get(resName.namespace);
+        if (routed != null) {
+            for (ResourceIndex subIndex : routed) {
+                Integer id = subIndex.getResourceId(resName);
                 if (id != null) return id;
             }
         }
-        return id;
+
+        for (ResourceIndex subIndex : subIndexes) {
+            if (contains(routed, subIndex)) continue;
+            Integer id = subIndex.getResourceId(resName);
+            if (id != null) return id;
+        }
+        return null;
     }
 
     @Override
     public ResName getResName(int resourceId) {
-        // todo: this is pretty silly...
-        ResName resName = resourceIdToResName.get(resourceId);
-        if (resName == null) {
-            for (ResourceIndex subIndex : subIndexes) {
-                resName = subIndex.getResName(resourceId);
+        ResourceIndex[] routed = subIndexesByPackageId.get(packageIdOf(resourceId));
+        if (routed != null) {
+            for (ResourceIndex subIndex : routed) {
+                ResName resName = subIndex.getResName(resourceId);
                 if (resName != null) return resName;
             }
         }
-        return resName;
+
+        for (ResourceIndex subIndex : subIndexes) {
+            if (contains(routed, subIndex)) continue;
+            ResName resName = subIndex.getResName(resourceId);
+            if (resName != null) return resName;
+        }
+        return null;
+    }
+
+    private static boolean contains(ResourceIndex[] subIndexes, ResourceIndex subIndex) {
+        if (subIndexes == null) return false;
+        for (ResourceIndex each : subIndexes) {
+            if (each == subIndex) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Set<String> getPackages() {
+        return Collections.unmodifiableSet(packages);
+    }
+
+    @Override
+    public Set<Integer> getPackageIds() {
+        return Collections.unmodifiableSet(packageIds);
     }
-}
\ No newline at end of file
+}
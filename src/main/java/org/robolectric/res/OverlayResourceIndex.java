@@ -1,12 +1,29 @@
 package org.robolectric.res;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Presents the resources of an app and its library projects as if they were all in the app's package. A resource
+ * defined in more than one of the sub-indexes resolves the way the last one defines it.
+ * <p/>
+ * Where each name is defined is worked out once, when the index is built, so a lookup is one hash lookup here and one
+ * in the sub-index that defines the name. Sub-indexes that can't list their names are only asked, last to first,
+ * about names none of the others define.
+ */
 class OverlayResourceIndex extends ResourceIndex {
     private final String packageName;
+    private final ResourceIndex[] subResourceIndexes;
+    private final Map<ResName, Route> routes = new HashMap<ResName, Route>();
+    private final ResourceIndex[] unlistedSubResourceIndexes;
+    private final String[][] unlistedSubPackages;
+    private final Set<String> packages = new HashSet<String>();
+    private final Set<Integer> packageIds = new HashSet<Integer>();
 
     public OverlayResourceIndex(String packageName, List<PackageResourceLoader> subResourceLoaders) {
         this(packageName, map(subResourceLoaders));
@@ -22,100 +39,84 @@ class OverlayResourceIndex extends ResourceIndex {
 
     public OverlayResourceIndex(String packageName, ResourceIndex... subResourceIndexes) {
         this.packageName = packageName;
+        this.subResourceIndexes = subResourceIndexes;
 
-        final ResEntries resEntries = new ResEntries();
+        List<ResourceIndex> unlisted = new ArrayList<ResourceIndex>();
+        packages.add(packageName);
         for (ResourceIndex subResourceIndex : subResourceIndexes) {
-            for (Map.Entry<ResName, Integer> entry : subResourceIndex.resourceNameToId.entrySet()) {
-                ResName resName = entry.getKey();
-                int value = entry.getValue();
-                ResName localResName = resName.withPackageName(packageName);
-                if (OverlayResourceLoader.DEBUG) resEntries.add(localResName, resName, value);
-                resourceNameToId.put(localResName, value);
-                resourceIdToResName.put(value, localResName);
+            Set<ResName> resNames = subResourceIndex.getResNames();
+            if (resNames == null) {
+                unlisted.add(subResourceIndex);
+            } else {
+                for (ResName resName : resNames) {
+                    routes.put(resName.withPackageName(packageName), new Route(subResourceIndex, resName));
+                }
             }
+            packages.addAll(subResourceIndex.getPackages());
+            packageIds.addAll(subResourceIndex.getPackageIds());
         }
 
-//        if (OverlayResourceLoader.DEBUG) resEntries.check(subResourceIndexes);
+        unlistedSubResourceIndexes = unlisted.toArray(new ResourceIndex[unlisted.size()]);
+        unlistedSubPackages = new String[unlistedSubResourceIndexes.length][];
+        for (int i = 0; i < unlistedSubResourceIndexes.length; i++) {
+            Set<String> subIndexPackages = unlistedSubResourceIndexes[i].getPackages();
+            unlistedSubPackages[i] = subIndexPackages.toArray(new String[subIndexPackages.size()]);
+        }
     }
 
     @Override
     public Integer getResourceId(ResName resName) {
-        return resourceNameToId.get(resName.withPackageName(packageName));
+        Route route = routes.get(resName.withPackageName(packageName));
+        if (route != null) return route.subResourceIndex.getResourceId(route.resName);
+
+        for (int i = unlistedSubResourceIndexes.length - 1; i >= 0; i--) {
+            if (unlistedSubPackages[i].length == 0) {
+                // we don't know which packages this one has, so just ask
+                Integer id = unlistedSubResourceIndexes[i].getResourceId(resName);
+                if (id != null) return id;
+            }
+            for (String subPackage : unlistedSubPackages[i]) {
+                Integer id = unlistedSubResourceIndexes[i].getResourceId(resName.withPackageName(subPackage));
+                if (id != null) return id;
+            }
+        }
+        return null;
     }
 
     @Override
     public ResName getResName(int resourceId) {
-        ResName resName = resourceIdToResName.get(resourceId);
-        return resName == null ? null : resName.withPackageName(packageName);
+        for (int i = subResourceIndexes.length - 1; i >= 0; i--) {
+            ResName resName = subResourceIndexes[i].getResName(resourceId);
+            if (resName != null) return resName.withPackageName(packageName);
+        }
+        return null;
     }
 
-    class ResEntries {
-        private final Map<ResName, List<ResEntry>> resEntries = new HashMap<ResName, List<ResEntry>>();
+    @Override
+    public Set<ResName> getResNames() {
+        return unlistedSubResourceIndexes.length == 0 ? Collections.unmodifiableSet(routes.keySet()) : null;
+    }
 
-        public void add(ResName localResName, ResName resName, int value) {
-            List<ResEntry> resEntryList = resEntries.get(localResName);
-            if (resEntryList == null) {
-                resEntryList = new ArrayList<ResEntry>();
-                resEntries.put(localResName, resEntryList);
-            }
-            resEntryList.add(new ResEntry(resName, value));
-        }
+    @Override
+    public Set<String> getPackages() {
+        return Collections.unmodifiableSet(packages);
+    }
 
-//        public void check(ResourceIndex... subResourceIndex) {
-//            for (Map.Entry<ResName, List<ResEntry>> entries : resEntries.entrySet()) {
-//                List<ResEntry> value = entries.getValue();
-//                int first = value.get(0).value;
-//                for (int i = 1, valueSize = value.size(); i < valueSize; i++) {
-//                    ResEntry resEntry = value.get(i);
-//                    if (resEntry.value != first) {
-//                        Class<?> rClass = subResourceIndex[i].resourcePath.rClass;
-//                        setField(rClass, resEntry.resName, first);
-//
-//                        System.err.println("*** WARNING!!! resource mismatch!");
-//                        for (ResEntry entry : value) {
-//                            System.err.println("* " + entry.resName + " -> 0x" + Integer.toHexString(entry.value));
-//                        }
-//                        break;
-//                    }
-//                }
-//            }
-//        }
-//
-//        private void setField(Class<?> rClass, ResName resName, int value) {
-//            Class<?> innerClass = getInnerClass(rClass, resName.type);
-//            try {
-//                Field field = innerClass.getDeclaredField(resName.name);
-//                if (Modifier.isFinal(field.getModifiers())) {
-//                    System.err.println("*** WARNING!!! " + field + " is final!");
-//                    Robolectric.Reflection.setFinalStaticField(innerClass, resName.name, value);
-//                } else {
-//                    field.set(null, value);
-//                }
-//            } catch (NoSuchFieldException e) {
-//                throw new RuntimeException(e);
-//            } catch (IllegalAccessException e) {
-//                throw new RuntimeException(e);
-//            }
-//
-//        }
-//
-//        private Class<?> getInnerClass(Class<?> rClass, String name) {
-//            for (Class<?> aClass : rClass.getClasses()) {
-//                if (aClass.getSimpleName().equals(name)) {
-//                    return aClass;
-//                }
-//            }
-//            throw new RuntimeException("couldn't find " + rClass.getName() + "." + name);
-//        }
+    @Override
+    public Set<Integer> getPackageIds() {
+        return Collections.unmodifiableSet(packageIds);
     }
 
-    class ResEntry {
+    /**
+     * The sub-index that defines a name, and the name as it's known there.
+     */
+    private static class Route {
+        private final ResourceIndex subResourceIndex;
         private final ResName resName;
-        private final int value;
 
-        public ResEntry(ResName resName, int value) {
+        Route(ResourceIndex subResourceIndex, ResName resName) {
+            this.subResourceIndex = subResourceIndex;
             this.resName = resName;
-            this.value = value;
         }
     }
 }
@@ -2,18 +2,49 @@ package org.robolectric.res;
 
 import org.robolectric.util.I18nException;
 
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the resources in one package's res directory.
+ * <p/>
+ * XML files are parsed on a thread pool shared by all PackageResourceLoaders, one thread per processor unless the
+ * "robolectric.resourceLoadingThreads" system property says otherwise; set it to 1 to parse everything on the
+ * thread that needs the resources.
+ * <p/>
+ * Each category of resources is loaded the first time one of its resources is asked for, except by subclasses, which
+ * load everything at once.
+ * <p/>
+ * If the "robolectric.resourceCache.path" system property names a directory, what's parsed is saved there as a
+ * {@link ResourceSnapshot}, and later loaders for the same unchanged res directory read the snapshot instead of
+ * parsing again.
+ */
 public class PackageResourceLoader extends XResourceLoader {
+    private static ExecutorService parsingExecutorService;
+
     ResourcePath resourcePath;
     ResourceIndex resourceIndex;
+    private boolean checkedLoadingStrategy;
+    private boolean loadedEverything;
 
     public PackageResourceLoader(ResourcePath resourcePath) {
         super(new ResourceExtractor(resourcePath));
         this.resourcePath = resourcePath;
     }
 
-    void doInitialize() {
+    @Override
+    void doInitialize(Category category) {
         try {
-            loadEverything();
+            if (!checkedLoadingStrategy) {
+                checkedLoadingStrategy = true;
+                loadedEverything = loadEverythingAtOnce();
+            }
+
+            if (!loadedEverything) {
+                load(category);
+            }
         } catch (I18nException e) {
             throw e;
         } catch (Exception e) {
@@ -21,35 +52,111 @@ public class PackageResourceLoader extends XResourceLoader {
         }
     }
 
-    private void loadEverything() throws Exception {
-        System.out.println("DEBUG: Loading resources for " + resourcePath.getPackageName() + " from " + resourcePath.resourceBase + "...");
+    /**
+     * Snapshots hold every category, so when resources are cached they're read or parsed all at once. Subclasses may
+     * load other resources, which override standard ones, so for them every category is loaded first, then
+     * {@link #loadOtherResources(ResourcePath)}.
+     *
+     * @return false if categories should be loaded one at a time instead
+     */
+    private boolean loadEverythingAtOnce() throws Exception {
+        if (getClass() != PackageResourceLoader.class) {
+            loadAllCategories();
+            loadOtherResources(resourcePath);
+            return true;
+        }
 
-        new DocumentLoader(
-                new ValueResourceLoader(booleanResolver, "bool", false),
-                new ValueResourceLoader(colorResolver, "color", false),
-                new ValueResourceLoader(dimenResolver, "dimen", false),
-                new ValueResourceLoader(integerResolver, "integer", true),
-                new PluralResourceLoader(resourceIndex, pluralsResolver),
-                new ValueResourceLoader(stringResolver, "string", true),
-                attrResourceLoader
-        ).loadResourceXmlSubDirs(resourcePath, "values");
+        ResourceSnapshot resourceSnapshot = createResourceSnapshot();
+        if (resourceSnapshot == null) return false;
 
-        new DocumentLoader(new ViewLoader(viewNodes)).loadResourceXmlSubDirs(resourcePath, "layout");
-        new DocumentLoader(new MenuLoader(menuNodes)).loadResourceXmlSubDirs(resourcePath, "menu");
-        DrawableResourceLoader drawableResourceLoader = new DrawableResourceLoader(drawableNodes);
-        drawableResourceLoader.findNinePatchResources(resourcePath);
-        new DocumentLoader(drawableResourceLoader).loadResourceXmlSubDirs(resourcePath, "drawable");
-        new DocumentLoader(new PreferenceLoader(preferenceNodes)).loadResourceXmlSubDirs(resourcePath, "xml");
-        new DocumentLoader(new XmlFileLoader(xmlDocuments)).loadResourceXmlSubDirs(resourcePath, "xml");
+        if (!resourceSnapshot.read(this)) {
+            loadAllCategories();
+            resourceSnapshot.write(this);
+        } else {
+            rawResourceLoaders.add(new RawResourceLoader(getResourceIndex(), resourcePath.resourceBase));
+        }
+        return true;
+    }
 
-        loadOtherResources(resourcePath);
+    private void loadAllCategories() throws Exception {
+        for (Category category : Category.values()) {
+            load(category);
+        }
+    }
 
-        rawResourceLoaders.add(new RawResourceLoader(resourceIndex, resourcePath.resourceBase));
+    private void load(Category category) throws Exception {
+        ExecutorService executorService = getParsingExecutorService();
+        switch (category) {
+            case VALUES:
+                new DocumentLoader(executorService,
+                        new ValueResourceLoader(booleanResolver, "bool", false),
+                        new ValueResourceLoader(colorResolver, "color", false),
+                        new ValueResourceLoader(dimenResolver, "dimen", false),
+                        new ValueResourceLoader(integerResolver, "integer", true),
+                        new PluralResourceLoader(resourceIndex, pluralsResolver),
+                        new ValueResourceLoader(stringResolver, "string", true),
+                        attrResourceLoader
+                ).loadResourceXmlSubDirs(resourcePath, "values");
+                break;
+            case LAYOUT:
+                new DocumentLoader(executorService, new ViewLoader(viewNodes)).loadResourceXmlSubDirs(resourcePath, "layout");
+                break;
+            case MENU:
+                new DocumentLoader(executorService, new MenuLoader(menuNodes)).loadResourceXmlSubDirs(resourcePath, "menu");
+                break;
+            case DRAWABLE:
+                DrawableResourceLoader drawableResourceLoader = new DrawableResourceLoader(drawableNodes);
+                drawableResourceLoader.findNinePatchResources(resourcePath);
+                new DocumentLoader(executorService, drawableResourceLoader).loadResourceXmlSubDirs(resourcePath, "drawable");
+                break;
+            case XML:
+                new DocumentLoader(executorService, new PreferenceLoader(preferenceNodes), new XmlFileLoader(xmlDocuments))
+                        .loadResourceXmlSubDirs(resourcePath, "xml");
+                break;
+            case RAW:
+                rawResourceLoaders.add(new RawResourceLoader(getResourceIndex(), resourcePath.resourceBase));
+                break;
+        }
     }
 
+    /**
+     * Loads resources other than the standard categories. Called once, after every category has been loaded, so what
+     * it adds replaces standard resources with the same names.
+     */
     protected void loadOtherResources(ResourcePath resourcePath) {
     }
 
+    private ResourceSnapshot createResourceSnapshot() {
+        // subclasses may load other resources, which snapshots wouldn't capture
+        if (getClass() != PackageResourceLoader.class) return null;
+
+        String resourceCachePath = System.getProperty("robolectric.resourceCache.path");
+        if (resourceCachePath == null || "".equals(resourceCachePath.trim())) return null;
+        return new ResourceSnapshot(new File(resourceCachePath));
+    }
+
+    /**
+     * @return the pool to parse XML files on, or null to parse them on the calling thread
+     */
+    static synchronized ExecutorService getParsingExecutorService() {
+        int threadCount = Integer.getInteger("robolectric.resourceLoadingThreads", Runtime.getRuntime().availableProcessors());
+        if (threadCount <= 1) return null;
+
+        if (parsingExecutorService == null) {
+            parsingExecutorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                private int count = 0;
+
+                @Override public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "robolectric-resource-parser-" + (++count));
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(PackageResourceLoader.class.getClassLoader());
+                    return thread;
+                }
+            });
+        }
+        return parsingExecutorService;
+    }
+
     @Override
     public String toString() {
         return "PackageResourceLoader{" +
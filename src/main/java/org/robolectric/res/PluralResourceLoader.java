@@ -1,34 +1,24 @@
 package org.robolectric.res;
 
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.util.ArrayList;
 import java.util.List;
 
-public class PluralResourceLoader extends XpathResourceXmlLoader {
+public class PluralResourceLoader extends ValueLoader {
     private ResBundle<PluralRules> pluralRulesResBundle;
 
     public PluralResourceLoader(ResourceIndex resourceIndex, ResBundle<PluralRules> pluralRulesResBundle) {
-        super("/resources/plurals", "plurals");
+        super("plurals");
         this.pluralRulesResBundle = pluralRulesResBundle;
     }
 
-    @Override protected void processNode(Node node, String name, XmlContext xmlContext, String attrType) throws XPathExpressionException {
-        XPathExpression itemXPath = XPathFactory.newInstance().newXPath().compile("item");
-        NodeList childNodes = (NodeList) itemXPath.evaluate(node, XPathConstants.NODESET);
+    @Override protected void processValue(ValueElement element, XmlContext xmlContext) {
         PluralRules rules = new PluralRules();
-        for (int j = 0; j < childNodes.getLength(); j++) {
-            Node childNode = childNodes.item(j);
-            String value = childNode.getTextContent();
-            String quantity = childNode.getAttributes().getNamedItem("quantity").getTextContent();
-            rules.add(new Plural(quantity, value));
+        for (ValueElement child : element.getChildren()) {
+            if (child.getName().equals("item")) {
+                rules.add(new Plural(child.getAttribute("quantity"), child.getTextContent()));
+            }
         }
-        pluralRulesResBundle.put(attrType, name, rules, xmlContext);
+        pluralRulesResBundle.put("plurals", element.getAttribute("name"), rules, xmlContext);
     }
 
     static class PluralRules {
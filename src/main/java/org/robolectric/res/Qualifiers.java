@@ -0,0 +1,68 @@
+package org.robolectric.res;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Numbers the individual qualifiers in resource directory names and configurations ("en", "port", "hdpi"...), so a
+ * set of them can be held as a bitset and matched without splitting or searching strings.
+ */
+class Qualifiers {
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final ConcurrentMap<String, int[]> parsedConfigurations = new ConcurrentHashMap<String, int[]>();
+
+    static int idOf(String qualifier) {
+        Integer id = ids.get(qualifier);
+        if (id == null) {
+            synchronized (ids) {
+                id = ids.get(qualifier);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(qualifier, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Parses the qualifiers of a resource directory, e.g. "en-port", into a bitset of qualifier ids. No qualifiers at
+     * all is treated as the single empty qualifier, which is what a configuration without qualifiers asks for.
+     */
+    static long[] parseSet(String qualifiers) {
+        String[] parts = (qualifiers == null ? "" : qualifiers).split("-", -1);
+        long[] set = new long[0];
+        for (String part : parts) {
+            int id = idOf(part);
+            int word = id >>> 6;
+            if (word >= set.length) {
+                long[] newSet = new long[word + 1];
+                System.arraycopy(set, 0, newSet, 0, set.length);
+                set = newSet;
+            }
+            set[word] |= 1L << id;
+        }
+        return set;
+    }
+
+    /**
+     * Parses the qualifiers of a configuration, e.g. "en-GB-port-hdpi", into qualifier ids, in order of precedence.
+     */
+    static int[] parseConfiguration(String qualifiers) {
+        int[] parsed = parsedConfigurations.get(qualifiers);
+        if (parsed == null) {
+            String[] parts = qualifiers.split("-");
+            parsed = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                parsed[i] = idOf(parts[i]);
+            }
+            parsedConfigurations.putIfAbsent(qualifiers, parsed);
+        }
+        return parsed;
+    }
+
+    static boolean contains(long[] set, int id) {
+        int word = id >>> 6;
+        return word < set.length && (set[word] & (1L << id)) != 0;
+    }
+}
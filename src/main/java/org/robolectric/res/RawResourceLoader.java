@@ -1,40 +1,116 @@
 package org.robolectric.res;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Opens the files in a res/raw directory by resource id.
+ * <p/>
+ * The directory is listed once, the first time a raw resource is asked for. Small files are kept in memory once read,
+ * up to {@link #MAX_CACHED_BYTES} in all, least recently used first out, so opening them again doesn't touch the disk.
+ */
 public class RawResourceLoader {
+    static final int MAX_CACHED_FILE_BYTES = 256 * 1024;
+    static final int MAX_CACHED_BYTES = 4 * 1024 * 1024;
 
     private ResourceIndex resourceIndex;
     private File resourceDir;
 
+    private Map<String, File> filesByName;
+    private final LinkedHashMap<File, byte[]> cachedContents = new LinkedHashMap<File, byte[]>(16, 0.75f, true);
+    private int cachedBytes;
+
     public RawResourceLoader(ResourceIndex resourceIndex, File resourceDir) {
         this.resourceIndex = resourceIndex;
         this.resourceDir = resourceDir;
     }
 
     public InputStream getValue(int resourceId) {
-        String resourceFileName = resourceIndex.getResName(resourceId).name;
-        File rawResourceDir = new File(resourceDir, "raw");
-
-        File[] files = rawResourceDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                String name = file.getName();
-                int dotIndex = name.indexOf(".");
-                String fileBaseName = dotIndex >= 0 ? name.substring(0, dotIndex) : name;
-                if (fileBaseName.equals(resourceFileName)) {
-                    try {
-                        return new FileInputStream(file);
-                    } catch (FileNotFoundException e) {
-                        throw new RuntimeException(e);
+        ResName resName = resourceIndex.getResName(resourceId);
+        if (resName == null) return null;
+
+        File file = getFilesByName().get(resName.name);
+        if (file == null) return null;
+
+        byte[] contents = getContents(file);
+        if (contents != null) return new ByteArrayInputStream(contents);
+
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized Map<String, File> getFilesByName() {
+        if (filesByName == null) {
+            filesByName = new HashMap<String, File>();
+            File[] files = new File(resourceDir, "raw").listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    int dotIndex = name.indexOf(".");
+                    String fileBaseName = dotIndex >= 0 ? name.substring(0, dotIndex) : name;
+                    if (!filesByName.containsKey(fileBaseName)) {
+                        filesByName.put(fileBaseName, file);
                     }
                 }
             }
         }
-        return null;
+        return filesByName;
+    }
+
+    /**
+     * @return the file's contents, or null if it's too big to keep in memory
+     */
+    private synchronized byte[] getContents(File file) {
+        byte[] contents = cachedContents.get(file);
+        if (contents != null) return contents;
+
+        long length = file.length();
+        if (length > MAX_CACHED_FILE_BYTES) return null;
+
+        try {
+            contents = readFully(file, (int) length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        cachedContents.put(file, contents);
+        cachedBytes += contents.length;
+        Iterator<byte[]> leastRecentlyUsed = cachedContents.values().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES) {
+            cachedBytes -= leastRecentlyUsed.next().length;
+            leastRecentlyUsed.remove();
+        }
+        return contents;
     }
 
+    private static byte[] readFully(File file, int length) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] contents = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int count = in.read(contents, offset, length - offset);
+                if (count < 0) break;
+                offset += count;
+            }
+            if (offset == length) return contents;
+
+            byte[] truncated = new byte[offset];
+            System.arraycopy(contents, 0, truncated, 0, offset);
+            return truncated;
+        } finally {
+            in.close();
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package org.robolectric.res;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -31,7 +33,7 @@ public class ResBundle<T> {
     }
 
     public Value<T> getValue(ResName resName, String qualifiers) {
-        Values<T> values = valuesMap.find(maybeOverride(resName));
+        Values<T> values = valuesMap.get(maybeOverride(resName));
         return (values != null) ? pick(values, qualifiers) : null;
     }
 
@@ -41,42 +43,12 @@ public class ResBundle<T> {
     }
 
     public Value<List<T>> getListValue(ResName resName, String qualifiers) {
-        Values<List<T>> values = valuesArrayMap.find(maybeOverride(resName));
+        Values<List<T>> values = valuesArrayMap.get(maybeOverride(resName));
         return (values != null) ? pick(values, qualifiers) : null;
     }
 
     public static <T> Value<T> pick(Values<T> values, String qualifiers) {
-        final int count = values.size();
-        if (count >= Long.SIZE) throw new RuntimeException("really, more than " + Long.SIZE + " qualifiers?!?");
-        if (count == 0) return null;
-
-        long possibles = 0;
-        for (int i = 0; i < count; i++) possibles |= 1 << i;
-
-        String[] qualifierList = qualifiers.split("-");
-        for (String qualifier : qualifierList) {
-            String paddedQualifier = "-" + qualifier + "-";
-            long matches = 0;
-
-            for (int i = 0; i < count; i++) {
-                if ((possibles & (1 << i)) == 0) continue;
-
-                if (values.get(i).qualifiers.contains(paddedQualifier)) {
-                    matches |= 1 << i;
-                }
-            }
-
-            if (matches != 0) {
-                possibles &= matches; // eliminate any that didn't match this qualifier
-            }
-
-            if (Long.bitCount(matches) == 1) break;
-        }
-
-        for (int i = 0; i < count; i++) {
-            if ((possibles & (1 << i)) != 0) return values.get(i);
-        }
-        throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers + "\"");
+        return values.pick(qualifiers);
     }
 
     public int size() {
@@ -106,10 +78,29 @@ public class ResBundle<T> {
         valuesArrayMap.merge(packageName, fromResBundle.valuesArrayMap);
     }
 
+    // for ResourceSnapshot, which writes and reads values in their sorted order
+
+    Map<ResName, Values<T>> getValuesMap() {
+        return valuesMap.map;
+    }
+
+    Map<ResName, Values<List<T>>> getValuesArrayMap() {
+        return valuesArrayMap.map;
+    }
+
+    void addValue(ResName resName, Value<T> value) {
+        valuesMap.find(resName).add(value);
+    }
+
+    void addArrayValue(ResName resName, Value<List<T>> value) {
+        valuesArrayMap.find(resName).add(value);
+    }
+
     static class Value<T> implements Comparable<Value<T>> {
         final String qualifiers;
         final T value;
         final XmlLoader.XmlContext xmlContext;
+        final long[] qualifierSet;
 
         Value(String qualifiers, T value, XmlLoader.XmlContext xmlContext) {
             if (value == null) {
@@ -118,6 +109,7 @@ public class ResBundle<T> {
 
             this.xmlContext = xmlContext;
             this.qualifiers = qualifiers == null ? "--" : "-" + qualifiers + "-";
+            this.qualifierSet = Qualifiers.parseSet(qualifiers);
             this.value = value;
         }
 
@@ -127,13 +119,105 @@ public class ResBundle<T> {
         }
     }
 
+    /**
+     * The variants of a resource. Which one is picked for a given configuration is remembered until the variants
+     * change, so repeated lookups for the same configuration just scan a small table.
+     */
     static class Values<T> extends ArrayList<Value<T>> {
+        private volatile Resolutions<T> resolutions;
+
+        Value<T> pick(String qualifiers) {
+            Resolutions<T> resolutions = this.resolutions;
+            if (resolutions != null && resolutions.modCount == modCount) {
+                for (int i = 0; i < resolutions.qualifiers.length; i++) {
+                    String resolvedQualifiers = resolutions.qualifiers[i];
+                    if (resolvedQualifiers == qualifiers || resolvedQualifiers.equals(qualifiers)) {
+                        return resolutions.values[i];
+                    }
+                }
+            }
+
+            Value<T> value = resolve(Qualifiers.parseConfiguration(qualifiers), qualifiers);
+            synchronized (this) {
+                Resolutions<T> current = this.resolutions;
+                if (current == null || current.modCount != modCount) {
+                    current = new Resolutions<T>(modCount);
+                }
+                this.resolutions = current.with(qualifiers, value);
+            }
+            return value;
+        }
+
+        /**
+         * Narrows the variants down by each qualifier of the configuration in turn, skipping qualifiers no remaining
+         * variant has, until only one variant has the qualifier; then picks the first remaining variant.
+         */
+        private Value<T> resolve(int[] qualifierIds, String qualifiers) {
+            final int count = size();
+            if (count == 0) return null;
+
+            BitSet possibles = new BitSet(count);
+            possibles.set(0, count);
+            BitSet matches = new BitSet(count);
+
+            for (int qualifierId : qualifierIds) {
+                matches.clear();
+                for (int i = possibles.nextSetBit(0); i >= 0; i = possibles.nextSetBit(i + 1)) {
+                    if (Qualifiers.contains(get(i).qualifierSet, qualifierId)) {
+                        matches.set(i);
+                    }
+                }
+
+                if (!matches.isEmpty()) {
+                    possibles.and(matches); // eliminate any that didn't match this qualifier
+                }
+
+                if (matches.cardinality() == 1) break;
+            }
+
+            int first = possibles.nextSetBit(0);
+            if (first >= 0) return get(first);
+            throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers + "\"");
+        }
+    }
+
+    private static class Resolutions<T> {
+        private final int modCount;
+        private final String[] qualifiers;
+        private final Value<T>[] values;
+
+        @SuppressWarnings("unchecked")
+        Resolutions(int modCount) {
+            this(modCount, new String[0], new Value[0]);
+        }
+
+        private Resolutions(int modCount, String[] qualifiers, Value<T>[] values) {
+            this.modCount = modCount;
+            this.qualifiers = qualifiers;
+            this.values = values;
+        }
+
+        Resolutions<T> with(String qualifiers, Value<T> value) {
+            String[] newQualifiers = Arrays.copyOf(this.qualifiers, this.qualifiers.length + 1);
+            Value<T>[] newValues = Arrays.copyOf(this.values, this.values.length + 1);
+            newQualifiers[this.qualifiers.length] = qualifiers;
+            newValues[this.values.length] = value;
+            return new Resolutions<T>(modCount, newQualifiers, newValues);
+        }
     }
 
     private static class ResMap<T> {
         private final Map<ResName, Values<T>> map = new HashMap<ResName, Values<T>>();
         private boolean immutable;
 
+        /**
+         * @return the variants of a resource, or null if there are none; never changes the map, so lookups may run
+         *     on several threads at once
+         */
+        public Values<T> get(ResName resName) {
+            return map.get(resName);
+        }
+
         public Values<T> find(ResName resName) {
             Values<T> values = map.get(resName);
             if (values == null) map.put(resName, values = new Values<T>());
@@ -4,13 +4,21 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ResourceExtractor extends ResourceIndex {
     private static final ResourceRemapper RESOURCE_REMAPPER = new ResourceRemapper();
     private static final boolean REMAP_RESOURCES = false;
 
+    // both may be read without locking; ids are looked up without boxing
+    final Map<ResName, Integer> resourceNameToId = new ConcurrentHashMap<ResName, Integer>();
+    final IntObjectMap<ResName> resourceIdToResName = new IntObjectMap<ResName>();
+
     private Set<Class> processedRFiles = new HashSet<Class>();
+    private final Set<String> packages = new HashSet<String>();
+    private final Set<Integer> packageIds = new HashSet<Integer>();
     private Integer maxUsedInt = null;
 
     public ResourceExtractor() {
@@ -28,6 +36,7 @@ public class ResourceExtractor extends ResourceIndex {
             return;
         }
         String packageName = rClass.getPackage().getName();
+        packages.add(packageName);
 
         for (Class innerClass : rClass.getClasses()) {
             for (Field field : innerClass.getDeclaredFields()) {
@@ -58,6 +67,7 @@ public class ResourceExtractor extends ResourceIndex {
                     }
 
                     resourceIdToResName.put(value, resName);
+                    packageIds.add(packageIdOf(value));
                   }
                 }
             }
@@ -65,22 +75,53 @@ public class ResourceExtractor extends ResourceIndex {
     }
 
     @Override
-    public synchronized Integer getResourceId(ResName resName) {
+    public Integer getResourceId(ResName resName) {
         Integer id = resourceNameToId.get(resName);
         if (id == null && "android".equals(resName.namespace)) {
+            return assignResourceId(resName);
+        }
+        return id;
+    }
+
+    private synchronized Integer assignResourceId(ResName resName) {
+        Integer id = resourceNameToId.get(resName);
+        if (id == null) {
             if (maxUsedInt == null) {
-                maxUsedInt = resourceIdToResName.isEmpty() ? 0 : Collections.max(resourceIdToResName.keySet());
+                maxUsedInt = max(resourceIdToResName.keys());
             }
             id = ++maxUsedInt;
-            resourceNameToId.put(resName, id);
             resourceIdToResName.put(id, resName);
+            resourceNameToId.put(resName, id);
             System.out.println("INFO: no id mapping found for " + resName.getFullyQualifiedName() + "; assigning " + id);
         }
         return id;
     }
 
+    private static int max(int[] ints) {
+        int max = 0;
+        for (int i : ints) {
+            if (i > max) max = i;
+        }
+        return max;
+    }
+
     @Override
-    public synchronized ResName getResName(int resourceId) {
+    public ResName getResName(int resourceId) {
         return resourceIdToResName.get(resourceId);
     }
+
+    @Override
+    public Set<ResName> getResNames() {
+        return Collections.unmodifiableSet(resourceNameToId.keySet());
+    }
+
+    @Override
+    public Set<String> getPackages() {
+        return Collections.unmodifiableSet(packages);
+    }
+
+    @Override
+    public Set<Integer> getPackageIds() {
+        return Collections.unmodifiableSet(packageIds);
+    }
 }
\ No newline at end of file
@@ -1,12 +1,9 @@
 package org.robolectric.res;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Set;
 
 public abstract class ResourceIndex {
-    final Map<ResName, Integer> resourceNameToId = new HashMap<ResName, Integer>();
-    final Map<Integer, ResName> resourceIdToResName = new HashMap<Integer, ResName>();
-
     public abstract Integer getResourceId(ResName resName);
 
     public String getResourceName(int resourceId) {
@@ -15,4 +12,33 @@ public abstract class ResourceIndex {
     }
 
     public abstract ResName getResName(int resourceId);
+
+    /**
+     * Lets indexes that combine others send lookups straight to the right one; an empty set means unknown.
+     *
+     * @return the packages of the resource names this index knows
+     */
+    public Set<String> getPackages() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return the package ids (the top byte of the resource ids) this index knows, or an empty set if unknown
+     */
+    public Set<Integer> getPackageIds() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Lets indexes that combine others work out where each name is defined once, when they're built.
+     *
+     * @return the resource names this index knows, or null if it can't list them
+     */
+    public Set<ResName> getResNames() {
+        return null;
+    }
+
+    static int packageIdOf(int resourceId) {
+        return resourceId >>> 24;
+    }
 }
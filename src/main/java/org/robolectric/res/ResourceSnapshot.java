@@ -0,0 +1,753 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary snapshot of everything a {@link PackageResourceLoader} parses from its res directory, so resources that
+ * haven't changed, like the Android SDK's, needn't be parsed again by every JVM.
+ * <p/>
+ * Snapshots are stored in a cache directory, named by a fingerprint of the res directory's files (their paths, sizes
+ * and modification times), so a changed res directory is simply parsed again and gets a new snapshot. Snapshots are
+ * written to a temp file and renamed into place, and memory-mapped when read.
+ * <p/>
+ * Strings are written once and referred to by index after that; XML documents are stored as a tree of nodes and
+ * rebuilt without parsing. The {@link ResourceIndex} isn't included; it comes from the R class, not the res
+ * directory.
+ */
+class ResourceSnapshot {
+    static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x52524553; // "RRES"
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final byte DRAWABLE_XML = 1;
+    private static final byte DRAWABLE_IMAGE_FILE = 2;
+
+    private final File cacheDir;
+
+    ResourceSnapshot(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    File snapshotFileFor(ResourcePath resourcePath) {
+        return new File(cacheDir, resourcePath.getPackageName() + "-" + fingerprint(resourcePath.resourceBase) + ".res");
+    }
+
+    /**
+     * Restores a previously written snapshot into a fresh loader.
+     *
+     * @return false if there's no usable snapshot, leaving the loader untouched
+     */
+    boolean read(PackageResourceLoader loader) {
+        File file = snapshotFileFor(loader.resourcePath);
+        if (!file.isFile()) return false;
+
+        ByteBuffer buffer;
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.err.println("WARN: couldn't read resource snapshot " + file + ", parsing resources instead: " + e);
+            return false;
+        }
+
+        Reader reader = new Reader(buffer, loader.resourcePath.resourceBase);
+        if (!reader.isComplete()) {
+            System.err.println("WARN: resource snapshot " + file + " is unusable, parsing resources instead");
+            return false;
+        }
+
+        try {
+            reader.readInto(loader);
+        } catch (Exception e) {
+            throw new RuntimeException("couldn't read resource snapshot " + file + "; try deleting it", e);
+        }
+        return true;
+    }
+
+    /**
+     * Writes a snapshot of a loaded loader. Failures are ignored; the resources will just be parsed again next time.
+     */
+    void write(PackageResourceLoader loader) {
+        File file = snapshotFileFor(loader.resourcePath);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) return;
+
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), ".tmp", cacheDir);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+            try {
+                new Writer(out, loader.resourcePath.resourceBase).write(loader);
+            } finally {
+                out.close();
+            }
+
+            // snapshots are immutable, so if another JVM beat us to it, theirs is as good as ours
+            if (tempFile.renameTo(file)) {
+                tempFile = null;
+            }
+        } catch (IOException e) {
+            // no problem, we'll just parse again next time
+        } finally {
+            if (tempFile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    static String fingerprint(File resourceBase) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(toBytes(FORMAT_VERSION + ";"));
+            addToFingerprint(digest, resourceBase, "");
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void addToFingerprint(MessageDigest digest, File dir, String relativePath) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files) {
+            String path = relativePath + "/" + file.getName();
+            if (file.isDirectory()) {
+                addToFingerprint(digest, file, path);
+            } else {
+                digest.update(toBytes(path + ":" + file.length() + ":" + file.lastModified() + ";"));
+            }
+        }
+    }
+
+    private static byte[] toBytes(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private interface ValueWriter<T> {
+        void write(Writer writer, T value) throws IOException;
+    }
+
+    private interface ValueReader<T> {
+        T read(Reader reader);
+    }
+
+    static class Writer {
+        private final DataOutputStream out;
+        private final String resourceBasePath;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final Map<XmlLoader.XmlContext, Integer> xmlContexts = new IdentityHashMap<XmlLoader.XmlContext, Integer>();
+
+        Writer(DataOutputStream out, File resourceBase) {
+            this.out = out;
+            this.resourceBasePath = resourceBase.getPath() + File.separator;
+        }
+
+        void write(PackageResourceLoader loader) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            writeStringBundle(loader.booleanResolver);
+            writeStringBundle(loader.colorResolver);
+            writeStringBundle(loader.dimenResolver);
+            writeStringBundle(loader.integerResolver);
+            writeStringBundle(loader.stringResolver);
+            writeBundle(loader.pluralsResolver, PLURAL_RULES_WRITER);
+            writeBundle(loader.viewNodes, VIEW_NODE_WRITER);
+            writeBundle(loader.menuNodes, MENU_NODE_WRITER);
+            writeBundle(loader.drawableNodes, DRAWABLE_NODE_WRITER);
+            writeBundle(loader.preferenceNodes, PREFERENCE_NODE_WRITER);
+            writeBundle(loader.xmlDocuments, COMPILED_XML_WRITER);
+            writeAttrs(loader.attrResourceLoader);
+            out.writeInt(MAGIC);
+        }
+
+        private void writeStringBundle(ResBundle<String> resBundle) throws IOException {
+            writeBundle(resBundle, STRING_WRITER);
+        }
+
+        private <T> void writeBundle(ResBundle<T> resBundle, ValueWriter<T> valueWriter) throws IOException {
+            writeValuesMap(resBundle.getValuesMap(), valueWriter);
+            writeValuesMap(resBundle.getValuesArrayMap(), new ListWriter<T>(valueWriter));
+        }
+
+        private <T> void writeValuesMap(Map<ResName, ResBundle.Values<T>> valuesMap, ValueWriter<T> valueWriter) throws IOException {
+            out.writeInt(valuesMap.size());
+            for (Map.Entry<ResName, ResBundle.Values<T>> entry : valuesMap.entrySet()) {
+                writeResName(entry.getKey());
+                ResBundle.Values<T> values = entry.getValue();
+                out.writeInt(values.size());
+                for (ResBundle.Value<T> value : values) {
+                    writeXmlContext(value.xmlContext);
+                    valueWriter.write(this, value.value);
+                }
+            }
+        }
+
+        private void writeAttrs(AttrResourceLoader attrResourceLoader) throws IOException {
+            out.writeInt(attrResourceLoader.enums.size());
+            for (AttrResourceLoader.EnumDef enumDef : attrResourceLoader.enums.values()) {
+                writeString(enumDef.name);
+                writeStringMap(enumDef.values);
+            }
+
+            out.writeInt(attrResourceLoader.enumRefs.size());
+            for (Map.Entry<String, AttrResourceLoader.EnumRef> entry : attrResourceLoader.enumRefs.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue().viewName);
+                writeString(entry.getValue().enumName);
+            }
+
+            out.writeBoolean(attrResourceLoader.resolved);
+            writeStringMap(attrResourceLoader.classEnumToValue);
+
+            out.writeInt(attrResourceLoader.knownClassEnums.size());
+            for (String knownClassEnum : attrResourceLoader.knownClassEnums) {
+                writeString(knownClassEnum);
+            }
+        }
+
+        private void writeStringMap(Map<String, String> map) throws IOException {
+            out.writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        void writeResName(ResName resName) throws IOException {
+            writeString(resName.namespace);
+            writeString(resName.type);
+            writeString(resName.name);
+        }
+
+        void writeXmlContext(XmlLoader.XmlContext xmlContext) throws IOException {
+            Integer index = xmlContexts.get(xmlContext);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+
+            xmlContexts.put(xmlContext, xmlContexts.size());
+            out.writeInt(-1);
+            writeString(xmlContext.packageName);
+            String path = xmlContext.getXmlFile().getPath();
+            if (!path.startsWith(resourceBasePath)) {
+                throw new IOException(path + " isn't in " + resourceBasePath);
+            }
+            writeString(path.substring(resourceBasePath.length()));
+        }
+
+        void writeAttributes(List<Attribute> attributes) throws IOException {
+            out.writeInt(attributes.size());
+            for (Attribute attribute : attributes) {
+                writeResName(attribute.resName);
+                writeString(attribute.value);
+                writeString(attribute.contextPackageName);
+            }
+        }
+
+        void writeString(String string) throws IOException {
+            if (string == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            Integer index = strings.get(string);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+
+            strings.put(string, strings.size());
+            out.writeInt(-2);
+            byte[] bytes = toBytes(string);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeNode(Node node) throws IOException {
+            short nodeType = node.getNodeType();
+            out.writeShort(nodeType);
+            switch (nodeType) {
+                case Node.ELEMENT_NODE:
+                    writeString(node.getNamespaceURI());
+                    writeString(node.getNodeName());
+                    NamedNodeMap attributes = node.getAttributes();
+                    out.writeInt(attributes.getLength());
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        Node attr = attributes.item(i);
+                        writeString(attr.getNamespaceURI());
+                        writeString(attr.getNodeName());
+                        writeString(attr.getNodeValue());
+                    }
+                    writeChildNodes(node);
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                case Node.COMMENT_NODE:
+                    writeString(node.getNodeValue());
+                    break;
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    writeString(node.getNodeName());
+                    writeString(node.getNodeValue());
+                    break;
+                case Node.ENTITY_REFERENCE_NODE:
+                    writeString(node.getNodeName());
+                    break;
+                default:
+                    throw new IOException("can't snapshot " + node);
+            }
+        }
+
+        void writeChildNodes(Node node) throws IOException {
+            NodeList childNodes = node.getChildNodes();
+            List<Node> children = new ArrayList<Node>();
+            for (int i = 0; i < childNodes.getLength(); i++) {
+                Node child = childNodes.item(i);
+                if (child.getNodeType() != Node.DOCUMENT_TYPE_NODE) {
+                    children.add(child);
+                }
+            }
+
+            out.writeInt(children.size());
+            for (Node child : children) {
+                writeNode(child);
+            }
+        }
+    }
+
+    static class Reader {
+        // readers are made for every compiled xml document that's rebuilt, so don't look up a parser factory each time
+        private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<DocumentBuilder>() {
+            @Override protected DocumentBuilder initialValue() {
+                DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+                documentBuilderFactory.setNamespaceAware(true);
+                try {
+                    return documentBuilderFactory.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        private final ByteBuffer buffer;
+        private final File resourceBase;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<XmlLoader.XmlContext> xmlContexts = new ArrayList<XmlLoader.XmlContext>();
+
+        Reader(ByteBuffer buffer, File resourceBase) {
+            this.buffer = buffer;
+            this.resourceBase = resourceBase;
+        }
+
+        /**
+         * @return whether the buffer holds a whole snapshot in this format, checked without reading it
+         */
+        boolean isComplete() {
+            int limit = buffer.limit();
+            return limit >= 12 && buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT_VERSION
+                    && buffer.getInt(limit - 4) == MAGIC;
+        }
+
+        void readInto(PackageResourceLoader loader) throws IOException {
+            if (!isComplete()) throw new IOException("not a complete resource snapshot");
+            buffer.position(8);
+
+            readStringBundle(loader.booleanResolver);
+            readStringBundle(loader.colorResolver);
+            readStringBundle(loader.dimenResolver);
+            readStringBundle(loader.integerResolver);
+            readStringBundle(loader.stringResolver);
+            readBundle(loader.pluralsResolver, PLURAL_RULES_READER);
+            readBundle(loader.viewNodes, VIEW_NODE_READER);
+            readBundle(loader.menuNodes, MENU_NODE_READER);
+            readBundle(loader.drawableNodes, DRAWABLE_NODE_READER);
+            readBundle(loader.preferenceNodes, PREFERENCE_NODE_READER);
+            readBundle(loader.xmlDocuments, COMPILED_XML_READER);
+            readAttrs(loader.attrResourceLoader);
+
+            if (buffer.remaining() != 4) throw new IOException("unexpected data at end of snapshot");
+        }
+
+        private void readStringBundle(ResBundle<String> resBundle) {
+            readBundle(resBundle, STRING_READER);
+        }
+
+        private <T> void readBundle(ResBundle<T> resBundle, ValueReader<T> valueReader) {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                ResName resName = readResName();
+                int valueCount = buffer.getInt();
+                for (int j = 0; j < valueCount; j++) {
+                    XmlLoader.XmlContext xmlContext = readXmlContext();
+                    resBundle.addValue(resName, new ResBundle.Value<T>(xmlContext.getQualifiers(), valueReader.read(this), xmlContext));
+                }
+            }
+
+            ListReader<T> listReader = new ListReader<T>(valueReader);
+            int arrayCount = buffer.getInt();
+            for (int i = 0; i < arrayCount; i++) {
+                ResName resName = readResName();
+                int valueCount = buffer.getInt();
+                for (int j = 0; j < valueCount; j++) {
+                    XmlLoader.XmlContext xmlContext = readXmlContext();
+                    resBundle.addArrayValue(resName, new ResBundle.Value<List<T>>(xmlContext.getQualifiers(), listReader.read(this), xmlContext));
+                }
+            }
+        }
+
+        private void readAttrs(AttrResourceLoader attrResourceLoader) {
+            int enumCount = buffer.getInt();
+            for (int i = 0; i < enumCount; i++) {
+                AttrResourceLoader.EnumDef enumDef = new AttrResourceLoader.EnumDef(readString());
+                readStringMap(enumDef.values);
+                attrResourceLoader.enums.put(enumDef.name, enumDef);
+            }
+
+            int enumRefCount = buffer.getInt();
+            for (int i = 0; i < enumRefCount; i++) {
+                String key = readString();
+                attrResourceLoader.enumRefs.put(key, new AttrResourceLoader.EnumRef(readString(), readString()));
+            }
+
+            attrResourceLoader.resolved = buffer.get() != 0;
+            readStringMap(attrResourceLoader.classEnumToValue);
+
+            int knownClassEnumCount = buffer.getInt();
+            for (int i = 0; i < knownClassEnumCount; i++) {
+                attrResourceLoader.knownClassEnums.add(readString());
+            }
+        }
+
+        private void readStringMap(Map<String, String> map) {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString();
+                map.put(key, readString());
+            }
+        }
+
+        ResName readResName() {
+            String namespace = readString();
+            String type = readString();
+            return new ResName(namespace, type, readString());
+        }
+
+        XmlLoader.XmlContext readXmlContext() {
+            int index = buffer.getInt();
+            if (index >= 0) return xmlContexts.get(index);
+
+            String packageName = readString();
+            XmlLoader.XmlContext xmlContext = new XmlLoader.XmlContext(packageName, new File(resourceBase, readString()));
+            xmlContexts.add(xmlContext);
+            return xmlContext;
+        }
+
+        List<Attribute> readAttributes() {
+            int count = buffer.getInt();
+            List<Attribute> attributes = new ArrayList<Attribute>(count);
+            for (int i = 0; i < count; i++) {
+                ResName resName = readResName();
+                String value = readString();
+                attributes.add(new Attribute(resName, value, readString()));
+            }
+            return attributes;
+        }
+
+        String readString() {
+            int index = buffer.getInt();
+            if (index == -1) return null;
+            if (index >= 0) return strings.get(index);
+
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            try {
+                String string = new String(bytes, "UTF-8");
+                strings.add(string);
+                return string;
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Document readDocument() {
+            Document document = getDocumentBuilder().newDocument();
+            readChildNodes(document, document);
+            return document;
+        }
+
+        private void readChildNodes(Document document, Node parent) {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                parent.appendChild(readNode(document));
+            }
+        }
+
+        private Node readNode(Document document) {
+            short nodeType = buffer.getShort();
+            switch (nodeType) {
+                case Node.ELEMENT_NODE:
+                    String namespaceUri = readString();
+                    Element element = document.createElementNS(namespaceUri, readString());
+                    int attributeCount = buffer.getInt();
+                    for (int i = 0; i < attributeCount; i++) {
+                        String attrNamespaceUri = readString();
+                        Attr attr = document.createAttributeNS(attrNamespaceUri, readString());
+                        attr.setValue(readString());
+                        element.setAttributeNodeNS(attr);
+                    }
+                    readChildNodes(document, element);
+                    return element;
+                case Node.TEXT_NODE:
+                    return document.createTextNode(readString());
+                case Node.CDATA_SECTION_NODE:
+                    return document.createCDATASection(readString());
+                case Node.COMMENT_NODE:
+                    return document.createComment(readString());
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    String target = readString();
+                    return document.createProcessingInstruction(target, readString());
+                case Node.ENTITY_REFERENCE_NODE:
+                    return document.createEntityReference(readString());
+                default:
+                    throw new IllegalStateException("unexpected node type " + nodeType);
+            }
+        }
+
+        private static DocumentBuilder getDocumentBuilder() {
+            return DOCUMENT_BUILDERS.get();
+        }
+    }
+
+    private static class ListWriter<T> implements ValueWriter<List<T>> {
+        private final ValueWriter<T> valueWriter;
+
+        ListWriter(ValueWriter<T> valueWriter) {
+            this.valueWriter = valueWriter;
+        }
+
+        @Override public void write(Writer writer, List<T> values) throws IOException {
+            writer.out.writeInt(values.size());
+            for (T value : values) {
+                valueWriter.write(writer, value);
+            }
+        }
+    }
+
+    private static class ListReader<T> implements ValueReader<List<T>> {
+        private final ValueReader<T> valueReader;
+
+        ListReader(ValueReader<T> valueReader) {
+            this.valueReader = valueReader;
+        }
+
+        @Override public List<T> read(Reader reader) {
+            int count = reader.buffer.getInt();
+            List<T> values = new ArrayList<T>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(valueReader.read(reader));
+            }
+            return values;
+        }
+    }
+
+    private static final ValueWriter<String> STRING_WRITER = new ValueWriter<String>() {
+        @Override public void write(Writer writer, String value) throws IOException {
+            writer.writeString(value);
+        }
+    };
+
+    private static final ValueReader<String> STRING_READER = new ValueReader<String>() {
+        @Override public String read(Reader reader) {
+            return reader.readString();
+        }
+    };
+
+    private static final ValueWriter<PluralResourceLoader.PluralRules> PLURAL_RULES_WRITER = new ValueWriter<PluralResourceLoader.PluralRules>() {
+        @Override public void write(Writer writer, PluralResourceLoader.PluralRules value) throws IOException {
+            writer.out.writeInt(value.plurals.size());
+            for (PluralResourceLoader.Plural plural : value.plurals) {
+                writer.writeString(plural.quantity);
+                writer.writeString(plural.string);
+            }
+        }
+    };
+
+    private static final ValueReader<PluralResourceLoader.PluralRules> PLURAL_RULES_READER = new ValueReader<PluralResourceLoader.PluralRules>() {
+        @Override public PluralResourceLoader.PluralRules read(Reader reader) {
+            PluralResourceLoader.PluralRules pluralRules = new PluralResourceLoader.PluralRules();
+            int count = reader.buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String quantity = reader.readString();
+                pluralRules.add(new PluralResourceLoader.Plural(quantity, reader.readString()));
+            }
+            return pluralRules;
+        }
+    };
+
+    private static final ValueWriter<ViewNode> VIEW_NODE_WRITER = new ValueWriter<ViewNode>() {
+        @Override public void write(Writer writer, ViewNode value) throws IOException {
+            writer.writeString(value.getName());
+            writer.writeAttributes(value.getAttributes());
+            writer.writeXmlContext(value.getXmlContext());
+            writer.out.writeBoolean(value.shouldRequestFocusOverride());
+            writer.out.writeInt(value.getChildren().size());
+            for (ViewNode child : value.getChildren()) {
+                write(writer, child);
+            }
+        }
+    };
+
+    private static final ValueReader<ViewNode> VIEW_NODE_READER = new ValueReader<ViewNode>() {
+        @Override public ViewNode read(Reader reader) {
+            String name = reader.readString();
+            List<Attribute> attributes = reader.readAttributes();
+            XmlLoader.XmlContext xmlContext = reader.readXmlContext();
+            boolean requestFocusOverride = reader.buffer.get() != 0;
+            int childCount = reader.buffer.getInt();
+            List<ViewNode> children = new ArrayList<ViewNode>(childCount);
+            for (int i = 0; i < childCount; i++) {
+                children.add(read(reader));
+            }
+            return new ViewNode(name, attributes, xmlContext, children, requestFocusOverride);
+        }
+    };
+
+    private static final ValueWriter<MenuNode> MENU_NODE_WRITER = new ValueWriter<MenuNode>() {
+        @Override public void write(Writer writer, MenuNode value) throws IOException {
+            writer.writeString(value.getName());
+            writer.writeAttributes(value.getAttributes());
+            writer.out.writeInt(value.getChildren().size());
+            for (MenuNode child : value.getChildren()) {
+                write(writer, child);
+            }
+        }
+    };
+
+    private static final ValueReader<MenuNode> MENU_NODE_READER = new ValueReader<MenuNode>() {
+        @Override public MenuNode read(Reader reader) {
+            String name = reader.readString();
+            MenuNode menuNode = new MenuNode(name, reader.readAttributes());
+            int childCount = reader.buffer.getInt();
+            for (int i = 0; i < childCount; i++) {
+                menuNode.addChild(read(reader));
+            }
+            return menuNode;
+        }
+    };
+
+    private static final ValueWriter<PreferenceNode> PREFERENCE_NODE_WRITER = new ValueWriter<PreferenceNode>() {
+        @Override public void write(Writer writer, PreferenceNode value) throws IOException {
+            writer.writeString(value.getName());
+            writer.writeAttributes(value.getAttributes());
+            writer.out.writeInt(value.getChildren().size());
+            for (PreferenceNode child : value.getChildren()) {
+                write(writer, child);
+            }
+        }
+    };
+
+    private static final ValueReader<PreferenceNode> PREFERENCE_NODE_READER = new ValueReader<PreferenceNode>() {
+        @Override public PreferenceNode read(Reader reader) {
+            String name = reader.readString();
+            PreferenceNode preferenceNode = new PreferenceNode(name, reader.readAttributes());
+            int childCount = reader.buffer.getInt();
+            for (int i = 0; i < childCount; i++) {
+                preferenceNode.addChild(read(reader));
+            }
+            return preferenceNode;
+        }
+    };
+
+    private static final ValueWriter<CompiledXml> COMPILED_XML_WRITER = new ValueWriter<CompiledXml>() {
+        @Override public void write(Writer writer, CompiledXml value) throws IOException {
+            byte[] bytes = value.getBytes();
+            writer.out.writeInt(bytes.length);
+            writer.out.write(bytes);
+        }
+    };
+
+    private static final ValueReader<CompiledXml> COMPILED_XML_READER = new ValueReader<CompiledXml>() {
+        @Override public CompiledXml read(Reader reader) {
+            byte[] bytes = new byte[reader.buffer.getInt()];
+            reader.buffer.get(bytes);
+            return new CompiledXml(bytes);
+        }
+    };
+
+    private static final ValueWriter<DrawableNode> DRAWABLE_NODE_WRITER = new ValueWriter<DrawableNode>() {
+        @Override public void write(Writer writer, DrawableNode value) throws IOException {
+            if (value instanceof DrawableNode.Xml) {
+                DrawableNode.Xml xml = (DrawableNode.Xml) value;
+                writer.out.writeByte(DRAWABLE_XML);
+                writer.writeXmlContext(xml.xmlContext);
+                writer.writeChildNodes(xml.document);
+            } else if (value instanceof DrawableNode.ImageFile) {
+                writer.out.writeByte(DRAWABLE_IMAGE_FILE);
+                writer.out.writeBoolean(((DrawableNode.ImageFile) value).isNinePatch);
+            } else {
+                throw new IOException("can't snapshot " + value);
+            }
+        }
+    };
+
+    private static final ValueReader<DrawableNode> DRAWABLE_NODE_READER = new ValueReader<DrawableNode>() {
+        @Override public DrawableNode read(Reader reader) {
+            byte kind = reader.buffer.get();
+            switch (kind) {
+                case DRAWABLE_XML:
+                    XmlLoader.XmlContext xmlContext = reader.readXmlContext();
+                    return new DrawableNode.Xml(reader.readDocument(), xmlContext);
+                case DRAWABLE_IMAGE_FILE:
+                    return new DrawableNode.ImageFile(reader.buffer.get() != 0);
+                default:
+                    throw new IllegalStateException("unexpected drawable kind " + kind);
+            }
+        }
+    };
+}
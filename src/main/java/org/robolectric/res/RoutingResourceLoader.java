@@ -136,7 +136,7 @@ public class RoutingResourceLoader implements ResourceLoader {
         }
 
         @Override
-        void doInitialize() {
+        void doInitialize(Category category) {
         }
 
         @Override
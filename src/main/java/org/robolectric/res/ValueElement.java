@@ -0,0 +1,145 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lightweight element from a values file, holding just what {@link ValueLoader}s look at: its name, attributes,
+ * child elements, and text content.
+ */
+public class ValueElement {
+    private static final Map<String, String> NO_ATTRIBUTES = Collections.emptyMap();
+    private static final List<ValueElement> NO_CHILDREN = Collections.emptyList();
+
+    private final String name;
+    private final ValueElement parent;
+    private Map<String, String> attributes = NO_ATTRIBUTES;
+    private List<ValueElement> children = NO_CHILDREN;
+    private StringBuilder textContent;
+    private boolean hasChildNodes;
+
+    public ValueElement(String name, ValueElement parent) {
+        this.name = name;
+        this.parent = parent;
+        if (parent != null) {
+            parent.addChild(this);
+        }
+    }
+
+    /**
+     * Converts the children of a DOM document's {@code <resources>} element, for loaders that are handed a document.
+     */
+    public static List<ValueElement> fromDocument(Document document) {
+        Element root = document.getDocumentElement();
+        if (root == null || !isResources(root.getNamespaceURI(), root.getNodeName())) {
+            return NO_CHILDREN;
+        }
+
+        ValueElement resources = new ValueElement(root.getNodeName(), null);
+        addChildren(resources, root);
+        return resources.getChildren();
+    }
+
+    static boolean isResources(String namespaceUri, String name) {
+        return (namespaceUri == null || namespaceUri.length() == 0) && "resources".equals(name);
+    }
+
+    private static void addChildren(ValueElement valueElement, Node node) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            valueElement.hasChildNodes = true;
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    ValueElement childElement = new ValueElement(child.getNodeName(), valueElement);
+                    NamedNodeMap attributes = child.getAttributes();
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        Node attribute = attributes.item(i);
+                        childElement.setAttribute(attribute.getNodeName(), attribute.getNodeValue());
+                    }
+                    addChildren(childElement, child);
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    valueElement.appendText(child.getNodeValue());
+                    break;
+                default:
+                    addChildren(valueElement, child);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ValueElement getParent() {
+        return parent;
+    }
+
+    /**
+     * @return the value of the attribute with the given qualified name, or null if there isn't one
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public List<ValueElement> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the concatenated text of this element and all of its descendants, like {@link Node#getTextContent()};
+     *     always empty for the root element
+     */
+    public String getTextContent() {
+        return textContent == null ? "" : textContent.toString();
+    }
+
+    /**
+     * @return true if this element contains any elements or text at all, including whitespace
+     */
+    public boolean hasChildNodes() {
+        return hasChildNodes;
+    }
+
+    void setAttribute(String name, String value) {
+        if (attributes == NO_ATTRIBUTES) {
+            attributes = new HashMap<String, String>(4);
+        }
+        attributes.put(name, value);
+    }
+
+    /**
+     * Adds text to this element and every element enclosing it, except the root, which would otherwise end up
+     * holding the text of the entire file.
+     */
+    void appendText(String text) {
+        hasChildNodes = true;
+        for (ValueElement element = this; element.parent != null; element = element.parent) {
+            if (element.textContent == null) {
+                element.textContent = new StringBuilder(text.length());
+            }
+            element.textContent.append(text);
+        }
+    }
+
+    private void addChild(ValueElement child) {
+        hasChildNodes = true;
+        if (children == NO_CHILDREN) {
+            children = new ArrayList<ValueElement>(4);
+        }
+        children.add(child);
+    }
+
+    @Override
+    public String toString() {
+        return "<" + name + " " + attributes + ">";
+    }
+}
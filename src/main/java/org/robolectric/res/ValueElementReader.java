@@ -0,0 +1,106 @@
+package org.robolectric.res;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the children of a values file's {@code <resources>} element in a single streaming pass, without building a
+ * DOM. Only elements with one of the given names at the top level are kept; everything else is skipped as it's read.
+ */
+class ValueElementReader {
+    private final XMLInputFactory xmlInputFactory;
+    private final Set<String> elementNames;
+
+    ValueElementReader(Set<String> elementNames) {
+        this.elementNames = elementNames;
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    List<ValueElement> read(File xmlFile) throws Exception {
+        InputStream in = new BufferedInputStream(new FileInputStream(xmlFile));
+        try {
+            XMLStreamReader reader;
+            synchronized (xmlInputFactory) {
+                reader = xmlInputFactory.createXMLStreamReader(xmlFile.toURI().toString(), in);
+            }
+            try {
+                return read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("error parsing " + xmlFile, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private List<ValueElement> read(XMLStreamReader reader) throws XMLStreamException {
+        ValueElement resources = null;
+        ValueElement current = null;
+        int skipDepth = 0;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (skipDepth > 0) {
+                        skipDepth++;
+                    } else if (resources == null) {
+                        if (!ValueElement.isResources(reader.getNamespaceURI(), reader.getLocalName())) {
+                            return Collections.emptyList();
+                        }
+                        resources = current = new ValueElement(reader.getLocalName(), null);
+                    } else if (current == resources && !elementNames.contains(qualifiedName(reader))) {
+                        skipDepth = 1;
+                    } else {
+                        current = new ValueElement(qualifiedName(reader), current);
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            current.setAttribute(qualifiedAttributeName(reader, i), reader.getAttributeValue(i));
+                        }
+                    }
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    if (skipDepth > 0) {
+                        skipDepth--;
+                    } else if (current != null) {
+                        current = current.getParent();
+                    }
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (skipDepth == 0 && current != null && current != resources) {
+                        current.appendText(reader.getText());
+                    }
+                    break;
+            }
+        }
+        return resources == null ? Collections.<ValueElement>emptyList() : resources.getChildren();
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        return qualify(reader.getPrefix(), reader.getLocalName());
+    }
+
+    private static String qualifiedAttributeName(XMLStreamReader reader, int index) {
+        return qualify(reader.getAttributePrefix(index), reader.getAttributeLocalName(index));
+    }
+
+    private static String qualify(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+}
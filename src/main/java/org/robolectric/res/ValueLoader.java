@@ -0,0 +1,39 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads resources from the top-level elements of values files.
+ * <p/>
+ * A {@link DocumentLoader} whose loaders are all value loaders streams values files instead of building a DOM for
+ * each, and hands each element named in {@link #getElementNames()} to the loaders that asked for it, in document order.
+ * Value loaders still work with any other {@link DocumentLoader}, which converts each document first.
+ */
+public abstract class ValueLoader extends XmlLoader {
+    private final List<String> elementNames;
+
+    protected ValueLoader(String... elementNames) {
+        this.elementNames = Arrays.asList(elementNames);
+    }
+
+    /**
+     * @return the names of the children of {@code <resources>} this loader handles
+     */
+    public List<String> getElementNames() {
+        return elementNames;
+    }
+
+    @Override protected void processResourceXml(File xmlFile, Document document, XmlContext xmlContext) throws Exception {
+        for (ValueElement valueElement : ValueElement.fromDocument(document)) {
+            if (elementNames.contains(valueElement.getName())) {
+                processValue(valueElement, xmlContext);
+            }
+        }
+    }
+
+    protected abstract void processValue(ValueElement element, XmlContext xmlContext) throws Exception;
+}
@@ -5,15 +5,16 @@ import org.w3c.dom.Document;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 abstract class XResourceLoader implements ResourceLoader {
     private final ResourceIndex resourceIndex;
 
     final List<RawResourceLoader> rawResourceLoaders = new ArrayList<RawResourceLoader>();
 
-    boolean isInitialized = false;
-
     final AttrResourceLoader attrResourceLoader = new AttrResourceLoader();
     final Resolver<Boolean> booleanResolver = new BooleanResolver();
     final Resolver<Integer> colorResolver = new ColorResolver();
@@ -25,34 +26,85 @@ abstract class XResourceLoader implements ResourceLoader {
     final ResBundle<MenuNode> menuNodes = new ResBundle<MenuNode>();
     final ResBundle<DrawableNode> drawableNodes = new ResBundle<DrawableNode>();
     final ResBundle<PreferenceNode> preferenceNodes = new ResBundle<PreferenceNode>();
-    final ResBundle<Document> xmlDocuments = new ResBundle<Document>();
+    final ResBundle<CompiledXml> xmlDocuments = new ResBundle<CompiledXml>();
+
+    /**
+     * The kinds of resources a loader loads separately, each the first time one of its resources is asked for, so
+     * e.g. looking up a string never parses layouts or drawables.
+     */
+    enum Category {
+        /** values directories: bools, colors, dimens, integers, plurals, strings, arrays, and attrs */
+        VALUES,
+        LAYOUT,
+        MENU,
+        DRAWABLE,
+        /** xml directories: preferences and arbitrary xml documents */
+        XML,
+        RAW;
+
+        private final int bit = 1 << ordinal();
+    }
+
+    private volatile int loadedCategories;
 
     protected XResourceLoader(ResourceIndex resourceIndex) {
         this.resourceIndex = resourceIndex;
     }
 
-    abstract void doInitialize();
+    /**
+     * Loads the resources in a category. Called at most once per category, in no particular order.
+     */
+    abstract void doInitialize(Category category);
 
+    /**
+     * Loads every category of resources.
+     */
     void initialize() {
-        if (isInitialized) return;
-        doInitialize();
-        isInitialized = true;
+        for (Category category : Category.values()) {
+            initialize(category);
+        }
+    }
+
+    // resource loaders may be shared by sandboxes running in parallel
+    void initialize(Category category) {
+        if ((loadedCategories & category.bit) != 0) return;
+
+        synchronized (this) {
+            if ((loadedCategories & category.bit) != 0) return;
+            doInitialize(category);
+            makeImmutable(category);
+            loadedCategories |= category.bit;
+        }
+    }
 
-        makeImmutable();
+    boolean isInitialized(Category category) {
+        return (loadedCategories & category.bit) != 0;
     }
 
-    protected void makeImmutable() {
-        booleanResolver.makeImmutable();
-        colorResolver.makeImmutable();
-        dimenResolver.makeImmutable();
-        integerResolver.makeImmutable();
-        pluralsResolver.makeImmutable();
-        stringResolver.makeImmutable();
-        viewNodes.makeImmutable();
-        menuNodes.makeImmutable();
-        drawableNodes.makeImmutable();
-        preferenceNodes.makeImmutable();
-        xmlDocuments.makeImmutable();
+    protected void makeImmutable(Category category) {
+        switch (category) {
+            case VALUES:
+                booleanResolver.makeImmutable();
+                colorResolver.makeImmutable();
+                dimenResolver.makeImmutable();
+                integerResolver.makeImmutable();
+                pluralsResolver.makeImmutable();
+                stringResolver.makeImmutable();
+                break;
+            case LAYOUT:
+                viewNodes.makeImmutable();
+                break;
+            case MENU:
+                menuNodes.makeImmutable();
+                break;
+            case DRAWABLE:
+                drawableNodes.makeImmutable();
+                break;
+            case XML:
+                preferenceNodes.makeImmutable();
+                xmlDocuments.makeImmutable();
+                break;
+        }
     }
 
     @Override
@@ -62,20 +114,20 @@ abstract class XResourceLoader implements ResourceLoader {
 
     @Override
     public int getColorValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
         Integer value = colorResolver.resolve(resName, qualifiers);
         return value == null ? -1 : value;
     }
 
     @Override
     public String getStringValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
         return stringResolver.resolve(resName, qualifiers);
     }
 
     @Override
     public String getPluralStringValue(ResName resName, int quantity, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
         PluralResourceLoader.PluralRules pluralRules = pluralsResolver.get(resName, qualifiers);
         if (pluralRules == null) return null;
 
@@ -86,36 +138,41 @@ abstract class XResourceLoader implements ResourceLoader {
 
     @Override
     public float getDimenValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
         return dimenResolver.resolve(resName, qualifiers);
     }
 
     @Override
     public int getIntegerValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
         return integerResolver.resolve(resName, qualifiers);
     }
 
     @Override
     public boolean getBooleanValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
         return booleanResolver.resolve(resName, qualifiers);
     }
 
     @Override
     public Document getXml(ResName resName, String qualifiers) {
-        initialize();
-        return xmlDocuments.get(resName, qualifiers);
+        initialize(Category.XML);
+        CompiledXml compiledXml = xmlDocuments.get(resName, qualifiers);
+        if (compiledXml == null) return null;
+
+        // callers may modify what they get back, so each gets its own document
+        return compiledXml.toDocument();
     }
 
     @Override
     public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
+        initialize(Category.DRAWABLE);
         return drawableNodes.get(resName, qualifiers);
     }
 
     @Override
     public InputStream getRawValue(int id) {
-        initialize();
+        initialize(Category.RAW);
 
         for (RawResourceLoader rawResourceLoader : rawResourceLoaders) {
             InputStream stream = rawResourceLoader.getValue(id);
@@ -127,7 +184,7 @@ abstract class XResourceLoader implements ResourceLoader {
 
     @Override
     public String[] getStringArrayValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
 
         if (resName == null) return null;
         resName = new ResName(resName.namespace, "string-array", resName.name); // ugh
@@ -137,7 +194,7 @@ abstract class XResourceLoader implements ResourceLoader {
 
     @Override
     public int[] getIntegerArrayValue(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.VALUES);
 
         if (resName == null) return null;
         resName = new ResName(resName.namespace, "integer-array", resName.name); // ugh
@@ -156,21 +213,21 @@ abstract class XResourceLoader implements ResourceLoader {
 
     @Override
     public PreferenceNode getPreferenceNode(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.XML);
 
         return preferenceNodes.get(resName, qualifiers);
     }
 
     @Override
     public ViewNode getLayoutViewNode(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.LAYOUT);
         if (resName == null) return null;
         return viewNodes.get(resName, qualifiers);
     }
 
     @Override
     public MenuNode getMenuNode(ResName resName, String qualifiers) {
-        initialize();
+        initialize(Category.MENU);
         if (resName == null) return null;
         return menuNodes.get(resName, qualifiers);
     }
@@ -182,24 +239,80 @@ abstract class XResourceLoader implements ResourceLoader {
 
     @Override
     public boolean hasAttributeFor(Class<? extends View> viewClass, String namespace, String attribute) {
-        initialize();
+        initialize(Category.VALUES);
         return attrResourceLoader.hasAttributeFor(viewClass, namespace, attribute);
     }
 
     @Override
     public String convertValueToEnum(Class<? extends View> viewClass, String namespace, String attribute, String part) {
-        initialize();
+        initialize(Category.VALUES);
         return attrResourceLoader.convertValueToEnum(viewClass, namespace, attribute, part);
     }
 
+    /**
+     * Resolves references and converts raw values to their types. Once the bundle is immutable, fully resolved
+     * values are remembered per configuration, so repeated lookups don't follow references or parse again.
+     */
     abstract static class Resolver<T> extends ResBundle<String> {
+        private static final Object NULL = new Object();
+
+        private final ConcurrentMap<String, ConcurrentMap<ResName, Object>> resolvedValues =
+                new ConcurrentHashMap<String, ConcurrentMap<ResName, Object>>();
+        private final ConcurrentMap<String, ConcurrentMap<ResName, Object>> resolvedArrays =
+                new ConcurrentHashMap<String, ConcurrentMap<ResName, Object>>();
+        private volatile boolean immutable;
+
+        @Override
+        public void makeImmutable() {
+            super.makeImmutable();
+            immutable = true;
+        }
+
+        @SuppressWarnings("unchecked")
         public T resolve(ResName resName, String qualifiers) {
+            if (!immutable) return doResolve(resName, qualifiers);
+
+            ConcurrentMap<ResName, Object> resolved = resolvedFor(resolvedValues, qualifiers);
+            Object value = resolved.get(resName);
+            if (value == null) {
+                T resolvedValue = doResolve(resName, qualifiers);
+                value = resolvedValue == null ? NULL : resolvedValue;
+                resolved.put(resName, value);
+            }
+            return value == NULL ? null : (T) value;
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<T> resolveArray(ResName resName, String qualifiers) {
+            if (!immutable) return doResolveArray(resName, qualifiers);
+
+            ConcurrentMap<ResName, Object> resolved = resolvedFor(resolvedArrays, qualifiers);
+            Object value = resolved.get(resName);
+            if (value == null) {
+                List<T> resolvedValue = doResolveArray(resName, qualifiers);
+                value = resolvedValue == null ? NULL : Collections.unmodifiableList(resolvedValue);
+                resolved.put(resName, value);
+            }
+            return value == NULL ? null : (List<T>) value;
+        }
+
+        private static ConcurrentMap<ResName, Object> resolvedFor(
+                ConcurrentMap<String, ConcurrentMap<ResName, Object>> resolvedByQualifiers, String qualifiers) {
+            ConcurrentMap<ResName, Object> resolved = resolvedByQualifiers.get(qualifiers);
+            if (resolved == null) {
+                resolvedByQualifiers.putIfAbsent(qualifiers, new ConcurrentHashMap<ResName, Object>());
+                resolved = resolvedByQualifiers.get(qualifiers);
+            }
+            return resolved;
+        }
+
+        private T doResolve(ResName resName, String qualifiers) {
             Value<String> value = getValue(resName, qualifiers);
             if (value == null) return null;
             return resolveValue(qualifiers, value.value, value.xmlContext.packageName);
         }
 
-        public List<T> resolveArray(ResName resName, String qualifiers) {
+        private List<T> doResolveArray(ResName resName, String qualifiers) {
             Value<List<String>> value = getListValue(resName, qualifiers);
             if (value == null) return null;
 
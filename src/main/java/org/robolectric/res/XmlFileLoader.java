@@ -18,14 +18,14 @@ import java.io.File;
  * @see Resources#getXml(int)
  */
 public class XmlFileLoader extends XmlLoader {
-    private final ResBundle<Document> resBundle;
+    private final ResBundle<CompiledXml> resBundle;
 
-    public XmlFileLoader(ResBundle<Document> resBundle) {
+    public XmlFileLoader(ResBundle<CompiledXml> resBundle) {
         this.resBundle = resBundle;
     }
 
     @Override
     protected void processResourceXml(File xmlFile, Document document, XmlContext xmlContext) throws Exception {
-        resBundle.put("xml", xmlFile.getName().replace(".xml", ""), document, xmlContext);
+        resBundle.put("xml", xmlFile.getName().replace(".xml", ""), CompiledXml.compile(document), xmlContext);
     }
 }
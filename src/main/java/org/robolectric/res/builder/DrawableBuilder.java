@@ -51,10 +51,15 @@ public class DrawableBuilder {
     }
 
     private Drawable getXmlDrawable(Resources resources, DrawableNode.Xml drawableNode, ResName resName) {
-        Document xmlDoc = drawableNode.document;
+        // DOM nodes aren't safe to read concurrently, and resource loaders may be shared by sandboxes running in parallel
+        Document xmlDoc;
+        synchronized (drawableNode.document) {
+            xmlDoc = (Document) drawableNode.document.cloneNode(true);
+        }
+
         NodeList nodes = xmlDoc.getElementsByTagName("selector");
         if (nodes != null && nodes.getLength() > 0) {
-            return buildStateListDrawable(drawableNode);
+            return buildStateListDrawable(xmlDoc, drawableNode);
         }
 
         nodes = xmlDoc.getElementsByTagName("layer-list");
@@ -101,10 +106,10 @@ public class DrawableBuilder {
         }
     }
 
-    private StateListDrawable buildStateListDrawable(DrawableNode.Xml drawableNode) {
+    private StateListDrawable buildStateListDrawable(Document xmlDoc, DrawableNode.Xml drawableNode) {
         StateListDrawable drawable = new StateListDrawable();
         ShadowStateListDrawable shDrawable = Robolectric.shadowOf(drawable);
-        NodeList items = drawableNode.document.getElementsByTagName("item");
+        NodeList items = xmlDoc.getElementsByTagName("item");
         for (int i = 0; i < items.getLength(); i++) {
             Node node = items.item(i);
             Node drawableName = node.getAttributes().getNamedItemNS(ResourceLoader.ANDROID_NS, "drawable");
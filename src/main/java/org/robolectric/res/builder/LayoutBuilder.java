@@ -12,7 +12,6 @@ import org.robolectric.res.Attribute;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ViewNode;
-import org.robolectric.shadows.RoboAttributeSet;
 import org.robolectric.util.I18nException;
 
 import java.lang.reflect.Constructor;
@@ -20,59 +19,54 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.robolectric.Robolectric.shadowOf;
 
 public class LayoutBuilder {
     public static final ResName ATTR_LAYOUT = new ResName(":attr/layout");
 
+    private static final int WITH_ATTRIBUTE_SET = 0;
+    private static final int WITH_CONTEXT = 1;
+    private static final int WITH_STRING = 2;
+
+    private static final Method ON_FINISH_INFLATE = findOnFinishInflate();
+    // this class is loaded once per sandbox, so views' classes and constructors are never shared between sandboxes
+    private static final ConcurrentMap<Class<? extends View>, ViewConstructor> VIEW_CONSTRUCTORS =
+            new ConcurrentHashMap<Class<? extends View>, ViewConstructor>();
+    // plans hold no references to their resource loader, so a loader's plans go once it's unreachable
+    private static final Map<ResourceLoader, ConcurrentMap<ResName, ConcurrentMap<String, Step>>> PLANS =
+            new WeakHashMap<ResourceLoader, ConcurrentMap<ResName, ConcurrentMap<String, Step>>>();
+    private static final AtomicInteger compiledPlanCount = new AtomicInteger();
+
     private final ResourceLoader resourceLoader;
 
     public LayoutBuilder(ResourceLoader resourceLoader) {
         this.resourceLoader = resourceLoader;
     }
 
-    private View doInflate(Context context, ViewNode viewNode, ViewGroup parent, String qualifiers) {
-        if (viewNode.isInclude()) {
-            List<Attribute> viewNodeAttributes = viewNode.getAttributes();
-            Attribute layoutAttribute = Attribute.find(viewNodeAttributes, ATTR_LAYOUT);
-            ResName resName = new ResName(layoutAttribute.qualifiedValue());
-            return inflateView(context, resName, viewNodeAttributes, parent, qualifiers);
-        } else {
-            View view = create(viewNode, context, parent);
-
-            for (ViewNode child : viewNode.getChildren()) {
-                doInflate(context, child, (ViewGroup) view, qualifiers);
-            }
-
-            if (view != null) {
-                invokeOnFinishInflate(view);
-            }
-            return view;
-        }
-    }
-
     public View inflateView(Context context, int resourceId, ViewGroup parent, String qualifiers) {
-        ViewNode viewNode = resourceLoader.getLayoutViewNode(resourceLoader.getResourceIndex().getResName(resourceId), qualifiers);
-        if (viewNode == null) {
+        ResName resName = resourceLoader.getResourceIndex().getResName(resourceId);
+        Step plan = resName == null ? null : planFor(resName, qualifiers);
+        if (plan == null) {
             String name = resourceLoader.getNameForId(resourceId);
             throw new RuntimeException("Could not find layout " + (name == null ? resourceId : name));
         }
 
-        View view = doInflate(context, viewNode, parent, qualifiers);
+        View view = plan.inflate(this, context, parent);
         if (view != null) return view;
 
         throw new RuntimeException("Could not find layout " + resourceId);
     }
 
     public View inflateView(Context context, ResName resName, List<Attribute> attributes, ViewGroup parent, String qualifiers) {
-        ViewNode viewNode = resourceLoader.getLayoutViewNode(resName, qualifiers);
-        if (viewNode == null) {
-            throw new RuntimeException("Could not find layout " + resName.name);
-        }
-
+        Step plan = compileInclude(resName, attributes, qualifiers);
         try {
-            return doInflate(context, plusAttributes(viewNode, attributes), parent, qualifiers);
+            return plan.inflate(this, context, parent);
         } catch (I18nException e) {
             throw e;
         } catch (Exception e) {
@@ -80,36 +74,109 @@ public class LayoutBuilder {
         }
     }
 
+    /**
+     * @return the compiled plan for inflating a layout, or null if there's no such layout
+     */
+    private Step planFor(ResName resName, String qualifiers) {
+        ConcurrentMap<ResName, ConcurrentMap<String, Step>> plansForLoader;
+        synchronized (PLANS) {
+            plansForLoader = PLANS.get(resourceLoader);
+            if (plansForLoader == null) {
+                plansForLoader = new ConcurrentHashMap<ResName, ConcurrentMap<String, Step>>();
+                PLANS.put(resourceLoader, plansForLoader);
+            }
+        }
+
+        ConcurrentMap<String, Step> plansForLayout = plansForLoader.get(resName);
+        if (plansForLayout == null) {
+            ConcurrentMap<String, Step> newPlansForLayout = new ConcurrentHashMap<String, Step>();
+            plansForLayout = plansForLoader.putIfAbsent(resName, newPlansForLayout);
+            if (plansForLayout == null) plansForLayout = newPlansForLayout;
+        }
+
+        Step plan = plansForLayout.get(qualifiers);
+        if (plan == null) {
+            ViewNode viewNode = resourceLoader.getLayoutViewNode(resName, qualifiers);
+            if (viewNode == null) return null;
+            // two threads may both compile a plan; they're equivalent, so whichever is stored first is kept
+            Step newPlan = compile(viewNode, qualifiers);
+            plan = plansForLayout.putIfAbsent(qualifiers, newPlan);
+            if (plan == null) plan = newPlan;
+        }
+        return plan;
+    }
+
+    private Step compileInclude(ResName resName, List<Attribute> attributes, String qualifiers) {
+        if (isEmptyOrJustLayout(attributes)) {
+            Step plan = planFor(resName, qualifiers);
+            if (plan == null) {
+                throw new RuntimeException("Could not find layout " + resName.name);
+            }
+            return plan;
+        }
+
+        ViewNode viewNode = resourceLoader.getLayoutViewNode(resName, qualifiers);
+        if (viewNode == null) {
+            throw new RuntimeException("Could not find layout " + resName.name);
+        }
+        return compile(plusAttributes(viewNode, attributes), qualifiers);
+    }
+
+    private Step compile(ViewNode viewNode, String qualifiers) {
+        compiledPlanCount.incrementAndGet();
+
+        if (viewNode.isInclude()) {
+            List<Attribute> viewNodeAttributes = viewNode.getAttributes();
+            Attribute layoutAttribute = Attribute.find(viewNodeAttributes, ATTR_LAYOUT);
+            ResName resName = new ResName(layoutAttribute.qualifiedValue());
+            try {
+                return new IncludeStep(resName, compileInclude(resName, viewNodeAttributes, qualifiers));
+            } catch (I18nException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("error inflating " + resName.name, e);
+            }
+        }
+
+        List<ViewNode> childNodes = viewNode.getChildren();
+        Step[] children = new Step[childNodes.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = compile(childNodes.get(i), qualifiers);
+        }
+
+        if (viewNode.getName().equals("merge")) {
+            return new MergeStep(children);
+        } else if (viewNode.getName().equals("fragment")) {
+            return new FragmentStep(viewNode, children);
+        } else {
+            return new ViewStep(viewNode, pickViewClass(viewNode), children);
+        }
+    }
+
+    /**
+     * @return how many layout nodes have been compiled into inflation plans by this class loader
+     */
+    public static int getCompiledPlanCount() {
+        return compiledPlanCount.get();
+    }
 
     void invokeOnFinishInflate(View view) {
         try {
-            Method onFinishInflate = View.class.getDeclaredMethod("onFinishInflate");
-            onFinishInflate.setAccessible(true);
-            onFinishInflate.invoke(view);
+            ON_FINISH_INFLATE.invoke(view);
         } catch (InvocationTargetException e) {
             throw new RuntimeException(e);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
     }
 
-    View create(ViewNode viewNode, Context context, ViewGroup parent) {
-        if (viewNode.isInclude()) {
-            throw new IllegalStateException();
-        } else if (viewNode.getName().equals("merge")) {
-            return parent;
-        } else if (viewNode.getName().equals("fragment")) {
-            View fragment = constructFragment(viewNode, context);
-            addToParent(parent, fragment);
-            return fragment;
-        } else {
-            applyFocusOverride(viewNode, parent);
-            View view = constructView(viewNode, context);
-            addToParent(parent, view);
-            shadowOf(view).applyFocus();
-            return view;
+    private static Method findOnFinishInflate() {
+        try {
+            Method onFinishInflate = View.class.getDeclaredMethod("onFinishInflate");
+            onFinishInflate.setAccessible(true);
+            return onFinishInflate;
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -157,28 +224,14 @@ public class LayoutBuilder {
         }
     }
 
-    private View constructView(ViewNode viewNode, Context context) {
-        Class<? extends View> clazz = pickViewClass(viewNode);
-        try {
-            try {
-                RoboAttributeSet attributeSet = shadowOf(context).createAttributeSet(viewNode.getAttributes(), View.class);
-                return ((Constructor<? extends View>) clazz.getConstructor(Context.class, AttributeSet.class)).newInstance(context, attributeSet);
-            } catch (NoSuchMethodException e) {
-                try {
-                    return ((Constructor<? extends View>) clazz.getConstructor(Context.class)).newInstance(context);
-                } catch (NoSuchMethodException e1) {
-                    return ((Constructor<? extends View>) clazz.getConstructor(Context.class, String.class)).newInstance(context, "");
-                }
-            }
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
+    private static ViewConstructor viewConstructorFor(Class<? extends View> clazz) {
+        ViewConstructor viewConstructor = VIEW_CONSTRUCTORS.get(clazz);
+        if (viewConstructor == null) {
+            ViewConstructor newViewConstructor = new ViewConstructor(clazz);
+            viewConstructor = VIEW_CONSTRUCTORS.putIfAbsent(clazz, newViewConstructor);
+            if (viewConstructor == null) viewConstructor = newViewConstructor;
         }
+        return viewConstructor;
     }
 
     private Class<? extends View> pickViewClass(ViewNode viewNode) {
@@ -242,7 +295,7 @@ public class LayoutBuilder {
      * Create a new ViewLoader with the given attributes merged in. If there's a layout attribute, it'll be excluded.
      */
     public ViewNode plusAttributes(ViewNode viewNode, List<Attribute> attributes) {
-        if (attributes.size() == 0 || attributes.size() == 1 && attributes.get(0).resName.equals(LayoutBuilder.ATTR_LAYOUT)) {
+        if (isEmptyOrJustLayout(attributes)) {
             return viewNode; // don't make a new one if it'll be identical
         }
 
@@ -256,4 +309,149 @@ public class LayoutBuilder {
         return new ViewNode(viewNode.getName(), newAttrs, viewNode.getXmlContext(),
                 viewNode.getChildren(), viewNode.shouldRequestFocusOverride());
     }
+
+    private static boolean isEmptyOrJustLayout(List<Attribute> attributes) {
+        return attributes.size() == 0 || attributes.size() == 1 && attributes.get(0).resName.equals(LayoutBuilder.ATTR_LAYOUT);
+    }
+
+    /**
+     * A compiled layout node. Plans are cached per resource loader, layout and qualifiers, so inflating a layout
+     * again skips resolving includes, view classes, and constructors.
+     */
+    private abstract static class Step {
+        final Step[] children;
+
+        Step(Step[] children) {
+            this.children = children;
+        }
+
+        abstract View inflate(LayoutBuilder layoutBuilder, Context context, ViewGroup parent);
+
+        View inflateChildren(LayoutBuilder layoutBuilder, Context context, View view) {
+            for (Step child : children) {
+                child.inflate(layoutBuilder, context, (ViewGroup) view);
+            }
+
+            if (view != null) {
+                layoutBuilder.invokeOnFinishInflate(view);
+            }
+            return view;
+        }
+    }
+
+    private static class IncludeStep extends Step {
+        private final ResName resName;
+        private final Step included;
+
+        IncludeStep(ResName resName, Step included) {
+            super(new Step[0]);
+            this.resName = resName;
+            this.included = included;
+        }
+
+        @Override View inflate(LayoutBuilder layoutBuilder, Context context, ViewGroup parent) {
+            try {
+                return included.inflate(layoutBuilder, context, parent);
+            } catch (I18nException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("error inflating " + resName.name, e);
+            }
+        }
+    }
+
+    private static class MergeStep extends Step {
+        MergeStep(Step[] children) {
+            super(children);
+        }
+
+        @Override View inflate(LayoutBuilder layoutBuilder, Context context, ViewGroup parent) {
+            return inflateChildren(layoutBuilder, context, parent);
+        }
+    }
+
+    private static class FragmentStep extends Step {
+        private final ViewNode viewNode;
+
+        FragmentStep(ViewNode viewNode, Step[] children) {
+            super(children);
+            this.viewNode = viewNode;
+        }
+
+        @Override View inflate(LayoutBuilder layoutBuilder, Context context, ViewGroup parent) {
+            View fragment = layoutBuilder.constructFragment(viewNode, context);
+            layoutBuilder.addToParent(parent, fragment);
+            return inflateChildren(layoutBuilder, context, fragment);
+        }
+    }
+
+    private static class ViewStep extends Step {
+        private final ViewNode viewNode;
+        private final ViewConstructor viewConstructor;
+
+        ViewStep(ViewNode viewNode, Class<? extends View> viewClass, Step[] children) {
+            super(children);
+            this.viewNode = viewNode;
+            this.viewConstructor = viewConstructorFor(viewClass);
+        }
+
+        @Override View inflate(LayoutBuilder layoutBuilder, Context context, ViewGroup parent) {
+            layoutBuilder.applyFocusOverride(viewNode, parent);
+            AttributeSet attributeSet = shadowOf(context).createAttributeSet(viewNode.getAttributes(), View.class);
+            View view = viewConstructor.newInstance(context, attributeSet);
+            layoutBuilder.addToParent(parent, view);
+            shadowOf(view).applyFocus();
+            return inflateChildren(layoutBuilder, context, view);
+        }
+    }
+
+    /**
+     * The constructor to make a view with, found once per view class.
+     */
+    private static class ViewConstructor {
+        private final Constructor<? extends View> constructor;
+        private final int kind;
+
+        ViewConstructor(Class<? extends View> clazz) {
+            Constructor<? extends View> constructor;
+            int kind;
+            try {
+                constructor = clazz.getConstructor(Context.class, AttributeSet.class);
+                kind = WITH_ATTRIBUTE_SET;
+            } catch (NoSuchMethodException e) {
+                try {
+                    constructor = clazz.getConstructor(Context.class);
+                    kind = WITH_CONTEXT;
+                } catch (NoSuchMethodException e1) {
+                    try {
+                        constructor = clazz.getConstructor(Context.class, String.class);
+                        kind = WITH_STRING;
+                    } catch (NoSuchMethodException e2) {
+                        throw new RuntimeException(e2);
+                    }
+                }
+            }
+            this.constructor = constructor;
+            this.kind = kind;
+        }
+
+        View newInstance(Context context, AttributeSet attributeSet) {
+            try {
+                switch (kind) {
+                    case WITH_ATTRIBUTE_SET:
+                        return constructor.newInstance(context, attributeSet);
+                    case WITH_CONTEXT:
+                        return constructor.newInstance(context);
+                    default:
+                        return constructor.newInstance(context, "");
+                }
+            } catch (InstantiationException e) {
+                throw new RuntimeException(e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
 }
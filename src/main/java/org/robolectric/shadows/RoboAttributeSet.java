@@ -3,6 +3,7 @@ package org.robolectric.shadows;
 import android.util.AttributeSet;
 import android.view.View;
 import org.robolectric.res.Attribute;
+import org.robolectric.res.IntObjectMap;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.ResourceLoader;
@@ -10,13 +11,23 @@ import org.robolectric.util.I18nException;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RoboAttributeSet implements AttributeSet {
+    private static final Attribute NO_ATTRIBUTE = new Attribute("android:attr/none", "", "android");
+
     private final List<Attribute> attributes;
     private final ResourceLoader resourceLoader;
     private Class<? extends View> viewClass;
 
+    // attributes by name and by id, built when first needed and again if attributes are added
+    private int indexedAttributeCount = -1;
+    private Map<ResName, Attribute> attributesByName;
+    private IntObjectMap<Attribute> attributesById;
+    private Map<String, Map<String, Attribute>> attributesByNamespaceAndName;
+
     /**
      * Names of attributes to be validated for i18n-safe values.
      */
@@ -78,8 +89,13 @@ public class RoboAttributeSet implements AttributeSet {
 
     public int getEnumValue(String namespace, String attribute, String value) {
         int intValue = 0;
-        for (String part : value.split("\\|")) {
+        int start = 0;
+        while (true) {
+            int end = value.indexOf('|', start);
+            String part = end == -1 ? value.substring(start) : value.substring(start, end);
             intValue |= extractInt(resourceLoader.convertValueToEnum(viewClass, namespace, attribute, part), 0);
+            if (end == -1) break;
+            start = end + 1;
         }
         return intValue;
     }
@@ -155,8 +171,8 @@ public class RoboAttributeSet implements AttributeSet {
 
     @Override
     public int getAttributeResourceValue(int resourceId, int defaultValue) {
-        String attrName = resourceLoader.getResourceIndex().getResourceName(resourceId);
-        Attribute attr = findByName(null, attrName);
+        index();
+        Attribute attr = attributesById.get(resourceId);
         if (attr == null) return defaultValue;
         Integer extracted = ResName.getResourceId(resourceLoader.getResourceIndex(), attr.value, attr.contextPackageName);
         return (extracted == null) ? defaultValue : extracted;
@@ -193,7 +209,8 @@ public class RoboAttributeSet implements AttributeSet {
     }
 
     @Override public int getStyleAttribute() {
-        Attribute styleAttribute = Attribute.find(attributes, new ResName("", "attr", "style"));
+        index();
+        Attribute styleAttribute = attributesByName.get(new ResName("", "attr", "style"));
         if (styleAttribute == null) {
             // Per Android specifications, return 0 if there is no style.
             return 0;
@@ -216,24 +233,60 @@ public class RoboAttributeSet implements AttributeSet {
     }
 
     private Attribute findByName(String packageName, String attrName) {
-        String namespace = null;
-        try {
-            namespace = URLEncoder.encode(packageName, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        index();
+
+        Map<String, Attribute> attributesByName = attributesByNamespaceAndName.get(packageName);
+        if (attributesByName == null) {
+            attributesByName = new HashMap<String, Attribute>();
+            attributesByNamespaceAndName.put(packageName, attributesByName);
+        }
+
+        Attribute attribute = attributesByName.get(attrName);
+        if (attribute == null) {
+            String namespace = null;
+            try {
+                namespace = URLEncoder.encode(packageName, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            attribute = findByName(new ResName(namespace, "attr", attrName));
+            attributesByName.put(attrName, attribute == null ? NO_ATTRIBUTE : attribute);
         }
-        return findByName(new ResName(namespace, "attr", attrName));
+        return attribute == NO_ATTRIBUTE ? null : attribute;
     }
 
     private Attribute findByName(ResName resName) {
-        ResourceIndex resourceIndex = resourceLoader.getResourceIndex();
-        Integer resourceId = resourceIndex.getResourceId(resName);
+        index();
+
+        Integer resourceId = resourceLoader.getResourceIndex().getResourceId(resName);
         // canonicalize the attr name if we can, otherwise don't...
-        // todo: this is awful; fix it.
         if (resourceId == null) {
-            return Attribute.find(attributes, resName);
+            return attributesByName.get(resName);
         } else {
-            return Attribute.find(attributes, resourceId, resourceIndex);
+            return attributesById.get(resourceId);
+        }
+    }
+
+    /**
+     * Indexes the attributes by name and resource id, keeping the first of any duplicates, as a scan would find.
+     */
+    private void index() {
+        if (indexedAttributeCount == attributes.size()) return;
+
+        ResourceIndex resourceIndex = resourceLoader.getResourceIndex();
+        attributesByName = new HashMap<ResName, Attribute>();
+        attributesById = new IntObjectMap<Attribute>(attributes.size());
+        attributesByNamespaceAndName = new HashMap<String, Map<String, Attribute>>();
+        for (Attribute attribute : attributes) {
+            if (!attributesByName.containsKey(attribute.resName)) {
+                attributesByName.put(attribute.resName, attribute);
+            }
+
+            Integer resourceId = resourceIndex.getResourceId(attribute.resName);
+            if (resourceId != null && !attributesById.containsKey(resourceId)) {
+                attributesById.put(resourceId, attribute);
+            }
         }
+        indexedAttributeCount = attributes.size();
     }
 }
@@ -0,0 +1,125 @@
+package org.robolectric;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.bytecode.Setup;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RobolectricContextPoolTest {
+    private RobolectricContextPool pool;
+    private int createdCount;
+
+    @Before public void setUp() throws Exception {
+        pool = new RobolectricContextPool();
+    }
+
+    @Test public void shouldShareContextsBetweenRunnersWithTheSameConfiguration() throws Exception {
+        RobolectricContext first = pool.lease(RunnerA.class, defaultFactory(), 1);
+        RobolectricContext second = pool.lease(RunnerB.class, defaultFactory(), 1);
+        RobolectricContext third = pool.lease(RunnerA.class, defaultFactory(), 1);
+
+        assertThat(second).isSameAs(first);
+        assertThat(third).isSameAs(first);
+        assertThat(createdCount).isEqualTo(2);
+
+        RobolectricContextPool.Stats stats = pool.getStats().get(0);
+        assertThat(stats.leaseCount).isEqualTo(3);
+        assertThat(stats.getReuseCount()).isEqualTo(2);
+        assertThat(stats.testRunnerClasses).containsOnly(RunnerA.class.getName(), RunnerB.class.getName());
+        assertThat(stats.definedClassCount).isEqualTo(-1);
+    }
+
+    @Test public void shouldNotShareContextsBetweenRunnersWithDifferentSetups() throws Exception {
+        RobolectricContext first = pool.lease(RunnerA.class, defaultFactory(), 1);
+        RobolectricContext second = pool.lease(RunnerB.class, new RobolectricContext.Factory() {
+            @Override public RobolectricContext create() {
+                return new RobolectricContext() {
+                    @Override public Setup createSetup() {
+                        return new Setup() {
+                        };
+                    }
+                };
+            }
+        }, 1);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(pool.getStats()).hasSize(2);
+    }
+
+    @Test public void shouldNotShareContextsBetweenRunnersWithDifferentManifests() throws Exception {
+        RobolectricContext first = pool.lease(RunnerA.class, defaultFactory(), 1);
+        RobolectricContext second = pool.lease(RunnerB.class, new RobolectricContext.Factory() {
+            @Override public RobolectricContext create() {
+                return new RobolectricContext() {
+                    @Override protected AndroidManifest createAppManifest() {
+                        return new AndroidManifest(new File("src/test/resources"));
+                    }
+                };
+            }
+        }, 1);
+
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test public void shouldNotShareContextsBetweenDifferentContextClasses() throws Exception {
+        RobolectricContext first = pool.lease(RunnerA.class, defaultFactory(), 1);
+        RobolectricContext second = pool.lease(RunnerB.class, new RobolectricContext.Factory() {
+            @Override public RobolectricContext create() {
+                return new CustomRobolectricContext();
+            }
+        }, 1);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second).isInstanceOf(CustomRobolectricContext.class);
+        assertThat(second.getKey()).isNotEqualTo(first.getKey());
+        assertThat(pool.getStats()).hasSize(2);
+    }
+
+    @Test public void shouldSpreadTestClassesAcrossContextsWhenParallel() throws Exception {
+        RobolectricContext first = pool.lease(RunnerA.class, defaultFactory(), 2);
+        RobolectricContext second = pool.lease(RunnerA.class, defaultFactory(), 2);
+        RobolectricContext third = pool.lease(RunnerB.class, defaultFactory(), 2);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(third).isSameAs(first);
+        assertThat(second.getSharedResourceLoaders()).isSameAs(first.getSharedResourceLoaders());
+        assertThat(second.getLock()).isNotSameAs(first.getLock());
+    }
+
+    @Test public void shouldReportMemoryHeldByClassLoader() throws Exception {
+        RobolectricContext robolectricContext = pool.lease(RunnerA.class, defaultFactory(), 1);
+        robolectricContext.getRobolectricClassLoader().loadClass(RobolectricContextPoolTest.class.getName());
+
+        RobolectricContextPool.Stats stats = pool.getStats().get(0);
+        assertThat(stats.definedClassCount).isGreaterThan(0);
+        assertThat(stats.definedClassBytes).isGreaterThan(0);
+    }
+
+    private RobolectricContext.Factory defaultFactory() {
+        return new RobolectricContext.Factory() {
+            @Override public RobolectricContext create() {
+                createdCount++;
+                return new RobolectricContext();
+            }
+        };
+    }
+
+    public static class CustomRobolectricContext extends RobolectricContext {
+    }
+
+    public static class RunnerA extends RobolectricTestRunner {
+        public RunnerA(Class<?> testClass) throws InitializationError {
+            super(testClass);
+        }
+    }
+
+    public static class RunnerB extends RobolectricTestRunner {
+        public RunnerB(Class<?> testClass) throws InitializationError {
+            super(testClass);
+        }
+    }
+}
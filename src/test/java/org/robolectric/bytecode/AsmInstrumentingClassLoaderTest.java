@@ -1,9 +1,27 @@
 package org.robolectric.bytecode;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
 import org.robolectric.util.Transcript;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 public class AsmInstrumentingClassLoaderTest extends InstrumentingClassLoaderTestBase {
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     protected ClassLoader createClassLoader(Setup setup) throws ClassNotFoundException {
         return new AsmInstrumentingClassLoader(setup);
     }
@@ -32,4 +50,115 @@ public class AsmInstrumentingClassLoaderTest extends InstrumentingClassLoaderTes
 
         transcript.assertEventsSoFar("find foo.AClass");
     }
+
+    @Test public void shouldLoadUnrelatedClassesConcurrently() throws Exception {
+        final CountDownLatch slowLoadStarted = new CountDownLatch(1);
+        final CountDownLatch fastLoadFinished = new CountDownLatch(1);
+        final AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup()) {
+            @Override
+            protected Class<?> findClass(String className) throws ClassNotFoundException {
+                if (className.equals(AParent.class.getName())) {
+                    slowLoadStarted.countDown();
+                    try {
+                        if (!fastLoadFinished.await(10, TimeUnit.SECONDS)) throw new ClassNotFoundException("blocked");
+                    } catch (InterruptedException e) {
+                        throw new ClassNotFoundException("interrupted", e);
+                    }
+                }
+                return super.findClass(className);
+            }
+        };
+
+        final List<Object> slowLoaded = new ArrayList<Object>();
+        Thread slowLoader = new Thread() {
+            @Override public void run() {
+                try {
+                    slowLoaded.add(classLoader.loadClass(AParent.class.getName()));
+                } catch (ClassNotFoundException e) {
+                    slowLoaded.add(e);
+                }
+            }
+        };
+        slowLoader.start();
+        assertTrue(slowLoadStarted.await(10, TimeUnit.SECONDS));
+
+        Class<?> exampleClass = classLoader.loadClass(AnExampleClass.class.getName());
+        fastLoadFinished.countDown();
+        slowLoader.join();
+
+        assertSame(classLoader, exampleClass.getClassLoader());
+        assertSame(classLoader, ((Class<?>) slowLoaded.get(0)).getClassLoader());
+        assertSame(slowLoaded.get(0), classLoader.loadClass(AParent.class.getName()));
+    }
+
+    @Test public void shouldReuseInstrumentedClassesFromPersistentClassCache() throws Exception {
+        PersistentClassCache classCache = new PersistentClassCache(temporaryFolder.newFolder("cache"));
+
+        new AsmInstrumentingClassLoader(new Setup(), classCache).loadClass(AnExampleClass.class.getName());
+        assertEquals(0, classCache.getHitCount());
+        int writeCount = classCache.getWriteCount();
+        assertEquals(classCache.getMissCount(), writeCount);
+
+        Class<?> exampleClass = new AsmInstrumentingClassLoader(new Setup(), classCache).loadClass(AnExampleClass.class.getName());
+        assertEquals(writeCount, classCache.getHitCount());
+        assertEquals(writeCount, classCache.getWriteCount());
+        assertNotNull(exampleClass.getField(AsmInstrumentingClassLoader.CLASS_HANDLER_DATA_FIELD_NAME));
+    }
+
+    @Test public void shouldCreateCallSitesOnFirstCallAndReuseThem() throws Exception {
+        Class<?> exampleClass = loadClass(AnExampleClass.class);
+        Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+        Object exampleInstance = exampleClass.newInstance();
+
+        List<Field> callSiteFields = new ArrayList<Field>();
+        for (Field field : exampleClass.getDeclaredFields()) {
+            if (field.getType() == CallSite.class) {
+                assertTrue(Modifier.isStatic(field.getModifiers()));
+                assertTrue(field.isSynthetic());
+                field.setAccessible(true);
+                callSiteFields.add(field);
+            }
+        }
+
+        CallSite normalMethodCallSite = findCallSite(callSiteFields, "normalMethod");
+        assertNull(normalMethodCallSite);
+
+        normalMethod.invoke(exampleInstance, "value1", 123);
+        normalMethodCallSite = findCallSite(callSiteFields, "normalMethod");
+        assertNotNull(normalMethodCallSite);
+        assertSame(exampleClass, normalMethodCallSite.getTheClass());
+        assertEquals("java.lang.String", normalMethodCallSite.getParamTypes()[0]);
+        assertEquals("int", normalMethodCallSite.getParamTypes()[1]);
+
+        normalMethod.invoke(exampleInstance, "value2", 456);
+        assertSame(normalMethodCallSite, findCallSite(callSiteFields, "normalMethod"));
+    }
+
+    @Test public void shouldReadAndWriteShadowDataThroughShadowedObject() throws Exception {
+        Class<?> childClass = loadClass(AChild.class);
+        Object child = childClass.newInstance();
+        assertTrue(child instanceof ShadowedObject);
+
+        Object data = new Object();
+        ((ShadowedObject) child).__robo_setData__(data);
+        assertSame(data, ((ShadowedObject) child).__robo_getData__());
+        assertSame(data, childClass.getField(AsmInstrumentingClassLoader.CLASS_HANDLER_DATA_FIELD_NAME).get(child));
+    }
+
+    @Test public void shouldLeaveRealObjectFieldsOfShadowsAsDeclared() throws Exception {
+        Class<?> shadowClass = new AsmInstrumentingClassLoader(new Setup()).loadClass(ShadowFoo.class.getName());
+
+        assertEquals(ShadowFoo.class.getDeclaredField("realFooField").getModifiers(),
+                shadowClass.getDeclaredField("realFooField").getModifiers());
+        assertEquals(ShadowFoo.class.getDeclaredField("realFooCtor").getModifiers(),
+                shadowClass.getDeclaredField("realFooCtor").getModifiers());
+    }
+
+    private static CallSite findCallSite(List<Field> callSiteFields, String methodName) throws IllegalAccessException {
+        for (Field callSiteField : callSiteFields) {
+            CallSite callSite = (CallSite) callSiteField.get(null);
+            if (callSite != null && callSite.getMethodName().equals(methodName)) return callSite;
+        }
+        return null;
+    }
 }
@@ -0,0 +1,96 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.Transcript;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.robolectric.util.Util.readBytes;
+
+public class InstrumentedJarWriterTest {
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final Transcript transcript = new Transcript();
+    private File inputJar;
+    private File outputJar;
+
+    @Before public void setUp() throws Exception {
+        transcript.clear();
+        inputJar = temporaryFolder.newFile("input.jar");
+        outputJar = temporaryFolder.newFile("output.jar");
+
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(inputJar));
+        writeClass(jarOutputStream, AnExampleClass.class);
+        writeClass(jarOutputStream, AnUninstrumentedClass.class);
+        jarOutputStream.close();
+    }
+
+    @Test public void shouldWriteInstrumentedAndUninstrumentedClasses() throws Exception {
+        assertEquals(2, new InstrumentedJarWriter(new Setup()).write(outputJar, inputJar));
+
+        JarFile jarFile = new JarFile(outputJar);
+        byte[] uninstrumentedBytes = readBytes(jarFile.getInputStream(jarFile.getEntry(entryName(AnUninstrumentedClass.class))));
+        byte[] instrumentedBytes = readBytes(jarFile.getInputStream(jarFile.getEntry(entryName(AnExampleClass.class))));
+        jarFile.close();
+
+        assertEquals(readBytes(classBytes(AnUninstrumentedClass.class)).length, uninstrumentedBytes.length);
+        assertFalse(readBytes(classBytes(AnExampleClass.class)).length == instrumentedBytes.length);
+    }
+
+    @Test public void classLoaderShouldDefinePreInstrumentedClassesWithoutInstrumentingThem() throws Exception {
+        new InstrumentedJarWriter(new RecordingSetup()).write(outputJar, inputJar);
+        transcript.clear();
+
+        AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new RecordingSetup(), outputJar.toURI().toURL());
+        Class<?> exampleClass = classLoader.loadClass(AnExampleClass.class.getName());
+
+        assertSame(classLoader, exampleClass.getClassLoader());
+        assertNotNull(exampleClass.getField(AsmInstrumentingClassLoader.CLASS_HANDLER_DATA_FIELD_NAME));
+        transcript.assertNoEventsSoFar();
+    }
+
+    @Test public void classLoaderShouldRejectJarsInstrumentedWithADifferentConfiguration() throws Exception {
+        new InstrumentedJarWriter(new Setup()).write(outputJar, inputJar);
+
+        try {
+            new AsmInstrumentingClassLoader(new RecordingSetup(), outputJar.toURI().toURL());
+            fail("should have thrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private void writeClass(JarOutputStream jarOutputStream, Class<?> clazz) throws Exception {
+        jarOutputStream.putNextEntry(new JarEntry(entryName(clazz)));
+        jarOutputStream.write(readBytes(classBytes(clazz)));
+        jarOutputStream.closeEntry();
+    }
+
+    private static String entryName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private static InputStream classBytes(Class<?> clazz) {
+        return clazz.getClassLoader().getResourceAsStream(entryName(clazz));
+    }
+
+    public static class RecordingSetup extends Setup {
+        @Override public boolean shouldInstrument(ClassInfo classInfo) {
+            transcript.add("shouldInstrument " + classInfo.getName());
+            return super.shouldInstrument(classInfo);
+        }
+    }
+}
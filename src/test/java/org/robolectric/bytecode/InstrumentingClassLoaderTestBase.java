@@ -471,6 +471,11 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
             return "response from " + buf.toString();
         }
 
+        @Override
+        public Object methodInvoked(CallSite callSite, Object instance, Object[] params) throws Throwable {
+            return methodInvoked(callSite.getTheClass(), callSite.getMethodName(), instance, callSite.getParamTypes(), params);
+        }
+
         @Override
         public Object intercept(String clazzName, String methodName, Object instance, Object[] paramTypes, Object[] params) throws Throwable {
             return null;
@@ -492,7 +497,7 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
 
         @Override
         public boolean shouldAcquire(String name) {
-            return shouldAcquire && !name.startsWith("java.");
+            return shouldAcquire && !name.startsWith("java.") && !getClassesToDelegateFromRcl().contains(name);
         }
 
         @Override
@@ -505,7 +510,7 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
         this.classLoader = classLoader;
     }
 
-    private Class<?> loadClass(Class<?> clazz) throws ClassNotFoundException {
+    protected Class<?> loadClass(Class<?> clazz) throws ClassNotFoundException {
         if (classLoader == null) {
             classLoader = createClassLoader(new Setup());
         }
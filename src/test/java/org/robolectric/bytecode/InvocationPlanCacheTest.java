@@ -0,0 +1,127 @@
+package org.robolectric.bytecode;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.robolectric.bytecode.InvocationPlanCache.EvictionPolicy.FIFO;
+import static org.robolectric.bytecode.InvocationPlanCache.EvictionPolicy.LRU;
+
+public class InvocationPlanCacheTest {
+    private static final String[] NO_PARAMS = new String[0];
+
+    @Test public void shouldCountMissesAndHits() throws Exception {
+        InvocationPlanCache<String> cache = new InvocationPlanCache<String>();
+        assertThat(cache.get(String.class, Object.class, "length", false, NO_PARAMS)).isNull();
+
+        cache.put(String.class, Object.class, "length", false, NO_PARAMS, "plan", 1000000);
+        assertThat(cache.get(String.class, Object.class, "length", false, NO_PARAMS)).isEqualTo("plan");
+        assertThat(cache.get(String.class, Object.class, "length", false, new String[0])).isEqualTo("plan");
+
+        InvocationPlanCache.Stats stats = cache.getStats();
+        assertThat(stats.size).isEqualTo(1);
+        assertThat(stats.hits).isEqualTo(2);
+        assertThat(stats.misses).isEqualTo(1);
+        assertThat(stats.buildTimeNanos).isEqualTo(1000000);
+    }
+
+    @Test public void shouldCountHitsFromManyThreads() throws Exception {
+        final InvocationPlanCache<String> cache = new InvocationPlanCache<String>(16, LRU);
+        cache.put(String.class, Object.class, "length", false, NO_PARAMS, "plan", 0);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        cache.get(String.class, Object.class, "length", false, NO_PARAMS);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(cache.getStats().hits).isEqualTo(40000);
+    }
+
+    @Test public void shouldCountCallSiteHitsApartFromHits() throws Exception {
+        InvocationPlanCache<String> cache = new InvocationPlanCache<String>();
+        cache.put(String.class, Object.class, "length", false, NO_PARAMS, "plan", 0);
+        cache.get(String.class, Object.class, "length", false, NO_PARAMS);
+        cache.countCallSiteHit();
+        cache.countCallSiteHit();
+
+        InvocationPlanCache.Stats stats = cache.getStats();
+        assertThat(stats.hits).isEqualTo(1);
+        assertThat(stats.callSiteHits).isEqualTo(2);
+    }
+
+    @Test public void shouldDistinguishPlansByEveryPartOfTheKey() throws Exception {
+        InvocationPlanCache<String> cache = new InvocationPlanCache<String>();
+        cache.put(String.class, Object.class, "charAt", false, new String[]{"int"}, "a", 0);
+        cache.put(String.class, Object.class, "charAt", false, new String[]{"long"}, "b", 0);
+        cache.put(String.class, Integer.class, "charAt", false, new String[]{"int"}, "c", 0);
+        cache.put(String.class, Object.class, "charAt", true, new String[]{"int"}, "d", 0);
+        cache.put(Integer.class, Object.class, "charAt", false, new String[]{"int"}, "e", 0);
+
+        assertThat(cache.get(String.class, Object.class, "charAt", false, new String[]{"int"})).isEqualTo("a");
+        assertThat(cache.get(String.class, Object.class, "charAt", false, new String[]{"long"})).isEqualTo("b");
+        assertThat(cache.get(String.class, Integer.class, "charAt", false, new String[]{"int"})).isEqualTo("c");
+        assertThat(cache.get(String.class, Object.class, "charAt", true, new String[]{"int"})).isEqualTo("d");
+        assertThat(cache.get(Integer.class, Object.class, "charAt", false, new String[]{"int"})).isEqualTo("e");
+        assertThat(cache.getStats().size).isEqualTo(5);
+    }
+
+    @Test public void putShouldKeepExistingPlan() throws Exception {
+        InvocationPlanCache<String> cache = new InvocationPlanCache<String>();
+        assertThat(cache.put(String.class, null, "length", true, NO_PARAMS, "first", 0)).isEqualTo("first");
+        assertThat(cache.put(String.class, null, "length", true, NO_PARAMS, "second", 0)).isEqualTo("first");
+        assertThat(cache.getStats().size).isEqualTo(1);
+    }
+
+    @Test public void shouldBeUnboundedByDefault() throws Exception {
+        InvocationPlanCache<Integer> cache = new InvocationPlanCache<Integer>();
+        for (int i = 0; i < 2000; i++) {
+            cache.put(String.class, null, "method" + i, true, NO_PARAMS, i, 0);
+        }
+        assertThat(cache.getStats().size).isEqualTo(2000);
+        assertThat(cache.getStats().evictions).isEqualTo(0);
+    }
+
+    @Test public void fifoShouldEvictOldestPlans() throws Exception {
+        InvocationPlanCache<Integer> cache = new InvocationPlanCache<Integer>(16, FIFO);
+        for (int i = 0; i < 17; i++) {
+            cache.put(String.class, null, "method" + i, true, NO_PARAMS, i, 0);
+        }
+
+        assertThat(cache.getStats().size).isLessThanOrEqualTo(16);
+        assertThat(cache.getStats().evictions).isEqualTo(3);
+        assertThat(cache.get(String.class, null, "method0", true, NO_PARAMS)).isNull();
+        assertThat(cache.get(String.class, null, "method16", true, NO_PARAMS)).isEqualTo(16);
+    }
+
+    @Test public void lruShouldKeepRecentlyUsedPlans() throws Exception {
+        InvocationPlanCache<Integer> cache = new InvocationPlanCache<Integer>(16, LRU);
+        for (int i = 0; i < 16; i++) {
+            cache.put(String.class, null, "method" + i, true, NO_PARAMS, i, 0);
+        }
+        cache.get(String.class, null, "method0", true, NO_PARAMS);
+        cache.put(String.class, null, "method16", true, NO_PARAMS, 16, 0);
+
+        assertThat(cache.get(String.class, null, "method0", true, NO_PARAMS)).isEqualTo(0);
+        assertThat(cache.get(String.class, null, "method1", true, NO_PARAMS)).isNull();
+    }
+
+    @Test public void clearShouldRemoveAllPlansButKeepCounts() throws Exception {
+        InvocationPlanCache<String> cache = new InvocationPlanCache<String>();
+        cache.put(String.class, null, "length", true, NO_PARAMS, "plan", 0);
+        cache.get(String.class, null, "length", true, NO_PARAMS);
+        cache.clear();
+
+        assertThat(cache.get(String.class, null, "length", true, NO_PARAMS)).isNull();
+        assertThat(cache.getStats().size).isEqualTo(0);
+        assertThat(cache.getStats().hits).isEqualTo(1);
+    }
+}
@@ -0,0 +1,99 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PersistentClassCacheTest {
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private PersistentClassCache classCache;
+
+    @Before public void setUp() throws Exception {
+        classCache = new PersistentClassCache(temporaryFolder.newFolder("cache"));
+    }
+
+    @Test public void shouldReturnNullAndCountMissForUnknownKey() throws Exception {
+        assertThat(classCache.get(classCache.keyFor("config", bytes(1, 2, 3)))).isNull();
+        assertThat(classCache.getMissCount()).isEqualTo(1);
+        assertThat(classCache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test public void shouldReturnStoredBytesAndCountHit() throws Exception {
+        String key = classCache.keyFor("config", bytes(1, 2, 3));
+        classCache.put(key, bytes(4, 5, 6));
+
+        assertThat(classCache.get(key)).isEqualTo(bytes(4, 5, 6));
+        assertThat(classCache.getHitCount()).isEqualTo(1);
+        assertThat(classCache.getWriteCount()).isEqualTo(1);
+    }
+
+    @Test public void shouldBeSharedBetweenInstancesUsingTheSameDirectory() throws Exception {
+        String key = classCache.keyFor("config", bytes(1, 2, 3));
+        classCache.put(key, bytes(4, 5, 6));
+
+        PersistentClassCache otherClassCache = new PersistentClassCache(classCache.getCacheDir());
+        assertThat(otherClassCache.get(key)).isEqualTo(bytes(4, 5, 6));
+    }
+
+    @Test public void shouldReturnEmptyArrayForClassesNotNeedingInstrumentation() throws Exception {
+        String key = classCache.keyFor("config", bytes(1, 2, 3));
+        classCache.putNotInstrumented(key);
+
+        assertThat(classCache.get(key)).isEmpty();
+    }
+
+    @Test public void keyShouldDependOnConfigurationAndContent() throws Exception {
+        String key = classCache.keyFor("config", bytes(1, 2, 3));
+        assertThat(classCache.keyFor("config", bytes(1, 2, 3))).isEqualTo(key);
+        assertThat(classCache.keyFor("other config", bytes(1, 2, 3))).isNotEqualTo(key);
+        assertThat(classCache.keyFor("config", bytes(1, 2, 4))).isNotEqualTo(key);
+    }
+
+    @Test public void shouldNotLeaveTempFilesBehindWhenEntryAlreadyExists() throws Exception {
+        String key = classCache.keyFor("config", bytes(1, 2, 3));
+        classCache.put(key, bytes(4, 5, 6));
+        classCache.put(key, bytes(4, 5, 6));
+
+        assertThat(classCache.getCacheDir().listFiles()[0].list()).hasSize(1);
+    }
+
+    @Test public void shouldWorkInMemoryWithoutCacheDir() throws Exception {
+        PersistentClassCache memoryCache = new PersistentClassCache(null, true);
+        String key = memoryCache.keyFor("config", bytes(1, 2, 3));
+        assertThat(memoryCache.get(key)).isNull();
+
+        memoryCache.put(key, bytes(4, 5, 6));
+        assertThat(memoryCache.get(key)).isEqualTo(bytes(4, 5, 6));
+        assertThat(memoryCache.getMissCount()).isEqualTo(1);
+        assertThat(memoryCache.getHitCount()).isEqualTo(1);
+        assertThat(memoryCache.getWriteCount()).isEqualTo(1);
+    }
+
+    @Test public void shouldKeepDiskHitsInMemory() throws Exception {
+        String key = classCache.keyFor("config", bytes(1, 2, 3));
+        classCache.put(key, bytes(4, 5, 6));
+
+        PersistentClassCache memoryCache = new PersistentClassCache(classCache.getCacheDir(), true);
+        assertThat(memoryCache.get(key)).isEqualTo(bytes(4, 5, 6));
+        for (File dir : classCache.getCacheDir().listFiles()) {
+            for (File file : dir.listFiles()) {
+                assertThat(file.delete()).isTrue();
+            }
+        }
+        assertThat(memoryCache.get(key)).isEqualTo(bytes(4, 5, 6));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,68 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.internal.RealObject;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.assertSame;
+
+public class RealObjectInjectorGeneratorTest {
+    private RealObjectInjectorGenerator generator;
+
+    @Before public void setUp() throws Exception {
+        generator = new RealObjectInjectorGenerator();
+    }
+
+    @Test public void shouldGenerateInjectorWritingOwnAndInheritedFields() throws Exception {
+        RealObjectInjector injector = generator.injectorFor(ShadowChild.class);
+        assertThat(injector).isNotInstanceOf(RealObjectInjector.Reflective.class);
+
+        ShadowChild shadow = new ShadowChild();
+        String realObject = "real";
+        injector.inject(shadow, realObject);
+
+        assertSame(realObject, shadow.realString);
+        assertSame(realObject, shadow.realObject);
+        assertSame(realObject, shadow.realCharSequence);
+        assertThat(generator.getGeneratedCount()).isEqualTo(1);
+    }
+
+    @Test public void shouldReuseInjectorsForTheSameShadowClass() throws Exception {
+        assertSame(generator.injectorFor(ShadowChild.class), generator.injectorFor(ShadowChild.class));
+        assertThat(generator.getGeneratedCount()).isEqualTo(1);
+    }
+
+    @Test public void shouldFallBackToReflectionForFieldsItCannotWriteDirectly() throws Exception {
+        RealObjectInjector injector = generator.injectorFor(ShadowWithPrivateField.class);
+        assertThat(injector).isInstanceOf(RealObjectInjector.Reflective.class);
+
+        ShadowWithPrivateField shadow = new ShadowWithPrivateField();
+        injector.inject(shadow, "real");
+        assertThat(shadow.getRealString()).isEqualTo("real");
+    }
+
+    @Test public void shouldNotGenerateInjectorsForShadowsWithoutRealObjectFields() throws Exception {
+        RealObjectInjector injector = generator.injectorFor(Object.class);
+        injector.inject(new Object(), "real");
+        assertThat(generator.getGeneratedCount()).isEqualTo(0);
+    }
+
+    public static class ShadowParent {
+        @RealObject public Object realObject;
+        @RealObject public CharSequence realCharSequence;
+    }
+
+    public static class ShadowChild extends ShadowParent {
+        @RealObject public String realString;
+        public String notInjected;
+    }
+
+    public static class ShadowWithPrivateField {
+        @RealObject private String realString;
+
+        public String getRealString() {
+            return realString;
+        }
+    }
+}
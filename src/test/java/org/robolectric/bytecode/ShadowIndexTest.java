@@ -0,0 +1,99 @@
+package org.robolectric.bytecode;
+
+import org.junit.Test;
+import org.objectweb.asm.Type;
+import org.robolectric.Robolectric;
+import org.robolectric.internal.Implements;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShadowIndexTest {
+    @Test public void shouldReadWhatItWrites() throws Exception {
+        ShadowIndex shadowIndex = new ShadowIndex(Arrays.asList(
+                new ShadowIndex.Entry("a.ShadowView", "android.view.View", false, null,
+                        Arrays.asList("setId(int)", "setTag(int,java.lang.Object)")),
+                new ShadowIndex.Entry("a.ShadowTextView", "android.widget.TextView", true, "a.ShadowView",
+                        Collections.<String>emptyList())));
+        StringWriter out = new StringWriter();
+        shadowIndex.write(out);
+
+        ShadowIndex readIndex = ShadowIndex.read(new ByteArrayInputStream(out.toString().getBytes("UTF-8")));
+        ShadowIndex.Entry view = readIndex.getEntry("a.ShadowView");
+        assertEquals("android.view.View", view.realClassName);
+        assertFalse(view.callThroughByDefault);
+        assertNull(view.superShadowClassName);
+        assertThat(view.methodSignatures).containsExactly("setId(int)", "setTag(int,java.lang.Object)");
+
+        ShadowIndex.Entry textView = readIndex.getEntry("a.ShadowTextView");
+        assertTrue(textView.callThroughByDefault);
+        assertEquals("a.ShadowView", textView.superShadowClassName);
+        assertThat(textView.methodSignatures).isEmpty();
+    }
+
+    @Test public void shouldKnowWhichMethodsShadowsAndTheirShadowSuperclassesDeclare() throws Exception {
+        ShadowIndex shadowIndex = new ShadowIndex(Arrays.asList(
+                new ShadowIndex.Entry("a.ShadowView", "android.view.View", false, null, Arrays.asList("setId(int)")),
+                new ShadowIndex.Entry("a.ShadowTextView", "android.widget.TextView", false, "a.ShadowView",
+                        Arrays.asList("setText(java.lang.CharSequence)"))));
+
+        assertTrue(shadowIndex.mightDeclareMethod("a.ShadowTextView", "setText"));
+        assertTrue(shadowIndex.mightDeclareMethod("a.ShadowTextView", "setId"));
+        assertFalse(shadowIndex.mightDeclareMethod("a.ShadowTextView", "setTag"));
+        assertFalse(shadowIndex.mightDeclareMethod("a.ShadowView", "setText"));
+        assertTrue(shadowIndex.mightDeclareMethod("a.UnindexedShadow", "anything"));
+    }
+
+    @Test public void buildShouldIndexEveryDefaultShadowClass() throws Exception {
+        ShadowIndex shadowIndex = ShadowIndex.getDefault();
+        assertNotNull("the build should write " + ShadowIndex.RESOURCE_NAME, shadowIndex);
+
+        Set<String> defaultShadowClassNames = new HashSet<String>();
+        for (Class<?> shadowClass : Robolectric.getDefaultShadowClasses()) {
+            defaultShadowClassNames.add(shadowClass.getName());
+
+            ShadowIndex.Entry entry = shadowIndex.getEntry(shadowClass.getName());
+            assertNotNull(shadowClass.getName() + " isn't indexed", entry);
+            Implements implementsAnnotation = shadowClass.getAnnotation(Implements.class);
+            String realClassName = implementsAnnotation.className().isEmpty()
+                    ? implementsAnnotation.value().getName() : implementsAnnotation.className();
+            assertEquals(realClassName, entry.realClassName);
+            assertEquals(implementsAnnotation.callThroughByDefault(), entry.callThroughByDefault);
+            assertEquals(shadowClass.getName(), signaturesOf(shadowClass), new HashSet<String>(entry.methodSignatures));
+        }
+
+        Set<String> indexedShadowClassNames = new HashSet<String>();
+        for (ShadowIndex.Entry entry : shadowIndex.getEntries()) {
+            indexedShadowClassNames.add(entry.shadowClassName);
+        }
+        assertEquals(defaultShadowClassNames, indexedShadowClassNames);
+    }
+
+    private static Set<String> signaturesOf(Class<?> shadowClass) {
+        Set<String> signatures = new HashSet<String>();
+        for (Method method : shadowClass.getDeclaredMethods()) {
+            if (method.isSynthetic()) continue;
+
+            StringBuilder signature = new StringBuilder(method.getName()).append('(');
+            String separator = "";
+            for (Class<?> paramType : method.getParameterTypes()) {
+                signature.append(separator).append(Type.getType(paramType).getClassName());
+                separator = ",";
+            }
+            signatures.add(signature.append(')').toString());
+        }
+        return signatures;
+    }
+}
@@ -0,0 +1,106 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ShadowInvokerGeneratorTest {
+    private ShadowInvokerGenerator generator;
+
+    @Before public void setUp() throws Exception {
+        generator = new ShadowInvokerGenerator();
+    }
+
+    @Test public void shouldGenerateInvokerForPublicInstanceMethod() throws Throwable {
+        ShadowInvoker invoker = generator.invokerFor(ShadowThing.class.getMethod("add", int.class, long.class, String.class));
+
+        assertThat(invoker).isNotInstanceOf(ShadowInvoker.Reflective.class);
+        assertEquals("x:3", invoker.invoke(new ShadowThing("x"), new Object[]{1, 2L, ":"}));
+        assertEquals(1, generator.getGeneratedCount());
+    }
+
+    @Test public void shouldGenerateInvokerForStaticAndVoidMethods() throws Throwable {
+        ShadowInvoker staticInvoker = generator.invokerFor(ShadowThing.class.getMethod("twice", double.class));
+        assertEquals(5.0, staticInvoker.invoke(null, new Object[]{2.5}));
+
+        ShadowThing shadowThing = new ShadowThing("x");
+        ShadowInvoker voidInvoker = generator.invokerFor(ShadowThing.class.getMethod("setName", String.class));
+        assertNull(voidInvoker.invoke(shadowThing, new Object[]{"y"}));
+        assertEquals("y", shadowThing.name);
+    }
+
+    @Test public void shouldReuseInvokersForTheSameMethod() throws Throwable {
+        ShadowInvoker invoker = generator.invokerFor(ShadowThing.class.getMethod("setName", String.class));
+
+        assertSame(invoker, generator.invokerFor(ShadowThing.class.getMethod("setName", String.class)));
+        assertEquals(1, generator.getGeneratedCount());
+    }
+
+    @Test public void shouldPropagateExceptionsUnwrapped() throws Throwable {
+        ShadowInvoker invoker = generator.invokerFor(ShadowThing.class.getMethod("fail"));
+        try {
+            invoker.invoke(new ShadowThing("x"), new Object[0]);
+            fail("should have thrown");
+        } catch (IOException e) {
+            assertEquals("fake exception", e.getMessage());
+        }
+    }
+
+    @Test public void shouldFallBackToReflectionForMethodsItCannotCallDirectly() throws Throwable {
+        ShadowInvoker invoker = generator.invokerFor(ShadowThing.class.getDeclaredMethod("secret"));
+
+        assertThat(invoker).isInstanceOf(ShadowInvoker.Reflective.class);
+        assertEquals("secret x", invoker.invoke(new ShadowThing("x"), new Object[0]));
+        assertEquals(0, generator.getGeneratedCount());
+    }
+
+    @Test public void shouldFallBackToReflectionWhenParamTypesAreNotPublic() throws Throwable {
+        ShadowInvoker invoker = generator.invokerFor(ShadowThing.class.getMethod("hidden", HiddenParam.class));
+
+        assertThat(invoker).isInstanceOf(ShadowInvoker.Reflective.class);
+        assertEquals("hidden", invoker.invoke(new ShadowThing("x"), new Object[]{new HiddenParam()}));
+    }
+
+    public static class ShadowThing {
+        public String name;
+
+        public ShadowThing(String name) {
+            this.name = name;
+        }
+
+        public String add(int a, long b, String separator) {
+            return name + separator + (a + b);
+        }
+
+        public static double twice(double value) {
+            return value * 2;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("fake exception");
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        private String secret() {
+            return "secret " + name;
+        }
+
+        public String hidden(HiddenParam param) {
+            return "hidden";
+        }
+    }
+
+    static class HiddenParam {
+    }
+}
@@ -0,0 +1,79 @@
+package org.robolectric.bytecode;
+
+import org.junit.Test;
+import org.robolectric.internal.Implementation;
+import org.robolectric.internal.Implements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShadowMethodIndexTest {
+    private final ShadowMethodIndex index = new ShadowMethodIndex(ShadowChild.class);
+
+    @Test public void shouldFindPublicAndPrivateMethodsBySignature() throws Exception {
+        assertEquals(ShadowChild.class.getMethod("add", int.class, String.class),
+                index.get("add", new Class<?>[]{int.class, String.class}).method);
+        assertEquals(ShadowChild.class.getDeclaredMethod("secret"), index.get("secret", new Class<?>[0]).method);
+        assertNull(index.get("add", new Class<?>[]{int.class}));
+    }
+
+    @Test public void shouldFindInheritedPublicMethodsOfShadowClasses() throws Exception {
+        assertEquals(ShadowParent.class.getMethod("inherited"), index.get("inherited", new Class<?>[0]).method);
+        assertNull(index.get("privateInParent", new Class<?>[0]));
+    }
+
+    @Test public void shouldIgnoreMethodsOfClassesWhichAreNotShadows() throws Exception {
+        assertNull(index.get("toString", new Class<?>[0]));
+        assertNull(index.get("helper", new Class<?>[0]));
+    }
+
+    @Test public void shouldPreferTheMostSpecificReturnTypeForCovariantOverrides() throws Exception {
+        assertEquals(String.class, index.get("value", new Class<?>[0]).method.getReturnType());
+    }
+
+    @Test public void shouldRecordWhetherMethodsAreI18nSafe() throws Exception {
+        assertTrue(index.get("add", new Class<?>[]{int.class, String.class}).i18nSafe);
+        assertFalse(index.get("unsafe", new Class<?>[0]).i18nSafe);
+    }
+
+    public static class NotAShadow {
+        public void helper() {
+        }
+    }
+
+    @Implements(Object.class)
+    public static class ShadowParent extends NotAShadow {
+        public void inherited() {
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        private void privateInParent() {
+        }
+
+        public Object value() {
+            return null;
+        }
+    }
+
+    @Implements(Object.class)
+    public static class ShadowChild extends ShadowParent {
+        public String add(int a, String b) {
+            return b + a;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        private void secret() {
+        }
+
+        @Implementation(i18nSafe = false)
+        public void unsafe() {
+        }
+
+        @Override
+        public String value() {
+            return "value";
+        }
+    }
+}
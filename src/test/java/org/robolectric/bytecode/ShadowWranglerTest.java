@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+import static java.util.Arrays.asList;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.junit.Assert.*;
 import static org.robolectric.Robolectric.bindShadowClass;
@@ -157,6 +158,48 @@ public class ShadowWranglerTest {
         foo.getName();
     }
 
+    @Test
+    public void shouldUseNewShadowForStaticMethodAfterRebinding() throws Exception {
+        bindShadowClass(ShadowStaticFoo.class);
+        assertEquals("shadowed", StaticFoo.describe());
+        assertEquals("shadowed", StaticFoo.describe());
+
+        bindShadowClass(OtherShadowStaticFoo.class);
+        assertEquals("shadowed differently", StaticFoo.describe());
+    }
+
+    @Test
+    public void shouldLayerBindingsOverIndexedShadowsUntilReset() throws Exception {
+        ShadowWrangler shadowWrangler = Robolectric.getShadowWrangler();
+        ShadowIndex shadowIndex = new ShadowIndex(asList(new ShadowIndex.Entry(ShadowStaticFoo.class.getName(),
+                StaticFoo.class.getName(), false, null, asList("describe()"))));
+
+        shadowWrangler.bindShadowClasses(shadowIndex);
+        assertEquals("shadowed", StaticFoo.describe());
+
+        bindShadowClass(OtherShadowStaticFoo.class);
+        assertEquals("shadowed differently", StaticFoo.describe());
+
+        shadowWrangler.reset();
+        assertNull(StaticFoo.describe());
+
+        shadowWrangler.bindShadowClasses(shadowIndex);
+        assertEquals("shadowed", StaticFoo.describe());
+    }
+
+    @Test
+    public void shouldBindIndexedShadowsOverExistingBindings() throws Exception {
+        ShadowWrangler shadowWrangler = Robolectric.getShadowWrangler();
+        ShadowIndex shadowIndex = new ShadowIndex(asList(new ShadowIndex.Entry(ShadowStaticFoo.class.getName(),
+                StaticFoo.class.getName(), false, null, asList("describe()"))));
+
+        bindShadowClass(OtherShadowStaticFoo.class);
+        assertEquals("shadowed differently", StaticFoo.describe());
+
+        shadowWrangler.bindShadowClasses(shadowIndex);
+        assertEquals("shadowed", StaticFoo.describe());
+    }
+
     private ShadowFoo shadowOf(Foo foo) {
         return (ShadowFoo) shadowOf_(foo);
     }
@@ -235,4 +278,27 @@ public class ShadowWranglerTest {
             throw new IOException("fake exception");
         }
     }
+
+    @Instrument
+    public static class StaticFoo {
+        public static String describe() {
+            return "real";
+        }
+    }
+
+    @Implements(StaticFoo.class)
+    public static class ShadowStaticFoo {
+        @Implementation
+        public static String describe() {
+            return "shadowed";
+        }
+    }
+
+    @Implements(StaticFoo.class)
+    public static class OtherShadowStaticFoo {
+        @Implementation
+        public static String describe() {
+            return "shadowed differently";
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CompiledXmlTest {
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    @Test public void shouldRebuildElementsAttributesAndText() throws Exception {
+        CompiledXml compiledXml = CompiledXml.compile(parse("<PreferenceScreen xmlns:android=\"" + ANDROID_NS + "\">" +
+                "<CheckBoxPreference android:key=\"checkbox\" android:title=\"Checkbox\"/>" +
+                "<!-- a comment --><summary>Some <![CDATA[text]]></summary></PreferenceScreen>"));
+
+        Element root = compiledXml.toDocument().getDocumentElement();
+        assertThat(root.getNodeName()).isEqualTo("PreferenceScreen");
+        Element checkbox = (Element) root.getElementsByTagName("CheckBoxPreference").item(0);
+        assertThat(checkbox.getAttributeNS(ANDROID_NS, "key")).isEqualTo("checkbox");
+        assertThat(checkbox.getAttribute("android:title")).isEqualTo("Checkbox");
+        assertThat(root.getElementsByTagName("summary").item(0).getTextContent()).isEqualTo("Some text");
+    }
+
+    @Test public void shouldBuildANewDocumentEachTime() throws Exception {
+        CompiledXml compiledXml = CompiledXml.compile(parse("<root><child/></root>"));
+
+        Document first = compiledXml.toDocument();
+        first.getDocumentElement().removeChild(first.getDocumentElement().getFirstChild());
+
+        Document second = compiledXml.toDocument();
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getDocumentElement().getChildNodes().getLength()).isEqualTo(1);
+    }
+
+    private static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        return documentBuilderFactory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+}
@@ -0,0 +1,75 @@
+package org.robolectric.res;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.robolectric.util.TestUtil.systemResources;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class DocumentLoaderTest {
+    private static final String TEST_PACKAGE = testResources().getPackageName();
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @After public void tearDown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test public void shouldProcessFilesInTheSameOrderOnTheCallingThreadWhenParsingConcurrently() throws Exception {
+        RecordingXmlLoader sequential = new RecordingXmlLoader();
+        new DocumentLoader(sequential).loadResourceXmlSubDirs(systemResources(), "values");
+
+        RecordingXmlLoader concurrent = new RecordingXmlLoader();
+        new DocumentLoader(executorService, concurrent).loadResourceXmlSubDirs(systemResources(), "values");
+
+        assertThat(sequential.files.size()).isGreaterThan(1);
+        assertThat(concurrent.files).isEqualTo(sequential.files);
+        assertThat(concurrent.threads).containsOnly(Thread.currentThread());
+    }
+
+    @Test public void shouldLoadTheSameValuesWhenParsingConcurrently() throws Exception {
+        ResBundle<String> sequential = new ResBundle<String>();
+        new DocumentLoader(new ValueResourceLoader(sequential, "string", true))
+                .loadResourceXmlSubDirs(testResources(), "values");
+
+        ResBundle<String> concurrent = new ResBundle<String>();
+        new DocumentLoader(executorService, new ValueResourceLoader(concurrent, "string", true))
+                .loadResourceXmlSubDirs(testResources(), "values");
+
+        ResName resName = new ResName(TEST_PACKAGE, "string", "hello");
+        assertThat(concurrent.size()).isEqualTo(sequential.size());
+        assertThat(concurrent.get(resName, "")).isEqualTo(sequential.get(resName, ""));
+    }
+
+    @Test public void shouldPropagateExceptionsFromLoaders() throws Exception {
+        try {
+            new DocumentLoader(executorService, new XmlLoader() {
+                @Override protected void processResourceXml(File xmlFile, Document document, XmlContext xmlContext) throws Exception {
+                    throw new IllegalStateException("fake exception");
+                }
+            }).loadResourceXmlSubDirs(testResources(), "values");
+            fail("should have thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("fake exception");
+        }
+    }
+
+    private static class RecordingXmlLoader extends XmlLoader {
+        final List<File> files = new ArrayList<File>();
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        @Override protected void processResourceXml(File xmlFile, Document document, XmlContext xmlContext) throws Exception {
+            files.add(xmlFile);
+            threads.add(Thread.currentThread());
+        }
+    }
+}
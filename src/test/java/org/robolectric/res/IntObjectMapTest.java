@@ -0,0 +1,57 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class IntObjectMapTest {
+    @Test public void shouldStoreAndFindValuesWhileGrowing() throws Exception {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt();
+            map.put(key, "value" + i);
+            expected.put(key, "value" + i);
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+        }
+        assertThat(map.keys()).hasSize(expected.size());
+    }
+
+    @Test public void shouldHandleSequentialResourceIds() throws Exception {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+        for (int id = 0x01010000; id < 0x01010000 + 3000; id++) {
+            map.put(id, id);
+        }
+
+        assertThat(map.get(0x01010000 + 1234)).isEqualTo(0x01010000 + 1234);
+        assertThat(map.get(0x01010000 + 3000)).isNull();
+        assertThat(map.containsKey(0x01010000)).isTrue();
+    }
+
+    @Test public void shouldReplaceValuesAndSupportZeroKey() throws Exception {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        assertThat(map.get(0)).isNull();
+        assertThat(map.put(0, "zero")).isNull();
+        assertThat(map.put(7, "seven")).isNull();
+        assertThat(map.put(7, "SEVEN")).isEqualTo("seven");
+
+        assertThat(map.get(0)).isEqualTo("zero");
+        assertThat(map.get(7)).isEqualTo("SEVEN");
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.keys()).containsOnly(0, 7);
+
+        IntObjectMap<String> copy = new IntObjectMap<String>();
+        copy.putAll(map);
+        assertThat(copy.get(0)).isEqualTo("zero");
+        assertThat(copy.size()).isEqualTo(2);
+    }
+}
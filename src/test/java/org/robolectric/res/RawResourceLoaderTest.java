@@ -10,6 +10,7 @@ import org.robolectric.util.TestUtil;
 import java.io.InputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.robolectric.util.TestUtil.resourceFile;
 import static org.robolectric.util.TestUtil.testResources;
 
@@ -33,4 +34,21 @@ public class RawResourceLoaderTest {
         InputStream is = rawResourceLoader.getValue(R.raw.raw_no_ext);
         assertEquals("no ext file contents", TestUtil.readString(is));
     }
+
+    @Test
+    public void shouldReturnTheSameContentsWhenOpenedAgain() throws Exception {
+        assertEquals("raw txt file contents", TestUtil.readString(rawResourceLoader.getValue(R.raw.raw_resource)));
+        assertEquals("raw txt file contents", TestUtil.readString(rawResourceLoader.getValue(R.raw.raw_resource)));
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownResources() throws Exception {
+        assertNull(rawResourceLoader.getValue(R.string.hello));
+    }
+
+    @Test
+    public void packageResourceLoaderShouldReturnRawResources() throws Exception {
+        InputStream is = new PackageResourceLoader(testResources()).getRawValue(R.raw.raw_resource);
+        assertEquals("raw txt file contents", TestUtil.readString(is));
+    }
 }
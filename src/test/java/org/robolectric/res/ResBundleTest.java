@@ -2,6 +2,11 @@ package org.robolectric.res;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 
 public class ResBundleTest {
@@ -17,6 +22,64 @@ public class ResBundleTest {
                 "port-notouch-12key"), "en-GB-port-hdpi-notouch-12key").value);
     }
 
+    @Test
+    public void shouldPickFromMoreThan64Variants() throws Exception {
+        String[] qualifierses = new String[100];
+        for (int i = 0; i < qualifierses.length; i++) {
+            qualifierses[i] = "v" + i;
+        }
+        ResBundle.Values<String> values = asValues(qualifierses);
+
+        assertEquals("v70", ResBundle.pick(values, "en-v70").value);
+        assertEquals("v99", ResBundle.pick(values, "v99").value);
+        assertEquals("v0", ResBundle.pick(values, "fr").value);
+    }
+
+    @Test
+    public void shouldPickAgainWhenVariantsChange() throws Exception {
+        ResBundle.Values<String> values = asValues("", "port");
+        assertEquals("", ResBundle.pick(values, "en-land").value);
+        assertEquals("", ResBundle.pick(values, "en-land").value);
+
+        values.add(new ResBundle.Value<String>("en", "en", null));
+        assertEquals("en", ResBundle.pick(values, "en-land").value);
+        assertEquals("port", ResBundle.pick(values, "port").value);
+    }
+
+    @Test
+    public void shouldPickDefaultForEmptyQualifiers() throws Exception {
+        assertEquals("", ResBundle.pick(asValues("en", "", "port"), "").value);
+        assertEquals(null, ResBundle.pick(asValues(), "en"));
+    }
+
+    @Test
+    public void shouldNotChangeBundleWhenLookingUpMissingResourcesInParallel() throws Exception {
+        final ResBundle<String> resBundle = new ResBundle<String>();
+        resBundle.put("string", "present", "value", new XmlLoader.XmlContext("pkg", new File("res/values/strings.xml")));
+        resBundle.makeImmutable();
+
+        final List<Object> found = Collections.synchronizedList(new ArrayList<Object>());
+        Runnable lookUpMissing = new Runnable() {
+            @Override public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    ResName missing = new ResName("pkg", "string", "missing_" + i);
+                    if (resBundle.get(missing, "") != null) found.add(missing);
+                    if (resBundle.getList(missing, "") != null) found.add(missing);
+                }
+            }
+        };
+        Thread first = new Thread(lookUpMissing);
+        Thread second = new Thread(lookUpMissing);
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+
+        assertEquals(0, found.size());
+        assertEquals(1, resBundle.size());
+        assertEquals("value", resBundle.get(new ResName("pkg", "string", "present"), ""));
+    }
+
     private ResBundle.Values<String> asValues(String... qualifierses) {
         ResBundle.Values<String> values = new ResBundle.Values<String>();
         for (String qualifiers : qualifierses) {
@@ -62,4 +62,51 @@ public class ResourceExtractorTest {
         assertThat(resourceIndex.getResourceId(new ResName("org.robolectric.lib2", "string", "in_all_libs"))).isEqualTo(R.string.in_all_libs);
         assertThat(resourceIndex.getResourceId(new ResName("org.robolectric.lib3", "string", "in_all_libs"))).isEqualTo(R.string.in_all_libs);
     }
+
+    @Test
+    public void overlayShouldReportNamesInItsOwnPackage() throws Exception {
+        OverlayResourceIndex overlayResourceIndex = new OverlayResourceIndex(
+                "org.robolectric",
+                new ResourceExtractor(testResources()),
+                new ResourceExtractor(lib1Resources()));
+
+        assertThat(overlayResourceIndex.getResName(R.string.in_all_libs).getFullyQualifiedName())
+                .isEqualTo("org.robolectric:string/in_all_libs");
+        assertThat(overlayResourceIndex.getPackages()).contains("org.robolectric", "org.robolectric.lib1");
+    }
+
+    @Test
+    public void overlayShouldResolveNamesTheWayTheLastSubIndexDefinesThem() throws Exception {
+        ResourceExtractor first = new ResourceExtractor();
+        first.resourceNameToId.put(new ResName("lib.first", "string", "shared"), 1);
+        first.resourceNameToId.put(new ResName("lib.first", "string", "only_first"), 2);
+        ResourceExtractor second = new ResourceExtractor();
+        second.resourceNameToId.put(new ResName("lib.second", "string", "shared"), 3);
+        ResourceIndex unlisted = new ResourceIndex() {
+            @Override public Integer getResourceId(ResName resName) {
+                return resName.name.equals("only_unlisted") ? 4 : null;
+            }
+
+            @Override public ResName getResName(int resourceId) {
+                return null;
+            }
+        };
+
+        OverlayResourceIndex overlayResourceIndex = new OverlayResourceIndex("app", first, second, unlisted);
+        assertThat(overlayResourceIndex.getResourceId(new ResName("app", "string", "shared"))).isEqualTo(3);
+        assertThat(overlayResourceIndex.getResourceId(new ResName("app", "string", "only_first"))).isEqualTo(2);
+        assertThat(overlayResourceIndex.getResourceId(new ResName("app", "string", "only_unlisted"))).isEqualTo(4);
+        assertThat(overlayResourceIndex.getResourceId(new ResName("app", "string", "missing"))).isNull();
+    }
+
+    @Test
+    public void shouldAssignIdsForUnknownSystemResourcesInTheSystemIndex() throws Exception {
+        ResourceExtractor systemResourceExtractor = new ResourceExtractor(systemResources());
+        resourceIndex = new MergedResourceIndex(new ResourceExtractor(testResources()), systemResourceExtractor);
+
+        ResName unknown = new ResName("android", "attr", "notARealAttr");
+        Integer id = resourceIndex.getResourceId(unknown);
+        assertThat(systemResourceExtractor.getResourceId(unknown)).isEqualTo(id);
+        assertThat(resourceIndex.getResName(id)).isEqualTo(unknown);
+    }
 }
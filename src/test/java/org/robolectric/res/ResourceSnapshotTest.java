@@ -0,0 +1,136 @@
+package org.robolectric.res;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.CustomView;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class ResourceSnapshotTest {
+    private static final String TEST_PACKAGE = testResources().getPackageName();
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File cacheDir;
+
+    @Before public void setUp() throws Exception {
+        cacheDir = temporaryFolder.newFolder("resources");
+        System.setProperty("robolectric.resourceCache.path", cacheDir.getPath());
+    }
+
+    @After public void tearDown() throws Exception {
+        System.clearProperty("robolectric.resourceCache.path");
+    }
+
+    @Test public void shouldWriteSnapshotAfterParsing() throws Exception {
+        PackageResourceLoader parsed = load();
+
+        File snapshotFile = new ResourceSnapshot(cacheDir).snapshotFileFor(parsed.resourcePath);
+        assertThat(snapshotFile.isFile()).isTrue();
+        assertThat(cacheDir.list()).hasSize(1);
+    }
+
+    @Test public void shouldLoadTheSameResourcesFromSnapshot() throws Exception {
+        PackageResourceLoader parsed = load();
+        PackageResourceLoader restored = load();
+
+        assertThat(restored.getStringValue(new ResName(TEST_PACKAGE, "string", "hello"), "")).isEqualTo("Hello");
+        assertThat(restored.getStringValue(new ResName(TEST_PACKAGE, "string", "hello"), "fr"))
+                .isEqualTo(parsed.getStringValue(new ResName(TEST_PACKAGE, "string", "hello"), "fr"));
+        assertThat(restored.getStringArrayValue(new ResName(TEST_PACKAGE, "array", "greetings"), ""))
+                .isEqualTo(parsed.getStringArrayValue(new ResName(TEST_PACKAGE, "array", "greetings"), ""));
+        assertThat(restored.getPluralStringValue(new ResName(TEST_PACKAGE, "plurals", "beer"), 1, ""))
+                .isEqualTo(parsed.getPluralStringValue(new ResName(TEST_PACKAGE, "plurals", "beer"), 1, ""));
+        assertThat(restored.getColorValue(new ResName(TEST_PACKAGE, "color", "foreground"), ""))
+                .isEqualTo(parsed.getColorValue(new ResName(TEST_PACKAGE, "color", "foreground"), ""));
+        assertThat(restored.convertValueToEnum(CustomView.class, TEST_PACKAGE, "itemType", "ungulate")).isEqualTo("1");
+
+        ViewNode parsedLayout = parsed.getLayoutViewNode(new ResName(TEST_PACKAGE, "layout", "custom_layout"), "");
+        ViewNode restoredLayout = restored.getLayoutViewNode(new ResName(TEST_PACKAGE, "layout", "custom_layout"), "");
+        assertSameTree(restoredLayout, parsedLayout);
+
+        MenuNode restoredMenu = restored.getMenuNode(new ResName(TEST_PACKAGE, "menu", "test_withchilds"), "");
+        MenuNode parsedMenu = parsed.getMenuNode(new ResName(TEST_PACKAGE, "menu", "test_withchilds"), "");
+        assertThat(restoredMenu.getChildren().size()).isEqualTo(parsedMenu.getChildren().size());
+        assertThat(restoredMenu.getChildren().get(0).getAttributes().toString())
+                .isEqualTo(parsedMenu.getChildren().get(0).getAttributes().toString());
+
+        Document parsedXml = parsed.getXml(new ResName(TEST_PACKAGE, "xml", "preferences"), "");
+        Document restoredXml = restored.getXml(new ResName(TEST_PACKAGE, "xml", "preferences"), "");
+        assertTrue(restoredXml.getDocumentElement().isEqualNode(parsedXml.getDocumentElement()));
+
+        DrawableNode.Xml restoredDrawable = (DrawableNode.Xml) restored.getDrawableNode(new ResName(TEST_PACKAGE, "drawable", "animation_list"), "");
+        DrawableNode.Xml parsedDrawable = (DrawableNode.Xml) parsed.getDrawableNode(new ResName(TEST_PACKAGE, "drawable", "animation_list"), "");
+        assertTrue(restoredDrawable.document.getDocumentElement().isEqualNode(parsedDrawable.document.getDocumentElement()));
+        assertThat(restoredDrawable.xmlContext.getXmlFile()).isEqualTo(parsedDrawable.xmlContext.getXmlFile());
+
+        assertThat(restored.rawResourceLoaders.size()).isEqualTo(parsed.rawResourceLoaders.size());
+    }
+
+    @Test public void snapshotOfRestoredResourcesShouldBeTheSameSize() throws Exception {
+        PackageResourceLoader parsed = load();
+        File snapshotFile = new ResourceSnapshot(cacheDir).snapshotFileFor(parsed.resourcePath);
+        long parsedSnapshotLength = snapshotFile.length();
+
+        PackageResourceLoader restored = load();
+        assertTrue(snapshotFile.delete());
+        new ResourceSnapshot(cacheDir).write(restored);
+
+        assertThat(snapshotFile.length()).isEqualTo(parsedSnapshotLength);
+    }
+
+    @Test public void shouldParseAgainIfSnapshotIsIncomplete() throws Exception {
+        PackageResourceLoader parsed = load();
+        File snapshotFile = new ResourceSnapshot(cacheDir).snapshotFileFor(parsed.resourcePath);
+        FileOutputStream out = new FileOutputStream(snapshotFile, true);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        PackageResourceLoader reparsed = load();
+        assertThat(reparsed.getStringValue(new ResName(TEST_PACKAGE, "string", "hello"), "")).isEqualTo("Hello");
+    }
+
+    @Test public void fingerprintShouldChangeWhenFilesChange() throws Exception {
+        File resDir = temporaryFolder.newFolder("res");
+        File valuesDir = new File(resDir, "values");
+        assertTrue(valuesDir.mkdir());
+        File stringsFile = new File(valuesDir, "strings.xml");
+        FileOutputStream out = new FileOutputStream(stringsFile);
+        out.write("<resources/>".getBytes("UTF-8"));
+        out.close();
+
+        String fingerprint = ResourceSnapshot.fingerprint(resDir);
+        assertThat(ResourceSnapshot.fingerprint(resDir)).isEqualTo(fingerprint);
+
+        out = new FileOutputStream(stringsFile, true);
+        out.write(" ".getBytes("UTF-8"));
+        out.close();
+        assertThat(ResourceSnapshot.fingerprint(resDir)).isNotEqualTo(fingerprint);
+    }
+
+    private PackageResourceLoader load() {
+        PackageResourceLoader loader = new PackageResourceLoader(testResources());
+        loader.initialize();
+        return loader;
+    }
+
+    private void assertSameTree(ViewNode actual, ViewNode expected) {
+        assertThat(actual.getName()).isEqualTo(expected.getName());
+        assertThat(actual.getAttributes().toString()).isEqualTo(expected.getAttributes().toString());
+        assertThat(actual.getXmlContext().getQualifiers()).isEqualTo(expected.getXmlContext().getQualifiers());
+        assertThat(actual.shouldRequestFocusOverride()).isEqualTo(expected.shouldRequestFocusOverride());
+        assertThat(actual.getChildren().size()).isEqualTo(expected.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTree(actual.getChildren().get(i), expected.getChildren().get(i));
+        }
+    }
+}
@@ -11,6 +11,8 @@ import org.robolectric.TestRunners;
 import org.robolectric.shadows.RoboAttributeSet;
 import org.robolectric.util.CustomView;
 
+import java.util.ArrayList;
+
 import static java.util.Arrays.asList;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.robolectric.util.TestUtil.SYSTEM_PACKAGE;
@@ -235,6 +237,26 @@ public class RoboAttributeSetTest {
         assertThat(roboAttributeSet.getAttributeValue("org.robolectric.lib2", "offsetX")).isEqualTo("1");
     }
 
+    @Test public void shouldFindAttributesAddedAfterEarlierLookups() throws Exception {
+        roboAttributeSet = new RoboAttributeSet(new ArrayList<Attribute>(), resourceLoader, null);
+        assertThat(roboAttributeSet.getAttributeValue("android", "text")).isNull();
+
+        roboAttributeSet.put("android:attr/text", "Hello", TEST_PACKAGE);
+        assertThat(roboAttributeSet.getAttributeValue("android", "text")).isEqualTo("Hello");
+    }
+
+    @Test public void shouldFindTheFirstOfDuplicateAttributes() throws Exception {
+        createTestAttributeSet(new Attribute("android:attr/text", "first", TEST_PACKAGE),
+                new Attribute("android:attr/text", "second", TEST_PACKAGE));
+        assertThat(roboAttributeSet.getAttributeValue("android", "text")).isEqualTo("first");
+    }
+
+    @Test public void getAttributeResourceValueByResourceId_shouldReturnTheResourceValue() throws Exception {
+        createTestAttributeSet(new Attribute("android:attr/text", "@android:string/ok", TEST_PACKAGE));
+        assertThat(roboAttributeSet.getAttributeResourceValue(android.R.attr.text, 0)).isEqualTo(android.R.string.ok);
+        assertThat(roboAttributeSet.getAttributeResourceValue(android.R.attr.title, 0)).isEqualTo(0);
+    }
+
     private void createTestAttributeSet(Attribute... attributes) {
         roboAttributeSet = new RoboAttributeSet(asList(attributes), resourceLoader, null);
     }
@@ -0,0 +1,103 @@
+package org.robolectric.res;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.systemResources;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class ValueElementReaderTest {
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test public void shouldReadNamesAttributesAndTextContent() throws Exception {
+        List<ValueElement> elements = read("<resources xmlns:xliff=\"urn:oasis:names:tc:xliff:document:1.2\">" +
+                "<string name=\"greeting\">Hello, <xliff:g id=\"name\">%s</xliff:g>! <![CDATA[<3]]></string>" +
+                "<string-array name=\"days\">\n  <item>Monday</item>\n  <item>Tuesday</item>\n</string-array>" +
+                "</resources>", "string", "string-array");
+
+        assertThat(elements).hasSize(2);
+        ValueElement string = elements.get(0);
+        assertThat(string.getName()).isEqualTo("string");
+        assertThat(string.getAttribute("name")).isEqualTo("greeting");
+        assertThat(string.getTextContent()).isEqualTo("Hello, %s! <3");
+        assertThat(string.getChildren().get(0).getName()).isEqualTo("xliff:g");
+        assertThat(string.getChildren().get(0).getAttribute("id")).isEqualTo("name");
+
+        List<ValueElement> items = elements.get(1).getChildren();
+        assertThat(items).hasSize(2);
+        assertThat(items.get(1).getTextContent()).isEqualTo("Tuesday");
+    }
+
+    @Test public void shouldSkipElementsNoLoaderHandles() throws Exception {
+        List<ValueElement> elements = read("<resources><color name=\"red\">#f00</color>" +
+                "<string name=\"hello\">Hello</string><color name=\"blue\">#00f</color></resources>", "string");
+
+        assertThat(elements).hasSize(1);
+        assertThat(elements.get(0).getAttribute("name")).isEqualTo("hello");
+    }
+
+    @Test public void shouldDistinguishChildlessElements() throws Exception {
+        List<ValueElement> elements = read("<resources><declare-styleable name=\"View\">" +
+                "<attr name=\"gravity\"/><attr name=\"spacing\"> </attr><attr name=\"layout\"><enum name=\"x\" value=\"1\"/></attr>" +
+                "</declare-styleable></resources>", "declare-styleable");
+
+        List<ValueElement> attrs = elements.get(0).getChildren();
+        assertThat(attrs.get(0).hasChildNodes()).isFalse();
+        assertThat(attrs.get(1).hasChildNodes()).isTrue();
+        assertThat(attrs.get(2).hasChildNodes()).isTrue();
+    }
+
+    @Test public void shouldIgnoreFilesWithoutResourcesRoot() throws Exception {
+        assertThat(read("<menu><string name=\"hello\">Hello</string></menu>", "string")).isEmpty();
+    }
+
+    @Test public void shouldLoadTheSameValuesWhenStreamingAsFromDocuments() throws Exception {
+        for (ResourcePath resourcePath : Arrays.asList(testResources(), systemResources())) {
+            ResBundle<String> streamed = new ResBundle<String>();
+            new DocumentLoader(new ValueResourceLoader(streamed, "string", true))
+                    .loadResourceXmlSubDirs(resourcePath, "values");
+
+            ResBundle<String> fromDocuments = new ResBundle<String>();
+            new DocumentLoader(new ValueResourceLoader(fromDocuments, "string", true), new NoOpXmlLoader())
+                    .loadResourceXmlSubDirs(resourcePath, "values");
+
+            assertThat(streamed.size()).isGreaterThan(0);
+            assertThat(describe(streamed.getValuesMap())).isEqualTo(describe(fromDocuments.getValuesMap()));
+            assertThat(describe(streamed.getValuesArrayMap())).isEqualTo(describe(fromDocuments.getValuesArrayMap()));
+        }
+    }
+
+    private List<ValueElement> read(String xml, String... elementNames) throws Exception {
+        File file = temporaryFolder.newFile("values.xml");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(xml.getBytes("UTF-8"));
+        out.close();
+        return new ValueElementReader(new HashSet<String>(Arrays.asList(elementNames))).read(file);
+    }
+
+    private static <T> List<String> describe(Map<ResName, ResBundle.Values<T>> valuesMap) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Map.Entry<ResName, ResBundle.Values<T>> entry : valuesMap.entrySet()) {
+            for (ResBundle.Value<T> value : entry.getValue()) {
+                descriptions.add(entry.getKey() + value.qualifiers + value.value + "@" + value.xmlContext.getXmlFile());
+            }
+        }
+        return descriptions;
+    }
+
+    private static class NoOpXmlLoader extends XmlLoader {
+        @Override protected void processResourceXml(File xmlFile, Document document, XmlContext xmlContext) throws Exception {
+        }
+    }
+}
@@ -211,6 +211,14 @@ public class ViewLoaderTest {
         assertThat(view.attributeResourceValue).isEqualTo(R.string.hello);
     }
 
+    @Test
+    public void shouldGiveEachInflatedViewItsOwnAttributeSet() throws Exception {
+        CustomView first = (CustomView) inflate("custom_layout");
+        CustomView second = (CustomView) inflate("custom_layout");
+        assertNotSame(first.attributeSet, second.attributeSet);
+        assertThat(second.attributeResourceValue).isEqualTo(first.attributeResourceValue);
+    }
+
     @Test
     public void shouldConstructCustomViewsWithAttributesWithURLEncodedNamespaces() throws Exception {
         CustomView view = (CustomView) inflate("custom_layout4")
@@ -263,6 +271,21 @@ public class ViewLoaderTest {
         assertNotNull(innerMerge);
     }
 
+    @Test
+    public void shouldReuseCompiledLayoutsForLaterInflations() throws Exception {
+        ViewGroup first = (ViewGroup) inflate("outer");
+        int compiledPlanCount = LayoutBuilder.getCompiledPlanCount();
+
+        ViewGroup second = (ViewGroup) inflate("outer");
+        assertThat(LayoutBuilder.getCompiledPlanCount()).isEqualTo(compiledPlanCount);
+
+        assertNotSame(first, second);
+        assertNotSame(first.findViewById(R.id.inner_text), second.findViewById(R.id.inner_text));
+        assertThat(second.getChildCount()).isEqualTo(first.getChildCount());
+        assertThat(second.getId()).isEqualTo(R.id.outer_merge);
+        assertNotNull(second.findViewById(R.id.inner_text));
+    }
+
     @Test
     public void testMapView() throws Exception {
         RelativeLayout mainView = (RelativeLayout) inflate("mapview");
@@ -0,0 +1,85 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class XResourceLoaderTest {
+    private static final String TEST_PACKAGE = testResources().getPackageName();
+
+    @Test public void shouldRememberResolvedValuesOnceInitialized() throws Exception {
+        PackageResourceLoader resourceLoader = new PackageResourceLoader(testResources());
+        resourceLoader.initialize();
+
+        ResName dimen = new ResName(TEST_PACKAGE, "dimen", "test_dp_dimen");
+        Float resolvedDimen = resourceLoader.dimenResolver.resolve(dimen, "");
+        assertThat(resolvedDimen).isEqualTo(8f);
+        assertThat(resourceLoader.dimenResolver.resolve(dimen, "")).isSameAs(resolvedDimen);
+
+        ResName color = new ResName(TEST_PACKAGE, "color", "foreground");
+        assertThat(resourceLoader.colorResolver.resolve(color, ""))
+                .isSameAs(resourceLoader.colorResolver.resolve(color, ""));
+
+        ResName array = new ResName(TEST_PACKAGE, "string-array", "greetings");
+        List<String> greetings = resourceLoader.stringResolver.resolveArray(array, "");
+        assertThat(resourceLoader.stringResolver.resolveArray(array, "")).isSameAs(greetings);
+        try {
+            greetings.clear();
+            fail("should have thrown");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test public void shouldRememberMissingValues() throws Exception {
+        PackageResourceLoader resourceLoader = new PackageResourceLoader(testResources());
+        resourceLoader.initialize();
+
+        ResName missing = new ResName(TEST_PACKAGE, "string", "no_such_string");
+        assertThat(resourceLoader.stringResolver.resolve(missing, "")).isNull();
+        assertThat(resourceLoader.stringResolver.resolve(missing, "")).isNull();
+    }
+
+    @Test public void shouldResolveSeparatelyPerConfiguration() throws Exception {
+        PackageResourceLoader resourceLoader = new PackageResourceLoader(testResources());
+        resourceLoader.initialize();
+
+        ResName hello = new ResName(TEST_PACKAGE, "string", "hello");
+        assertThat(resourceLoader.getStringValue(hello, "")).isEqualTo("Hello");
+        assertThat(resourceLoader.getStringValue(hello, "fr")).isNotEqualTo("Hello");
+        assertThat(resourceLoader.getStringValue(hello, "")).isEqualTo("Hello");
+    }
+
+    @Test public void shouldLoadEachCategoryOnlyWhenItsFirstUsed() throws Exception {
+        PackageResourceLoader resourceLoader = new PackageResourceLoader(testResources());
+
+        assertThat(resourceLoader.getStringValue(new ResName(TEST_PACKAGE, "string", "hello"), "")).isEqualTo("Hello");
+        assertThat(resourceLoader.isInitialized(XResourceLoader.Category.VALUES)).isTrue();
+        assertThat(resourceLoader.isInitialized(XResourceLoader.Category.LAYOUT)).isFalse();
+        assertThat(resourceLoader.viewNodes.size()).isEqualTo(0);
+        assertThat(resourceLoader.drawableNodes.size()).isEqualTo(0);
+
+        assertThat(resourceLoader.getLayoutViewNode(new ResName(TEST_PACKAGE, "layout", "main"), "")).isNotNull();
+        assertThat(resourceLoader.isInitialized(XResourceLoader.Category.LAYOUT)).isTrue();
+        assertThat(resourceLoader.isInitialized(XResourceLoader.Category.DRAWABLE)).isFalse();
+        assertThat(resourceLoader.drawableNodes.size()).isEqualTo(0);
+    }
+
+    @Test public void shouldLoadOtherResourcesAfterEveryCategory() throws Exception {
+        final ResName hello = new ResName(TEST_PACKAGE, "string", "hello");
+        final List<Object> seenByLoadOtherResources = new ArrayList<Object>();
+        PackageResourceLoader resourceLoader = new PackageResourceLoader(testResources()) {
+            @Override protected void loadOtherResources(ResourcePath resourcePath) {
+                seenByLoadOtherResources.add(stringResolver.get(hello, ""));
+                seenByLoadOtherResources.add(viewNodes.size() > 0);
+            }
+        };
+
+        assertThat(resourceLoader.getStringValue(hello, "")).isEqualTo("Hello");
+        assertThat(seenByLoadOtherResources).containsExactly("Hello", true);
+    }
+}
@@ -47,16 +47,16 @@ public class XmlFileLoaderTest {
     private XmlFileLoader xmlFileLoader;
     private XmlFileBuilder xmlFileBuilder;
     private XmlResourceParserImpl parser;
-    private ResBundle<Document> resBundle;
+    private ResBundle<CompiledXml> resBundle;
 
     @Before
     public void setUp() throws Exception {
-        resBundle = new ResBundle<Document>();
+        resBundle = new ResBundle<CompiledXml>();
         xmlFileLoader = new XmlFileLoader(resBundle);
         new DocumentLoader(xmlFileLoader).loadResourceXmlDir(testResources(), "xml");
         xmlFileBuilder = new XmlFileBuilder();
 
-        Document document = resBundle.get(new ResName(TEST_PACKAGE, "xml", "preferences"), "");
+        Document document = resBundle.get(new ResName(TEST_PACKAGE, "xml", "preferences"), "").toDocument();
         parser = (XmlResourceParserImpl) xmlFileBuilder.getXml(document);
     }
 
@@ -0,0 +1,169 @@
+package org.robolectric.res.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal benchmark harness: runs an operation for some warmup iterations, then times some measured iterations,
+ * and records the average time per operation.
+ * <p/>
+ * Results are written as JSON in the layout JMH uses for its own results ({@code benchmark}, {@code mode},
+ * {@code params}, {@code primaryMetric}), so tools that track JMH results over time can read them.
+ */
+public class Benchmark {
+    public interface Operation {
+        /**
+         * Runs one iteration of the benchmark.
+         *
+         * @return something computed from the work done, so it can't be optimized away
+         */
+        Object run() throws Exception;
+    }
+
+    private final List<Result> results = new ArrayList<Result>();
+    private final int iterationsOverride;
+    private Object sink;
+
+    public Benchmark() {
+        iterationsOverride = Integer.getInteger("robolectric.benchmark.iterations", 0);
+    }
+
+    /**
+     * @param opsPerIteration how many operations one run of {@code operation} performs
+     */
+    public Result measure(String name, Map<String, String> params, int warmupIterations, int iterations,
+                          int opsPerIteration, Operation operation) throws Exception {
+        if (iterationsOverride > 0) iterations = iterationsOverride;
+
+        for (int i = 0; i < warmupIterations; i++) {
+            sink = operation.run();
+        }
+
+        double[] nanosPerOp = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            sink = operation.run();
+            nanosPerOp[i] = (double) (System.nanoTime() - start) / opsPerIteration;
+        }
+
+        Result result = new Result(name, params, nanosPerOp);
+        results.add(result);
+        System.out.println("BENCHMARK " + result);
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public void writeJson(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("couldn't create " + dir);
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).writeJson(out);
+                out.write(i < results.size() - 1 ? ",\n" : "\n");
+            }
+            out.write("]\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    public static Map<String, String> params(String... namesAndValues) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            params.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return params;
+    }
+
+    public static class Result {
+        public final String name;
+        public final Map<String, String> params;
+        public final double[] nanosPerOp;
+
+        Result(String name, Map<String, String> params, double[] nanosPerOp) {
+            this.name = name;
+            this.params = params;
+            this.nanosPerOp = nanosPerOp;
+        }
+
+        public double getMean() {
+            double sum = 0;
+            for (double value : nanosPerOp) sum += value;
+            return sum / nanosPerOp.length;
+        }
+
+        /**
+         * @return the half-width of the 99.9% confidence interval around the mean, using the normal approximation
+         */
+        public double getError() {
+            if (nanosPerOp.length < 2) return Double.NaN;
+            double mean = getMean();
+            double squares = 0;
+            for (double value : nanosPerOp) squares += (value - mean) * (value - mean);
+            double standardDeviation = Math.sqrt(squares / (nanosPerOp.length - 1));
+            return 3.291 * standardDeviation / Math.sqrt(nanosPerOp.length);
+        }
+
+        void writeJson(Writer out) throws IOException {
+            out.write("  {\n");
+            out.write("    \"benchmark\": " + quote(name) + ",\n");
+            out.write("    \"mode\": \"avgt\",\n");
+            out.write("    \"measurementIterations\": " + nanosPerOp.length + ",\n");
+            out.write("    \"params\": {");
+            String separator = "";
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                out.write(separator + quote(param.getKey()) + ": " + quote(param.getValue()));
+                separator = ", ";
+            }
+            out.write("},\n");
+            out.write("    \"primaryMetric\": {\n");
+            out.write("      \"score\": " + number(getMean()) + ",\n");
+            out.write("      \"scoreError\": " + number(getError()) + ",\n");
+            out.write("      \"scoreUnit\": \"ns/op\",\n");
+            out.write("      \"rawData\": [[");
+            for (int i = 0; i < nanosPerOp.length; i++) {
+                out.write((i > 0 ? ", " : "") + number(nanosPerOp[i]));
+            }
+            out.write("]]\n");
+            out.write("    }\n");
+            out.write("  }");
+        }
+
+        private static String number(double value) {
+            return Double.isNaN(value) || Double.isInfinite(value) ? "\"NaN\"" : String.valueOf(value);
+        }
+
+        private static String quote(String string) {
+            StringBuilder quoted = new StringBuilder("\"");
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+
+        @Override
+        public String toString() {
+            return name + params + ": " + String.format("%.1f", getMean()) + " ns/op (+- " + String.format("%.1f", getError()) + ")";
+        }
+    }
+}
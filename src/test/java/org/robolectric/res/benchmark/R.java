@@ -0,0 +1,7 @@
+package org.robolectric.res.benchmark;
+
+/**
+ * The R class for {@link SyntheticApp}'s resources. It has no ids; resources are assigned ids as they're loaded.
+ */
+public final class R {
+}
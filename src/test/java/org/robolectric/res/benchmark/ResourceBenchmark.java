@@ -0,0 +1,213 @@
+package org.robolectric.res.benchmark;
+
+import android.app.Activity;
+import android.view.View;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.R;
+import org.robolectric.Robolectric;
+import org.robolectric.TestRunners;
+import org.robolectric.res.Attribute;
+import org.robolectric.res.PackageResourceLoader;
+import org.robolectric.res.ResBundle;
+import org.robolectric.res.ResName;
+import org.robolectric.res.ResourceExtractor;
+import org.robolectric.res.ResourceLoader;
+import org.robolectric.res.ResourcePath;
+import org.robolectric.res.XmlLoader;
+import org.robolectric.res.builder.LayoutBuilder;
+import org.robolectric.shadows.RoboAttributeSet;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.robolectric.res.benchmark.Benchmark.params;
+import static org.robolectric.util.TestUtil.TEST_PACKAGE;
+import static org.robolectric.util.TestUtil.systemResources;
+import static org.robolectric.util.TestUtil.testResources;
+
+/**
+ * Benchmarks for resource loading and lookups. These aren't run with the other tests; run them with
+ * {@code mvn test -Dtest=ResourceBenchmark}.
+ * <p/>
+ * Results are written as JSON to the file named by the "robolectric.benchmark.output" system property, by default
+ * target/benchmarks/resource-benchmarks.json. The "robolectric.benchmark.iterations" system property overrides how
+ * many measured iterations each benchmark runs.
+ */
+@RunWith(TestRunners.WithDefaults.class)
+public class ResourceBenchmark {
+    private static final String ANDROID = "android";
+    private static final Benchmark benchmark = new Benchmark();
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void writeResults() throws Exception {
+        benchmark.writeJson(new File(System.getProperty("robolectric.benchmark.output",
+                "target/benchmarks/resource-benchmarks.json")));
+    }
+
+    @Test
+    public void loadSdkResources() throws Exception {
+        benchmark.measure("PackageResourceLoader.load", params("resources", "sdk"), 1, 5, 1, new Benchmark.Operation() {
+            @Override public Object run() throws Exception {
+                return loadEverything(new PackageResourceLoader(systemResources()));
+            }
+        });
+    }
+
+    @Test
+    public void loadSyntheticAppResources() throws Exception {
+        final ResourcePath resourcePath = new SyntheticApp(1000, 300).writeTo(temporaryFolder.newFolder("synthetic"));
+        benchmark.measure("PackageResourceLoader.load", params("resources", "synthetic"), 2, 10, 1, new Benchmark.Operation() {
+            @Override public Object run() throws Exception {
+                return loadEverything(new PackageResourceLoader(resourcePath));
+            }
+        });
+    }
+
+    @Test
+    public void pickValues() throws Exception {
+        String[] valuesDirs = {"values", "values-fr", "values-land", "values-xlarge", "values-fr-land", "values-v11"};
+        final ResBundle<String> resBundle = new ResBundle<String>();
+        final List<ResName> resNames = new ArrayList<ResName>();
+        for (int i = 0; i < 500; i++) {
+            resNames.add(new ResName(TEST_PACKAGE, "string", "string_" + i));
+            for (String valuesDir : valuesDirs) {
+                XmlLoader.XmlContext xmlContext = new XmlLoader.XmlContext(TEST_PACKAGE, new File("res/" + valuesDir + "/strings.xml"));
+                resBundle.put("string", "string_" + i, valuesDir, xmlContext);
+            }
+        }
+        resBundle.makeImmutable();
+
+        String[] configurations = {"", "fr", "fr-land", "fr-rFR-land-xlarge", "fr-rFR-land-xlarge-hdpi-v11"};
+        for (final String qualifiers : configurations) {
+            int qualifierCount = qualifiers.length() == 0 ? 0 : qualifiers.split("-").length;
+            benchmark.measure("ResBundle.get", params("qualifierCount", String.valueOf(qualifierCount)), 100, 20, resNames.size(),
+                    new Benchmark.Operation() {
+                        @Override public Object run() throws Exception {
+                            int found = 0;
+                            for (ResName resName : resNames) {
+                                if (resBundle.get(resName, qualifiers) != null) found++;
+                            }
+                            return found;
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void lookUpResourceIndex() throws Exception {
+        final ResourceExtractor resourceIndex = new ResourceExtractor(testResources());
+        final int[] ids = idsIn(R.class);
+        final ResName[] resNames = new ResName[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            resNames[i] = resourceIndex.getResName(ids[i]);
+        }
+
+        benchmark.measure("ResourceIndex.getResName", params(), 20, 20, ids.length, new Benchmark.Operation() {
+            @Override public Object run() throws Exception {
+                int found = 0;
+                for (int id : ids) {
+                    if (resourceIndex.getResName(id) != null) found++;
+                }
+                return found;
+            }
+        });
+
+        benchmark.measure("ResourceIndex.getResourceId", params(), 20, 20, resNames.length, new Benchmark.Operation() {
+            @Override public Object run() throws Exception {
+                int sum = 0;
+                for (ResName resName : resNames) {
+                    sum += resourceIndex.getResourceId(resName);
+                }
+                return sum;
+            }
+        });
+    }
+
+    @Test
+    public void readAttributeSets() throws Exception {
+        final ResourceLoader resourceLoader = Robolectric.getShadowApplication().getResourceLoader();
+        final List<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("android:attr/id", "@+id/title", TEST_PACKAGE));
+        attributes.add(new Attribute("android:attr/layout_width", "match_parent", TEST_PACKAGE));
+        attributes.add(new Attribute("android:attr/layout_height", "wrap_content", TEST_PACKAGE));
+        attributes.add(new Attribute("android:attr/text", "@string/hello", TEST_PACKAGE));
+        attributes.add(new Attribute("android:attr/textSize", "@dimen/test_dp_dimen", TEST_PACKAGE));
+        attributes.add(new Attribute("android:attr/visibility", "gone", TEST_PACKAGE));
+        attributes.add(new Attribute("android:attr/enabled", "false", TEST_PACKAGE));
+
+        benchmark.measure("RoboAttributeSet.read", params(), 20, 20, 1000, new Benchmark.Operation() {
+            @Override public Object run() throws Exception {
+                int sum = 0;
+                for (int i = 0; i < 1000; i++) {
+                    RoboAttributeSet attributeSet = new RoboAttributeSet(attributes, resourceLoader, View.class);
+                    sum += attributeSet.getAttributeResourceValue(ANDROID, "id", 0);
+                    sum += attributeSet.getAttributeValue(ANDROID, "layout_width").length();
+                    sum += attributeSet.getAttributeResourceValue(ANDROID, "text", 0);
+                    sum += attributeSet.getAttributeIntValue(ANDROID, "visibility", 0);
+                    sum += attributeSet.getAttributeBooleanValue(ANDROID, "enabled", true) ? 1 : 0;
+                    sum += attributeSet.getAttributeValue(ANDROID, "missing") == null ? 0 : 1;
+                }
+                return sum;
+            }
+        });
+    }
+
+    @Test
+    public void inflateLayouts() throws Exception {
+        final ResourceLoader resourceLoader = Robolectric.getShadowApplication().getResourceLoader();
+        final Activity activity = new Activity();
+
+        benchmark.measure("LayoutBuilder.inflateView", params("layout", "media"), 10, 20, 100, new Benchmark.Operation() {
+            @Override public Object run() throws Exception {
+                int childCount = 0;
+                for (int i = 0; i < 100; i++) {
+                    View view = new LayoutBuilder(resourceLoader).inflateView(activity, R.layout.media, null, "");
+                    childCount += view.getId();
+                }
+                return childCount;
+            }
+        });
+    }
+
+    /**
+     * Looks up one resource of each kind, so every category of resources is loaded.
+     */
+    private static Object loadEverything(ResourceLoader resourceLoader) {
+        String packageName = "any";
+        List<Object> found = new ArrayList<Object>();
+        found.add(resourceLoader.getStringValue(new ResName(packageName, "string", "none"), ""));
+        found.add(resourceLoader.getLayoutViewNode(new ResName(packageName, "layout", "none"), ""));
+        found.add(resourceLoader.getMenuNode(new ResName(packageName, "menu", "none"), ""));
+        found.add(resourceLoader.getDrawableNode(new ResName(packageName, "drawable", "none"), ""));
+        found.add(resourceLoader.getXml(new ResName(packageName, "xml", "none"), ""));
+        found.add(resourceLoader.getPreferenceNode(new ResName(packageName, "xml", "none"), ""));
+        return found;
+    }
+
+    private static int[] idsIn(Class<?> rClass) throws IllegalAccessException {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Class<?> innerClass : rClass.getClasses()) {
+            if (innerClass.getSimpleName().equals("styleable")) continue;
+            for (Field field : innerClass.getDeclaredFields()) {
+                if (field.getType().equals(Integer.TYPE) && Modifier.isStatic(field.getModifiers())) {
+                    ids.add(field.getInt(null));
+                }
+            }
+        }
+
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,86 @@
+package org.robolectric.res.benchmark;
+
+import org.robolectric.res.ResourcePath;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the res directory of a large made-up app: strings, dimens and colors in several configurations, and
+ * layouts, menus and drawables, in roughly the proportions of a big real app.
+ */
+public class SyntheticApp {
+    private static final String ANDROID_NS = "xmlns:android=\"http://schemas.android.com/apk/res/android\"";
+    private static final String[] VALUES_DIRS = {"values", "values-fr", "values-de", "values-land", "values-xlarge", "values-v11"};
+
+    private final int valuesPerFile;
+    private final int layouts;
+
+    public SyntheticApp(int valuesPerFile, int layouts) {
+        this.valuesPerFile = valuesPerFile;
+        this.layouts = layouts;
+    }
+
+    public ResourcePath writeTo(File dir) throws IOException {
+        File resourceBase = new File(dir, "res");
+
+        for (String valuesDir : VALUES_DIRS) {
+            StringBuilder strings = new StringBuilder();
+            for (int i = 0; i < valuesPerFile; i++) {
+                strings.append("  <string name=\"string_").append(i).append("\">String ").append(i)
+                        .append(" for ").append(valuesDir).append("</string>\n");
+            }
+            for (int i = 0; i < valuesPerFile / 10; i++) {
+                strings.append("  <string-array name=\"array_").append(i).append("\">")
+                        .append("<item>@string/string_").append(i).append("</item><item>literal</item></string-array>\n");
+            }
+            write(new File(resourceBase, valuesDir + "/strings.xml"), "<resources>\n" + strings + "</resources>\n");
+
+            StringBuilder dimens = new StringBuilder();
+            for (int i = 0; i < valuesPerFile / 4; i++) {
+                dimens.append("  <dimen name=\"dimen_").append(i).append("\">").append(i).append("dp</dimen>\n");
+                dimens.append("  <color name=\"color_").append(i).append("\">#ff").append(String.format("%06x", i)).append("</color>\n");
+            }
+            write(new File(resourceBase, valuesDir + "/dimens.xml"), "<resources>\n" + dimens + "</resources>\n");
+        }
+
+        for (int i = 0; i < layouts; i++) {
+            StringBuilder layout = new StringBuilder();
+            layout.append("<LinearLayout ").append(ANDROID_NS).append(" android:orientation=\"vertical\"")
+                    .append(" android:layout_width=\"match_parent\" android:layout_height=\"match_parent\">\n");
+            for (int j = 0; j < 10; j++) {
+                layout.append("  <TextView android:id=\"@+id/text_").append(j).append("\"")
+                        .append(" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"")
+                        .append(" android:text=\"@string/string_").append(j).append("\"/>\n");
+            }
+            if (i > 0) layout.append("  <include layout=\"@layout/layout_").append(i - 1).append("\"/>\n");
+            layout.append("</LinearLayout>\n");
+            write(new File(resourceBase, "layout/layout_" + i + ".xml"), layout.toString());
+
+            if (i % 10 == 0) {
+                write(new File(resourceBase, "menu/menu_" + i + ".xml"), "<menu " + ANDROID_NS + ">\n" +
+                        "  <item android:id=\"@+id/item_" + i + "\" android:title=\"@string/string_" + i + "\"/>\n</menu>\n");
+                write(new File(resourceBase, "drawable/selector_" + i + ".xml"), "<selector " + ANDROID_NS + ">\n" +
+                        "  <item android:state_pressed=\"true\" android:drawable=\"@color/color_" + i + "\"/>\n</selector>\n");
+            }
+        }
+
+        return new ResourcePath(R.class, resourceBase, new File(dir, "assets"));
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("couldn't create " + dir);
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -6,12 +6,14 @@ import android.widget.LinearLayout;
 import org.robolectric.R;
 
 public class CustomView extends LinearLayout {
+    public AttributeSet attributeSet;
     public int attributeResourceValue;
     public int namespacedResourceValue;
     public static final String fakeNS = "http://example.com/fakens";
 
     public CustomView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        attributeSet = attrs;
         inflate(context, R.layout.inner_merge, this);
         attributeResourceValue = attrs.getAttributeResourceValue(R.class.getPackage().getName(), "message", -1);
         namespacedResourceValue = attrs.getAttributeResourceValue(fakeNS, "message", -1);